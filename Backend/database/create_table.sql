@@ -34,10 +34,62 @@ CREATE TABLE IF NOT EXISTS `knowledge` (
   `parent_id` BIGINT COMMENT '父知识ID(层级)',
   `blob_key` VARCHAR(500) COMMENT 'blob name',
   `parse_job` VARCHAR(20) DEFAULT NULL COMMENT '解析状态：PENDING/RUNNING/DONE/FAILED',
+  `parse_progress` INT DEFAULT NULL COMMENT '解析进度：已完成 embedding 的分片数',
   `created_at` TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updated_at` TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   FOREIGN KEY (space_id) REFERENCES `space`(id) ON DELETE CASCADE,
   FOREIGN KEY (parent_id) REFERENCES `knowledge`(id) ON DELETE CASCADE,
   INDEX idx_space_parent (space_id, parent_id),
+  INDEX idx_blob_key (blob_key(191)),
   FULLTEXT INDEX ft_title_content (title, content)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 解析任务队列表（持久化排队、租约、重试）
+CREATE TABLE IF NOT EXISTS `parse_job_queue` (
+  `id` BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '任务ID',
+  `knowledge_id` BIGINT NOT NULL COMMENT '所属知识ID',
+  `job_type` VARCHAR(20) NOT NULL COMMENT 'DOC=解析文件；MANUAL=Markdown重新向量化',
+  `blob_key` VARCHAR(500) COMMENT 'DOC任务的blob name',
+  `lane` VARCHAR(20) NOT NULL DEFAULT 'BULK' COMMENT '优先级通道：FAST/BULK',
+  `status` VARCHAR(20) NOT NULL DEFAULT 'PENDING' COMMENT '任务状态：PENDING/RUNNING/DONE/FAILED',
+  `attempts` INT NOT NULL DEFAULT 0 COMMENT '已尝试次数',
+  `next_run_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次可执行时间',
+  `lease_owner` VARCHAR(100) COMMENT '持有租约的节点',
+  `lease_until` TIMESTAMP NULL DEFAULT NULL COMMENT '租约到期时间',
+  `last_error` VARCHAR(1000) COMMENT '最近一次失败原因',
+  `created_at` TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `updated_at` TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  FOREIGN KEY (knowledge_id) REFERENCES `knowledge`(id) ON DELETE CASCADE,
+  INDEX idx_lane_status_next (lane, status, next_run_at),
+  INDEX idx_knowledge_status (knowledge_id, status)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 内容寻址索引：同一用户、同一分类下内容相同的上传复用同一个 blob，解析时复制已有向量
+CREATE TABLE IF NOT EXISTS `blob_content` (
+  `content_hash` CHAR(64) NOT NULL COMMENT '文件内容 SHA-256（服务端计算）',
+  `user_id` BIGINT NOT NULL COMMENT '上传用户，复用不跨用户',
+  `category` VARCHAR(100) NOT NULL COMMENT '分类文件夹',
+  `blob_key` VARCHAR(500) NOT NULL COMMENT '首次上传的 blob name',
+  `size` BIGINT COMMENT '文件大小（字节）',
+  `created_at` TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (content_hash, user_id, category)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 对话消息表（chat.conversation.store=jdbc 时使用，多实例共享会话历史）
+CREATE TABLE IF NOT EXISTS `chat_message` (
+  `id` BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '消息ID，同一会话内按写入顺序递增',
+  `conversation_id` VARCHAR(64) NOT NULL COMMENT '会话ID',
+  `role` VARCHAR(20) NOT NULL COMMENT '消息角色：USER/ASSISTANT',
+  `content` MEDIUMTEXT NOT NULL COMMENT '消息内容',
+  `created_at` DATETIME(3) NOT NULL COMMENT '消息产生时间（应用侧时间，非写入时间）',
+  INDEX idx_conversation_id (conversation_id, id),
+  INDEX idx_created_at (created_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- 会话滚动摘要表（chat.conversation.store=jdbc 时使用，较早的对话轮次折叠为摘要）
+CREATE TABLE IF NOT EXISTS `chat_summary` (
+  `conversation_id` VARCHAR(64) PRIMARY KEY COMMENT '会话ID',
+  `content` TEXT NOT NULL COMMENT '摘要内容',
+  `through_seq` BIGINT NOT NULL COMMENT '已折叠进摘要的消息数',
+  `updated_at` DATETIME(3) NOT NULL COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
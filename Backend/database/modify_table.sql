@@ -5,4 +5,8 @@ ALTER TABLE knowledge
   
 ALTER TABLE knowledge RENAME COLUMN oss_key TO blob_key;
 
-ALTER TABLE knowledge ADD COLUMN parse_job VARCHAR(20) DEFAULT NULL COMMENT '解析状态：PENDING/RUNNING/DONE/FAILED' AFTER blob_key;
\ No newline at end of file
+ALTER TABLE knowledge ADD COLUMN parse_job VARCHAR(20) DEFAULT NULL COMMENT '解析状态：PENDING/RUNNING/DONE/FAILED' AFTER blob_key;
+
+ALTER TABLE knowledge ADD INDEX idx_blob_key (blob_key(191));
+
+ALTER TABLE knowledge ADD COLUMN parse_progress INT DEFAULT NULL COMMENT '解析进度：已完成 embedding 的分片数' AFTER parse_job;
@@ -11,3 +11,13 @@ CREATE TABLE IF NOT EXISTS document_chunk (
 );
 
 CREATE INDEX IF NOT EXISTS idx_document_chunk_metadata ON document_chunk USING gin (metadata);
+
+-- 分片级 embedding 缓存：sha256(规范化后的分片文本) + 模型名 -> 向量（维度与 spring.ai.vectorstore.pgvector.dimension 一致）
+-- knowledge.embedding-cache.persistent=true 时需要该表；应用不会自动建表，表不存在时只使用内存缓存
+CREATE TABLE IF NOT EXISTS embedding_cache (
+    content_hash CHAR(64) NOT NULL,
+    model        VARCHAR(64) NOT NULL,
+    embedding    vector(1536) NOT NULL,
+    created_at   TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (content_hash, model)
+);
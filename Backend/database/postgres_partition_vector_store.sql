@@ -0,0 +1,43 @@
+-- 将已有的非分区分片表迁移为按 space_id HASH 分区的表
+-- 需停机执行（迁移期间不能写入分片），表名、维度与 knowledge.vector.table / dimension 保持一致
+-- 执行后把 knowledge.vector.partitioning 设为 hash，启动时 AnnIndexManager 会在每个分区上建 ANN 索引
+
+BEGIN;
+
+ALTER TABLE vector_store RENAME TO vector_store_old;
+ALTER INDEX IF EXISTS vector_store_pkey RENAME TO vector_store_old_pkey;
+ALTER INDEX IF EXISTS vector_store_space_id_idx RENAME TO vector_store_old_space_id_idx;
+ALTER INDEX IF EXISTS vector_store_knowledge_id_idx RENAME TO vector_store_old_knowledge_id_idx;
+
+CREATE TABLE vector_store (
+    id           uuid NOT NULL,
+    content      text,
+    metadata     json,
+    embedding    vector(1536),
+    space_id     bigint,
+    knowledge_id bigint,
+    PRIMARY KEY (id, space_id)
+) PARTITION BY HASH (space_id);
+
+-- 分区数与 knowledge.vector.partitions 保持一致
+DO $$
+BEGIN
+    FOR i IN 0..15 LOOP
+        EXECUTE format('CREATE TABLE vector_store_p%s PARTITION OF vector_store FOR VALUES WITH (MODULUS 16, REMAINDER %s)', i, i);
+    END LOOP;
+END $$;
+
+INSERT INTO vector_store (id, content, metadata, embedding, space_id, knowledge_id)
+SELECT id, content, metadata, embedding,
+       COALESCE(space_id, (metadata->>'spaceId')::bigint),
+       COALESCE(knowledge_id, (metadata->>'knowledgeId')::bigint)
+FROM vector_store_old
+WHERE COALESCE(space_id, (metadata->>'spaceId')::bigint) IS NOT NULL;
+
+CREATE INDEX vector_store_space_id_idx ON vector_store (space_id);
+CREATE INDEX vector_store_knowledge_id_idx ON vector_store (knowledge_id);
+
+COMMIT;
+
+-- 确认数据无误后删除旧表
+-- DROP TABLE vector_store_old;
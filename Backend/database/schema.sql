@@ -30,6 +30,7 @@ CREATE TABLE `knowledge`  (
   `parent_id` bigint NULL DEFAULT NULL COMMENT '父知识ID(层级)',
   `blob_key` varchar(500) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL COMMENT 'blob name',
   `parse_job` varchar(20) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL COMMENT '解析状态：PENDING/RUNNING/DONE/FAILED',
+  `parse_progress` int NULL DEFAULT NULL COMMENT '解析进度：已完成 embedding 的分片数',
   `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updated_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`) USING BTREE,
@@ -4,11 +4,15 @@ import com.knowledgebase.backend.dto.ChatRequestDto;
 import com.knowledgebase.backend.dto.ChatResponseDto;
 import com.knowledgebase.backend.entity.Result;
 import com.knowledgebase.backend.service.ChatService;
+import com.knowledgebase.backend.utils.SseFrameEncoder;
+import com.knowledgebase.backend.utils.SseStreamWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 import reactor.core.publisher.Flux;
 
 /**
@@ -21,6 +25,7 @@ import reactor.core.publisher.Flux;
 public class ChatController {
 
     private final ChatService chatService;
+    private final SseStreamWriter sseStreamWriter;
 
     /**
      * 非流式对话
@@ -39,16 +44,21 @@ public class ChatController {
     /**
      * 流式对话（SSE）
      * POST /api/knowledge/chat/stream
+     * 类型化事件流：event:status（data: retrieving）→ event:sources（JSON，会话 ID + 引用来源）
+     * → event:token（回答内容）→ event:usage（JSON，token 数 + 分阶段耗时）；
+     * coalesceMs / coalesceTokens 控制多个 token 合并为一帧
      */
     @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> chatStream(@RequestBody ChatRequestDto request) {
+    public ResponseBodyEmitter chatStream(@RequestBody ChatRequestDto request) {
         log.info("Received chat stream request: question={}, spaceId={}, conversationId={}",
                 request.getQuestion(), request.getSpaceId(), request.getConversationId());
 
-        return chatService.chatStream(request)
+        Flux<ServerSentEvent<String>> events = chatService.chatStream(request)
                 .doOnSubscribe(subscription -> log.info("Client subscribed to chat stream"))
                 .doOnComplete(() -> log.info("Chat stream completed"))
                 .doOnError(error -> log.error("Chat stream error", error));
+        return sseStreamWriter.write(events, SseFrameEncoder.Format.EVENTS,
+                request.getCoalesceMs(), request.getCoalesceTokens());
     }
 
     /**
@@ -65,15 +75,18 @@ public class ChatController {
     /**
      * 简单LLM调用（不使用RAG，用于AI写作助手）
      * POST /api/knowledge/chat/simple-stream
+     * 帧格式为 data: {"content":"..."}，以 data: [DONE] 结束
      */
     @PostMapping(value = "/simple-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<String> simpleStream(@RequestBody @Validated ChatRequestDto request) {
+    public ResponseBodyEmitter simpleStream(@RequestBody @Validated ChatRequestDto request) {
         log.info("Received simple LLM stream request: question length={}",
                 request.getQuestion() != null ? request.getQuestion().length() : 0);
 
-        return chatService.simpleLlmStream(request.getQuestion())
+        Flux<ServerSentEvent<String>> events = chatService.simpleLlmStream(request.getQuestion())
+                .map(content -> ServerSentEvent.builder(content).build())
                 .doOnSubscribe(subscription -> log.info("Client subscribed to simple LLM stream"))
-                .doOnComplete(() -> log.info("Simple LLM stream completed"))
                 .doOnError(error -> log.error("Simple LLM stream error", error));
+        return sseStreamWriter.write(events, SseFrameEncoder.Format.JSON,
+                request.getCoalesceMs(), request.getCoalesceTokens());
     }
 }
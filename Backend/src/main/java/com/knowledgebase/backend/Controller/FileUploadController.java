@@ -2,16 +2,22 @@ package com.knowledgebase.backend.controller;
 
 import com.knowledgebase.backend.dto.FileUploadResponseDto;
 import com.knowledgebase.backend.entity.Result;
-import com.knowledgebase.backend.service.FileStorageInterface;
+import com.knowledgebase.backend.service.ContentDedupService;
+import com.knowledgebase.backend.service.StreamingUploadService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+
 /**
  * 文件上传控制器：所有上传统一走这里，便于拓展
  * @TODO: 后续可以增加文件删除接口以及鉴权
@@ -22,7 +28,8 @@ import org.springframework.web.multipart.MultipartFile;
 @Slf4j
 public class FileUploadController {
 
-    private final FileStorageInterface fileStorageService;
+    private final ContentDedupService contentDedupService;
+    private final StreamingUploadService streamingUploadService;
 
     /**
      * @param userId: 用户id（从JWT解析）
@@ -36,7 +43,7 @@ public class FileUploadController {
                                  @RequestParam(defaultValue = "common") String category,
                                  @RequestParam("file") MultipartFile file) {
         try {
-            FileUploadResponseDto res = fileStorageService.upload(file, category, userId);
+            FileUploadResponseDto res = contentDedupService.upload(file, category, userId);
             return Result.success(res, "File uploaded");
         } catch (IllegalArgumentException e) {
             return Result.error(400, e.getMessage());
@@ -45,4 +52,31 @@ public class FileUploadController {
             return Result.error(e.getMessage());
         }
     }
+
+    /**
+     * @param userId: 用户id（从JWT解析）
+     * @param category: 分类文件夹
+     * @param filename: 原始文件名（决定文件类型）
+     * @param contentHash: 客户端计算的内容 SHA-256（可空），与服务端计算结果不一致时返回 400
+     * @param request: 请求体即文件内容（application/octet-stream）
+     * @return Result<FileUploadResponseDto> blobKey、contentHash、size
+     * @description 流式上传：请求体直接写入存储，不经过 multipart 临时文件，适合大文件
+     */
+    @PostMapping(value = "/upload/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Result<FileUploadResponseDto> uploadStream(@RequestAttribute Long userId,
+                                 @RequestParam(defaultValue = "common") String category,
+                                 @RequestParam String filename,
+                                 @RequestHeader(value = "X-Content-SHA256", required = false) String contentHash,
+                                 HttpServletRequest request) {
+        try (InputStream in = request.getInputStream()) {
+            FileUploadResponseDto res = streamingUploadService.upload(in, request.getContentLengthLong(),
+                    filename, category, userId, contentHash);
+            return Result.success(res, "File uploaded");
+        } catch (IllegalArgumentException e) {
+            return Result.error(400, e.getMessage());
+        } catch (Exception e) {
+            log.error("Stream upload file failed", e);
+            return Result.error(e.getMessage());
+        }
+    }
 }
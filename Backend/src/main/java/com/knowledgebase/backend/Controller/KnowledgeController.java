@@ -8,16 +8,27 @@ import com.knowledgebase.backend.entity.Knowledge;
 import com.knowledgebase.backend.entity.Result;
 import com.knowledgebase.backend.service.FileStorageInterface;
 import com.knowledgebase.backend.service.KnowledgeService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 @RestController
@@ -25,6 +36,12 @@ import java.util.List;
 @RequestMapping("/api/knowledge")
 public class KnowledgeController {
 
+    /** Tomcat sendfile 请求属性 */
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
     private final KnowledgeService knowledgeService;
     private final FileStorageInterface fileStorageService;
 
@@ -138,34 +155,184 @@ public class KnowledgeController {
         }
     }
 
+    /**
+     * @param userId:   用户id
+     * @param id:       知识id
+     * @param category: 分类文件类别
+     * @param filename: 原始文件名
+     * @param contentHash: 客户端计算的内容 SHA-256（可空），用于完整性校验
+     * @param request:  请求体即文件内容（application/octet-stream）
+     * @return Result<FileUploadResponseDto>
+     * @description 流式上传文档文件：请求体直接写入存储并同时写入本地缓存，随后的解析任务直接读取缓存副本
+     */
+    @PostMapping(value = "/{id}/upload/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Result<FileUploadResponseDto> uploadKnowledgeFileStream(@RequestAttribute Long userId,
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "knowledge") String category,
+            @RequestParam String filename,
+            @RequestHeader(value = "X-Content-SHA256", required = false) String contentHash,
+            HttpServletRequest request) {
+        try (InputStream in = request.getInputStream()) {
+            FileUploadResponseDto res = knowledgeService.uploadOssFile(id, in, request.getContentLengthLong(),
+                    filename, category, userId, contentHash);
+            return Result.success(res, "Knowledge file uploaded");
+        } catch (IllegalArgumentException e) {
+            return Result.error(400, e.getMessage());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
     /**
      * @param id 知识id
-     * @return ResponseEntity<InputStreamResource>
+     * @param range Range 请求头（可空）
+     * @param ifNoneMatch If-None-Match 请求头（可空）
+     * @param ifRange If-Range 请求头（可空）
+     * @return ResponseEntity<?>
      * @description 下载知识文件
+     *              - 强 ETag 由 blobKey 计算，If-None-Match 命中时返回 304，不读取文件内容
+     *              - 单段 Range 返回 206，远端存储只请求该区间；多段 Range 合并为覆盖它们的单段
+     *              - 本地文件（本地存储或已缓存）通过 Tomcat sendfile 由内核直接把文件写入 socket
      */
     @GetMapping("/{id}/file")
-    public ResponseEntity<InputStreamResource> downloadKnowledgeFile(@PathVariable Long id) {
+    public ResponseEntity<?> downloadKnowledgeFile(@PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            HttpServletRequest request, HttpServletResponse response) {
         try {
-            var fileDto = knowledgeService.getKnowledgeFile(id);
+            var info = knowledgeService.getKnowledgeFileInfo(id);
             HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(fileDto.getContentType()));
-            headers.setContentLength(fileDto.getContentLength());
+            headers.setETag(info.getEtag());
+            // 允许浏览器缓存，但每次使用前用 ETag 重新验证（知识可能换了文件）
+            headers.setCacheControl(CacheControl.noCache().cachePrivate());
+            if (info.getLastModified() > 0) {
+                headers.setLastModified(info.getLastModified());
+            }
+            if (etagMatches(ifNoneMatch, info.getEtag())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+            }
 
+            headers.setContentType(MediaType.parseMediaType(info.getContentType()));
             // Encode filename for UTF-8 support (RFC 5987)
             // Only use filename* parameter to avoid ASCII encoding issues with Chinese
             // characters
-            String encodedFilename = URLEncoder.encode(fileDto.getFilename(), StandardCharsets.UTF_8)
+            String encodedFilename = URLEncoder.encode(info.getFilename(), StandardCharsets.UTF_8)
                     .replace("+", "%20");
             headers.set(HttpHeaders.CONTENT_DISPOSITION,
                     "inline; filename*=UTF-8''" + encodedFilename);
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+            long length = info.getContentLength();
+            long start = 0;
+            long end = length - 1;
+            HttpStatus status = HttpStatus.OK;
+            // If-Range 与当前 ETag 不一致时说明客户端持有的是旧文件，忽略 Range 返回整个文件
+            List<HttpRange> ranges = ifRange == null || ifRange.equals(info.getEtag())
+                    ? parseRanges(range) : List.of();
+            if (!ranges.isEmpty()) {
+                start = Long.MAX_VALUE;
+                end = -1;
+                for (HttpRange r : ranges) {
+                    try {
+                        start = Math.min(start, r.getRangeStart(length));
+                        end = Math.max(end, r.getRangeEnd(length));
+                    } catch (IllegalArgumentException e) {
+                        // 不可满足的区间跳过
+                    }
+                }
+                if (start >= length || end < start) {
+                    headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    headers.remove(HttpHeaders.CONTENT_TYPE);
+                    headers.remove(HttpHeaders.CONTENT_DISPOSITION);
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+                }
+                status = HttpStatus.PARTIAL_CONTENT;
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+            long count = end - start + 1;
+            headers.setContentLength(count);
 
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(new InputStreamResource(fileDto.getStream()));
+            if (info.getLocalPath() != null) {
+                return localFileResponse(info.getLocalPath(), start, count, status, headers, request, response);
+            }
+            var fileDto = status == HttpStatus.OK
+                    ? knowledgeService.getKnowledgeFile(id)
+                    : knowledgeService.getKnowledgeFile(id, start, count);
+            return streamResponse(fileDto.getStream(), status, headers, request, response);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    /**
+     * @param path    本地文件路径
+     * @param start   起始字节
+     * @param count   发送字节数
+     * @param status  200/206
+     * @param headers 已设置好的响应头
+     * @return ResponseEntity<?>
+     * @description 本地文件响应：容器支持 sendfile 时只设置请求属性、不写响应体，否则退化为 ResourceRegion/流
+     */
+    private ResponseEntity<?> localFileResponse(Path path, long start, long count, HttpStatus status,
+            HttpHeaders headers, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (count > 0 && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, path.toRealPath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + count);
+            return ResponseEntity.status(status).headers(headers).build();
+        }
+        if (status == HttpStatus.PARTIAL_CONTENT) {
+            return ResponseEntity.status(status).headers(headers)
+                    .body(new ResourceRegion(new FileSystemResource(path), start, count));
+        }
+        return streamResponse(Files.newInputStream(path), status, headers, request, response);
+    }
+
+    /**
+     * @description 写出已确定区间的流
+     *              请求带 Range 头而响应为 200 时（If-Range 不匹配、Range 无法解析），Spring 会对 Resource 类型的
+     *              响应体再做一次区间切分，这种情况直接写入 HttpServletResponse
+     */
+    private ResponseEntity<?> streamResponse(InputStream stream, HttpStatus status, HttpHeaders headers,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (status == HttpStatus.PARTIAL_CONTENT || request.getHeader(HttpHeaders.RANGE) == null) {
+            return ResponseEntity.status(status).headers(headers).body(new InputStreamResource(stream));
+        }
+        response.setStatus(status.value());
+        headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        try (InputStream in = stream) {
+            in.transferTo(response.getOutputStream());
+        }
+        return null;
+    }
+
+    private boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<HttpRange> parseRanges(String range) {
+        if (range == null || range.isBlank()) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
 }
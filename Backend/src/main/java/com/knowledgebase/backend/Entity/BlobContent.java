@@ -0,0 +1,25 @@
+package com.knowledgebase.backend.entity;
+
+/**
+ * @description: 内容寻址索引（blob_content 表）
+ * 同一用户、同一分类下内容 hash 相同的上传复用同一个 blob
+ */
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BlobContent {
+    private String contentHash;         // 文件内容 SHA-256（十六进制）
+    private String category;            // 分类文件夹
+    private Long userId;                // 上传用户，复用只在同一用户内进行
+    private String blobKey;             // 首次上传时生成的 blobKey
+    private Long size;                  // 文件大小（字节）
+    private LocalDateTime createdAt;    // 创建时间
+}
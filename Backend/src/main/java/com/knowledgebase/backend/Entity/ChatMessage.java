@@ -0,0 +1,24 @@
+package com.knowledgebase.backend.entity;
+
+/**
+ * @description: 对话消息（chat_message 表）
+ * chat.conversation.store=jdbc 时由 JdbcConversationStore 异步批量写入
+ */
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatMessage {
+    private Long id;                    // 消息id，同一会话内按写入顺序递增
+    private String conversationId;      // 会话id
+    private String role;                // USER/ASSISTANT
+    private String content;             // 消息内容
+    private LocalDateTime createdAt;    // 消息产生时间
+}
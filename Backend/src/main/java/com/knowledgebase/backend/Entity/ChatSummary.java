@@ -0,0 +1,23 @@
+package com.knowledgebase.backend.entity;
+
+/**
+ * @description: 会话滚动摘要（chat_summary 表）
+ * 每个会话一行，由 ConversationSummarizer 异步生成后写入
+ */
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatSummary {
+    private String conversationId;      // 会话id
+    private String content;             // 摘要内容
+    private Long throughSeq;            // 已折叠进摘要的消息数
+    private LocalDateTime updatedAt;    // 更新时间
+}
@@ -0,0 +1,16 @@
+package com.knowledgebase.backend.entity;
+
+/**
+ * @description: 会话在 chat_message 表中的消息数（按会话分组计数的查询结果）
+ */
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationCount {
+    private String conversationId;      // 会话id
+    private Long messageCount;          // 已落库的消息数
+}
@@ -24,6 +24,7 @@ public class Knowledge {
     private Long parentId;              // 父知识id
     private String blobKey;             // OSS文件路径
     private String parseJob;            // 解析状态：PENDING/RUNNING/DONE/FAILED
+    private Integer parseProgress;      // 解析进度：已完成 embedding 的分片数
     private LocalDateTime createdAt;    // 创建时间
     private LocalDateTime updatedAt;    // 更新时间
 }
@@ -0,0 +1,32 @@
+package com.knowledgebase.backend.entity;
+
+/**
+ * @description: 解析任务队列实体（parse_job_queue 表）
+ * knowledge.parse_job 仍是对外可见的状态机，这里负责持久化排队、租约和重试
+ */
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ParseJob {
+    private Long id;                    // 任务id
+    private Long knowledgeId;           // 所属知识id
+    private String jobType;             // DOC：解析文件；MANUAL：Markdown 重新向量化
+    private String blobKey;             // DOC 任务的文件 blobKey
+    private String lane;                // 优先级通道：FAST/BULK
+    private String status;              // PENDING/RUNNING/DONE/FAILED
+    private Integer attempts;           // 已尝试次数
+    private LocalDateTime nextRunAt;    // 下次可执行时间（重试退避）
+    private String leaseOwner;          // 持有租约的节点
+    private LocalDateTime leaseUntil;   // 租约到期时间，过期视为节点崩溃可被重新领取
+    private String lastError;           // 最近一次失败原因
+    private LocalDateTime createdAt;    // 创建时间
+    private LocalDateTime updatedAt;    // 更新时间
+}
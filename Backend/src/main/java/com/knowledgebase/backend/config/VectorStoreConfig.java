@@ -1,15 +1,22 @@
 package com.knowledgebase.backend.config;
 
+import com.knowledgebase.backend.vector.CachingEmbeddingModel;
+import com.knowledgebase.backend.vector.EmbeddingCache;
+import com.knowledgebase.backend.vector.IndexVersions;
+import com.knowledgebase.backend.vector.LexicalIndex;
+import com.knowledgebase.backend.vector.PgChunkVectorStore;
+import com.knowledgebase.backend.vector.QueryEmbeddingCache;
+import com.knowledgebase.backend.vector.VersionedVectorStore;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import javax.sql.DataSource;
+import java.util.Locale;
 
 /**
  * 向量存储配置
@@ -21,15 +28,43 @@ public class VectorStoreConfig {
     @Value("${spring.ai.vectorstore.pgvector.dimension:1536}")
     private int dimensions;
 
+    @Value("${knowledge.vector.table:vector_store}")
+    private String table;
+
+    @Value("${knowledge.vector.partitioning:none}")
+    private String partitioning;
+
+    @Value("${knowledge.vector.partitions:16}")
+    private int partitions;
+
+    /**
+     * 带分片缓存的 EmbeddingModel（主实现）
+     * 写入分片时先查 embedding 缓存，未变化的分片不再重复调用远端模型；
+     * 检索问题的 embedding 走内存中的问题缓存；
+     * 这里注入的 embeddingModel 是智谱自动配置的原始实现（Spring 会排除自引用）
+     */
+    @Primary
+    @Bean
+    public CachingEmbeddingModel cachingEmbeddingModel(EmbeddingModel embeddingModel, EmbeddingCache embeddingCache,
+                                                       QueryEmbeddingCache queryEmbeddingCache) {
+        return new CachingEmbeddingModel(embeddingModel, embeddingCache, queryEmbeddingCache);
+    }
+
+    /**
+     * 分片表：spaceId / knowledgeId 存为带索引的列，可按 space_id 分区
+     * 向量库写入后递增对应 space 的索引版本（检索结果缓存据此失效），并同步写入全文索引
+     */
     @Bean
-    public VectorStore vectorStore(
+    public VersionedVectorStore vectorStore(
             @Qualifier("postgresDataSource") DataSource postgresDataSource,
-            EmbeddingModel embeddingModel) {
+            CachingEmbeddingModel embeddingModel,
+            IndexVersions indexVersions,
+            LexicalIndex lexicalIndex) {
         JdbcTemplate jdbcTemplate = new JdbcTemplate(postgresDataSource);
-        return PgVectorStore.builder(jdbcTemplate, embeddingModel)
-                .dimensions(dimensions)
-                .distanceType(PgVectorStore.PgDistanceType.COSINE_DISTANCE)
-                .initializeSchema(true)
-                .build();
+        // ANN 索引由 AnnIndexManager 按配置创建和在线重建
+        PgChunkVectorStore chunkStore = new PgChunkVectorStore(jdbcTemplate, embeddingModel, table, dimensions,
+                partitioning.trim().toLowerCase(Locale.ROOT), partitions);
+        chunkStore.initializeSchema();
+        return new VersionedVectorStore(chunkStore, indexVersions, lexicalIndex);
     }
 }
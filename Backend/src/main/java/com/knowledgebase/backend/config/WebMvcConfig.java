@@ -1,13 +1,17 @@
 package com.knowledgebase.backend.config;
 
+import com.knowledgebase.backend.utils.SseFramesHttpMessageConverter;
 import com.knowledgebase.backend.web.interceptor.JwtInterceptor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.List;
+
 /**
- * @description: Web层配置，目前只是注册JWT拦截器
+ * @description: Web层配置：注册JWT拦截器和 SSE 帧的消息转换器
  * @date: 2025/12/13 23:41
  */
 @Configuration
@@ -22,5 +26,13 @@ public class WebMvcConfig implements WebMvcConfigurer {
                 .addPathPatterns("/api/**")     // 除了/auth（登录注册）外，所有路径都需进行JWT校验
                 .excludePathPatterns("/api/auth/**");
     }
+
+    /**
+     * 流式对话的 SSE 帧直接从编码器缓冲区写出（见 SseStreamWriter）
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new SseFramesHttpMessageConverter());
+    }
 }
 
@@ -0,0 +1,15 @@
+package com.knowledgebase.backend.dao;
+
+import com.knowledgebase.backend.entity.BlobContent;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+@Mapper
+public interface BlobContentMapper {
+
+    BlobContent selectByHash(@Param("contentHash") String contentHash, @Param("category") String category,
+                             @Param("userId") Long userId);
+
+    /** 已存在同一内容时不插入，返回 0 表示并发上传中另一份先登记 */
+    int insertIgnore(BlobContent blobContent);
+}
@@ -0,0 +1,30 @@
+package com.knowledgebase.backend.dao;
+
+import com.knowledgebase.backend.entity.ChatMessage;
+import com.knowledgebase.backend.entity.ConversationCount;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface ChatMessageMapper {
+
+    /** 批量写入，按列表顺序插入 */
+    int insertBatch(@Param("messages") List<ChatMessage> messages);
+
+    /** 会话最近的 limit 条消息，按 id 倒序 */
+    List<ChatMessage> selectRecent(@Param("conversationId") String conversationId, @Param("limit") int limit);
+
+    long countByConversationId(@Param("conversationId") String conversationId);
+
+    /** 多个会话的消息数，没有消息的会话不返回 */
+    List<ConversationCount> countByConversationIds(@Param("conversationIds") Collection<String> conversationIds);
+
+    int deleteByConversationId(@Param("conversationId") String conversationId);
+
+    /** 删除早于指定时间的消息，每次最多 limit 行 */
+    int deleteCreatedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
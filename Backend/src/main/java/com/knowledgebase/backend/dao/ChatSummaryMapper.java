@@ -0,0 +1,20 @@
+package com.knowledgebase.backend.dao;
+
+import com.knowledgebase.backend.entity.ChatSummary;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+
+@Mapper
+public interface ChatSummaryMapper {
+
+    ChatSummary selectByConversationId(@Param("conversationId") String conversationId);
+
+    /** 插入或更新，只在 throughSeq 比已有摘要更大时覆盖（异步摘要可能乱序完成） */
+    int upsert(ChatSummary summary);
+
+    int deleteByConversationId(@Param("conversationId") String conversationId);
+
+    int deleteUpdatedBefore(@Param("before") LocalDateTime before);
+}
@@ -21,12 +21,18 @@ public interface KnowledgeMapper {
 
     int updateParseJob(@Param("id") Long id, @Param("parseJob") String parseJob);
 
+    /** 解析进度：已完成 embedding 的分片数，不改动 updated_at */
+    int updateParseProgress(@Param("id") Long id, @Param("progress") int progress);
+
     int deleteById(@Param("id") Long id);
 
     Knowledge selectById(@Param("id") Long id);
 
     List<Knowledge> selectByIds(@Param("ids") List<Long> ids);
 
+    /** 查找引用同一 blob 且已解析完成的其他知识，用于复制向量 */
+    Long selectParsedIdByBlobKey(@Param("blobKey") String blobKey, @Param("excludeId") Long excludeId);
+
     List<Knowledge> listBySpace(@Param("spaceId") Long spaceId);
 
     List<Knowledge> listBySpaceAndParent(@Param("spaceId") Long spaceId,
@@ -0,0 +1,45 @@
+package com.knowledgebase.backend.dao;
+
+import com.knowledgebase.backend.entity.ParseJob;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface ParseJobMapper {
+
+    int insert(ParseJob job);
+
+    /** 查找同一知识同类型、尚未开始执行的任务，用于合并重复入队 */
+    ParseJob selectPending(@Param("knowledgeId") Long knowledgeId, @Param("jobType") String jobType);
+
+    /** 合并入队：刷新待执行任务的 blobKey / 通道并立即可执行 */
+    int refreshPending(@Param("id") Long id, @Param("blobKey") String blobKey, @Param("lane") String lane);
+
+    /** 查找某通道可领取的任务 id：到期的 PENDING 任务或租约已过期的 RUNNING 任务 */
+    List<Long> selectClaimable(@Param("lane") String lane, @Param("limit") int limit);
+
+    /** 乐观领取：条件更新成功（返回 1）才算拿到租约 */
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds);
+
+    ParseJob selectById(@Param("id") Long id);
+
+    /** 续租：长任务执行期间定期延长租约 */
+    int renewLeases(@Param("ids") List<Long> ids, @Param("owner") String owner,
+            @Param("leaseSeconds") int leaseSeconds);
+
+    int markDone(@Param("id") Long id, @Param("owner") String owner);
+
+    int markFailed(@Param("id") Long id, @Param("owner") String owner, @Param("error") String error);
+
+    /** 失败重试：回到 PENDING，延迟 delaySeconds 后可再次领取 */
+    int reschedule(@Param("id") Long id, @Param("owner") String owner,
+            @Param("delaySeconds") long delaySeconds, @Param("error") String error);
+
+    /** 启动恢复：租约过期的 RUNNING 任务重新置为 PENDING；ownerPrefix 不为空时同时回收该节点上一次进程遗留的任务 */
+    int recoverStale(@Param("ownerPrefix") String ownerPrefix);
+
+    /** 启动恢复：parse_job 停在 PENDING/RUNNING 却没有活跃队列任务的 DOC 知识（旧版 @Async 遗留） */
+    List<ParseJob> selectOrphanedDocs();
+}
@@ -50,12 +50,33 @@ public class ChatRequestDto {
     private Double similarityThreshold = 0.7;
 
     /**
-     * 每个知识返回的最大 chunk 数量（默认 5）
-     * 基于分析：TokenTextSplitter 默认 ~800 tokens/chunk
-     * GLM-4-Flash 上下文 128k tokens
-     * topK=5 * chunksPerKnowledge=5 * 800 = 20k tokens（参考资料）
-     * 留余 108k tokens 给对话历史 + AI 回复
+     * 每个知识最多装入上下文的 chunk 数量（默认 5）
+     * 所有知识的 chunk 按分数统一排序后装入，不再取每个知识的前 N 个
      */
     @Builder.Default
     private Integer chunksPerKnowledge = 5;
+
+    /**
+     * 参考资料的 token 预算（可选），不能超过 knowledge.context.max-tokens
+     * TokenTextSplitter 默认 ~800 tokens/chunk，默认预算 20k tokens 约 25 个 chunk，
+     * GLM 上下文 128k tokens，其余留给对话历史 + AI 回复
+     */
+    private Integer maxContextTokens;
+
+    /**
+     * 向量检索力度（可选）：HNSW 索引为 ef_search，IVFFlat 索引为 probes
+     * 越大召回越高、延迟越高；为空时使用数据库默认值（ef_search=40）
+     */
+    private Integer searchEffort;
+
+    /**
+     * 流式接口的 token 合并窗口（毫秒，可选）：窗口内的 token 合并为一个 SSE 帧，0 表示每个 token 一帧
+     * 为空时使用 chat.stream.sse.coalesce-ms
+     */
+    private Integer coalesceMs;
+
+    /**
+     * 一个合并窗口最多包含的 token 数（可选），为空时使用 chat.stream.sse.coalesce-tokens
+     */
+    private Integer coalesceTokens;
 }
@@ -35,4 +35,9 @@ public class ChatResponseDto {
      * 检索到的相关片段数量
      */
     private Integer retrievedCount;
+
+    /**
+     * 参考资料占用的 token 数（与分片使用同一 tokenizer 计数）
+     */
+    private Integer contextTokens;
 }
@@ -0,0 +1,38 @@
+package com.knowledgebase.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 流式对话的 sources 事件：检索完成后、生成开始前发送，前端据此立即渲染引用来源
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSourcesDto {
+
+    /**
+     * 会话 ID（新会话时为服务端创建的 ID，后续轮次需带上）
+     */
+    private String conversationId;
+
+    /**
+     * 本轮命中并装入上下文的知识来源
+     */
+    private List<SourceDto> sources;
+
+    /**
+     * 检索到的相关知识数量
+     */
+    private Integer retrievedCount;
+
+    /**
+     * 参考资料占用的 token 数
+     */
+    private Integer contextTokens;
+}
@@ -0,0 +1,46 @@
+package com.knowledgebase.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 流式对话的 usage 事件：生成结束后最后发送
+ * token 数与分片使用同一 tokenizer 计数（智谱流式响应不返回 usage）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatUsageDto {
+
+    /**
+     * 发送给大模型的消息（系统 Prompt + 历史）的 token 数
+     */
+    private Integer promptTokens;
+
+    /**
+     * 回答的 token 数
+     */
+    private Integer completionTokens;
+
+    private Integer totalTokens;
+
+    /**
+     * 首 token 耗时（毫秒），没有调用大模型时为 -1
+     */
+    private Long ttftMs;
+
+    /**
+     * 请求总耗时（毫秒）
+     */
+    private Long totalMs;
+
+    /**
+     * 各阶段耗时（毫秒）：queue / retrieval / context / generation
+     */
+    private Map<String, Long> stages;
+}
@@ -11,4 +11,6 @@ import lombok.NoArgsConstructor;
 @Builder
 public class FileUploadResponseDto {
     private String blobKey;   // blobName/key stored in DB
+    private String contentHash; // 内容 SHA-256（流式上传时计算）
+    private Long size;          // 文件大小（字节）
 }
@@ -41,4 +41,9 @@ public class KnowledgeSearchResultDto {
      * 平均相似度分数
      */
     private Double avgScore;
+
+    /**
+     * 排序分数：混合检索为各分片融合分数之和，纯向量检索为平均相似度
+     */
+    private Double rankScore;
 }
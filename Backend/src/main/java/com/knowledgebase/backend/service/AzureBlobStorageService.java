@@ -4,10 +4,19 @@ import com.knowledgebase.backend.dto.FileUploadResponseDto;
 import com.knowledgebase.backend.service.FileDownloadDto;
 import com.knowledgebase.backend.utils.AzureBlobClient;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+
+/**
+ * Azure Blob 存储实现，默认启用（storage.type=azure）
+ */
 @Service
+@Qualifier("storageBackend")
+@ConditionalOnProperty(name = "storage.type", havingValue = "azure", matchIfMissing = true)
 @RequiredArgsConstructor
 public class AzureBlobStorageService implements FileStorageInterface {
 
@@ -25,8 +34,28 @@ public class AzureBlobStorageService implements FileStorageInterface {
         return azureBlobClient.upload(file, category, userId);
     }
 
+    @Override
+    public FileUploadResponseDto upload(InputStream in, long size, String blobKey, String contentType) {
+        return azureBlobClient.upload(in, size, blobKey, contentType);
+    }
+
     @Override
     public FileDownloadDto download(String blobKey) {
         return azureBlobClient.download(blobKey);
     }
+
+    @Override
+    public FileDownloadDto stat(String blobKey) {
+        return azureBlobClient.stat(blobKey);
+    }
+
+    @Override
+    public FileDownloadDto download(String blobKey, long offset, long count) {
+        return azureBlobClient.download(blobKey, offset, count);
+    }
+
+    @Override
+    public void delete(String blobKey) {
+        azureBlobClient.delete(blobKey);
+    }
 }
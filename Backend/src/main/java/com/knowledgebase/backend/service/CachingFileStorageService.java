@@ -0,0 +1,182 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dto.FileUploadResponseDto;
+import com.knowledgebase.backend.utils.BlobContentCache;
+import com.knowledgebase.backend.utils.BlobKeys;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 带内容缓存的文件存储（装饰 storage.type 选中的后端）
+ * 解析、预览、重新解析都经过这里：先查堆内层，再查本地磁盘层，都未命中才访问远端存储，
+ * 远端下载的内容在读完后写入缓存；上传成功的文件直接写入缓存，随后的首次解析也不再下载。
+ * 后端本身是本地磁盘时不做缓存。
+ */
+@Service
+@Primary
+@Slf4j
+public class CachingFileStorageService implements FileStorageInterface {
+
+    private final FileStorageInterface backend;
+    private final BlobContentCache cache;
+    private final BlobKeys blobKeys;
+    private final boolean passThrough;
+
+    public CachingFileStorageService(@Qualifier("storageBackend") FileStorageInterface backend,
+                                     BlobContentCache cache, BlobKeys blobKeys) {
+        this.backend = backend;
+        this.cache = cache;
+        this.blobKeys = blobKeys;
+        this.passThrough = !cache.isEnabled() || backend instanceof LocalFileStorageService;
+    }
+
+    @Override
+    public FileUploadResponseDto upload(MultipartFile file, String category, Long userId) {
+        FileUploadResponseDto res = backend.upload(file, category, userId);
+        if (!passThrough) {
+            try (InputStream in = file.getInputStream()) {
+                cache.put(res.getBlobKey(), in);
+            } catch (IOException e) {
+                log.warn("Failed to warm blob cache for {}", res.getBlobKey(), e);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * 流式上传时同时写入缓存，上传完成后解析直接读取缓存副本，不再回源下载
+     */
+    @Override
+    public FileUploadResponseDto upload(InputStream in, long size, String blobKey, String contentType) {
+        if (passThrough) {
+            return backend.upload(in, size, blobKey, contentType);
+        }
+        InputStream tee = cache.tee(blobKey, in);
+        boolean uploaded = false;
+        try {
+            FileUploadResponseDto res = backend.upload(tee, size, blobKey, contentType);
+            uploaded = true;
+            return res;
+        } finally {
+            try {
+                tee.close();
+            } catch (IOException e) {
+                log.warn("Failed to close upload stream for {}", blobKey, e);
+            }
+            if (!uploaded) {
+                cache.remove(blobKey);
+            }
+        }
+    }
+
+    @Override
+    public FileDownloadDto download(String blobKey) {
+        if (passThrough) {
+            return backend.download(blobKey);
+        }
+        byte[] bytes = cache.getFromMemory(blobKey);
+        if (bytes != null) {
+            return cached(blobKey, new ByteArrayInputStream(bytes), bytes.length, null);
+        }
+        Path path = cache.getFromDisk(blobKey);
+        if (path != null) {
+            try {
+                return cached(blobKey, Files.newInputStream(path), Files.size(path), path);
+            } catch (NoSuchFileException e) {
+                // 命中后恰好被淘汰，回源
+            } catch (IOException e) {
+                log.warn("Failed to read cached blob {}, falling back to storage", blobKey, e);
+            }
+        }
+        FileDownloadDto remote = backend.download(blobKey);
+        remote.setStream(cache.tee(blobKey, remote.getStream()));
+        return remote;
+    }
+
+    @Override
+    public FileDownloadDto stat(String blobKey) {
+        if (!passThrough) {
+            Path path = cache.locate(blobKey);
+            if (path != null) {
+                try {
+                    FileDownloadDto dto = cached(blobKey, null, Files.size(path), path);
+                    dto.setLastModified(Files.getLastModifiedTime(path).toMillis());
+                    return dto;
+                } catch (IOException e) {
+                    // 已被淘汰，回源
+                }
+            }
+        }
+        return backend.stat(blobKey);
+    }
+
+    /**
+     * 区间读取：命中缓存时直接切片，未命中时只向后端请求该区间（不写入缓存）
+     */
+    @Override
+    public FileDownloadDto download(String blobKey, long offset, long count) {
+        if (passThrough) {
+            return backend.download(blobKey, offset, count);
+        }
+        byte[] bytes = cache.getFromMemory(blobKey);
+        if (bytes != null) {
+            return cached(blobKey, new ByteArrayInputStream(bytes, (int) offset, (int) count), count, null);
+        }
+        Path path = cache.getFromDisk(blobKey);
+        if (path != null) {
+            try {
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ).position(offset);
+                InputStream in = BoundedInputStream.builder()
+                        .setInputStream(Channels.newInputStream(channel))
+                        .setMaxCount(count)
+                        .get();
+                return cached(blobKey, in, count, path);
+            } catch (NoSuchFileException e) {
+                // 命中后恰好被淘汰，回源
+            } catch (IOException e) {
+                log.warn("Failed to read cached blob {}, falling back to storage", blobKey, e);
+            }
+        }
+        return backend.download(blobKey, offset, count);
+    }
+
+    @Override
+    public void delete(String blobKey) {
+        if (!passThrough) {
+            cache.remove(blobKey);
+        }
+        backend.delete(blobKey);
+    }
+
+    private FileDownloadDto cached(String blobKey, InputStream stream, long length, Path localPath) {
+        return FileDownloadDto.builder()
+                .stream(stream)
+                .contentLength(length)
+                .contentType(contentType(blobKey))
+                .filename(blobKeys.extractFilename(blobKey))
+                .localPath(localPath)
+                .build();
+    }
+
+    private String contentType(String blobKey) {
+        try {
+            return blobKeys.resolveContentType(null, blobKeys.getExtension(blobKey));
+        } catch (IllegalArgumentException e) {
+            return "application/octet-stream";
+        }
+    }
+}
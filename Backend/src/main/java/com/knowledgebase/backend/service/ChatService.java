@@ -1,20 +1,41 @@
 package com.knowledgebase.backend.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.knowledgebase.backend.dto.ChatRequestDto;
 import com.knowledgebase.backend.dto.ChatResponseDto;
+import com.knowledgebase.backend.dto.ChatSourcesDto;
+import com.knowledgebase.backend.dto.ChatUsageDto;
 import com.knowledgebase.backend.dto.KnowledgeSearchResultDto;
 import com.knowledgebase.backend.dto.SourceDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -29,6 +50,31 @@ public class ChatService {
     private final KnowledgeService knowledgeService;
     private final ConversationManager conversationManager;
     private final ChatModel chatModel;
+    private final ContextPacker contextPacker;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 流式对话检索线程数上限：检索（向量化 + pgvector 查询）是阻塞的，在这个有界线程池上执行
+     */
+    @Value("${chat.stream.retrieval-threads:16}")
+    private int retrievalThreads;
+
+    /**
+     * 等待检索线程的请求数上限，超出时流式请求直接失败
+     */
+    @Value("${chat.stream.retrieval-queue:1000}")
+    private int retrievalQueue;
+
+    private Scheduler retrievalScheduler;
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * 本轮和之前的轮次都没有检索到相关知识时的固定回答，与提问一起写入历史
+     */
+    private static final String NO_CONTEXT_ANSWER = "抱歉，我在知识库中没有找到与您的问题相关的信息。";
 
     /**
      * 系统 Prompt 模板
@@ -48,6 +94,23 @@ public class ChatService {
             %s
             """;
 
+    private static final String SUMMARY_PROMPT_TEMPLATE = """
+
+            **之前的对话摘要：**
+            %s
+            """;
+
+    @PostConstruct
+    void init() {
+        retrievalScheduler = Schedulers.newBoundedElastic(retrievalThreads, retrievalQueue, "chat-retrieval");
+        Gauge.builder("chat.stream.active", activeStreams, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        retrievalScheduler.dispose();
+    }
+
     /**
      * 非流式对话（返回完整回答）
      */
@@ -64,62 +127,159 @@ public class ChatService {
                 request.getSpaceId(),
                 request.getKnowledgeIds(),
                 request.getTopK(),
-                request.getSimilarityThreshold());
+                request.getSimilarityThreshold(),
+                request.getSearchEffort());
+
+        // 3. 在会话已有的参考资料上增量更新（每轮都检索，只追加新分片）
+        ContextPacker.PackedContext context = buildContext(conversationId, searchResults, request);
 
-        if (searchResults.isEmpty()) {
-            // 没有检索到相关知识
+        if (context.chunks() == 0) {
+            // 本轮和之前的轮次都没有检索到相关知识：提问和固定回答都记入历史，下一轮能看到这一问
+            conversationManager.addUserMessage(conversationId, request.getQuestion());
+            conversationManager.addAssistantMessage(conversationId, NO_CONTEXT_ANSWER);
             return ChatResponseDto.builder()
-                    .answer("抱歉，我在知识库中没有找到与您的问题相关的信息。")
+                    .answer(NO_CONTEXT_ANSWER)
                     .conversationId(conversationId)
                     .sources(List.of())
                     .retrievedCount(0)
                     .build();
         }
 
-        // 3. 构造上下文
-        String context = buildContext(searchResults, request.getChunksPerKnowledge());
-
-        // 4. 构造系统消息（仅在新会话或首次使用知识库时添加）
-        List<Message> history = conversationManager.getHistory(conversationId);
-        if (history.isEmpty()) {
-            conversationManager.addSystemMessage(conversationId,
-                    String.format(SYSTEM_PROMPT_TEMPLATE, context));
-        }
-
-        // 5. 添加用户消息
+        // 4. 组装消息，添加用户消息
+        List<Message> messages = buildMessages(conversationId, context, request.getQuestion());
         conversationManager.addUserMessage(conversationId, request.getQuestion());
 
-        // 6. 调用大模型
+        // 5. 调用大模型（系统消息每轮按最新参考资料生成，不写入历史）
         ChatClient chatClient = ChatClient.builder(chatModel).build();
         String answer = chatClient.prompt()
-                .messages(conversationManager.getHistory(conversationId))
+                .messages(messages)
                 .call()
                 .content();
 
-        // 7. 保存 AI 回复到历史
+        // 6. 保存 AI 回复到历史
         conversationManager.addAssistantMessage(conversationId, answer);
 
-        // 8. 构造响应
-        List<SourceDto> sources = buildSources(searchResults);
+        // 7. 构造响应（来源只列出本轮命中并装入上下文的知识）
+        List<SourceDto> sources = buildSources(context.knowledges());
 
         return ChatResponseDto.builder()
                 .answer(answer)
                 .conversationId(conversationId)
                 .sources(sources)
                 .retrievedCount(searchResults.size())
+                .contextTokens(context.tokens())
                 .build();
     }
 
     /**
      * 流式对话（逐字返回）
+     * 返回时不做任何阻塞操作：先发出 status=retrieving 事件，检索、组装上下文在有界的检索线程池上执行，
+     * 随后的大模型流式调用是非阻塞的，请求线程和检索线程都不会在生成期间被占用
+     * 事件顺序：status → sources（检索完成即发送，含会话 ID 和引用来源）→ 无名 token 事件 → usage（token 数和分阶段耗时）
+     * 客户端断开时订阅被取消：取消信号传到大模型的流式请求，停止生成；已生成的部分回答保存到会话历史
+     * 用户消息在开始生成时才写入历史，检索阶段取消不会留下没有回答的提问
+     * 检索阶段取消时中断检索线程（Reactor 取消 subscribeOn 的任务时 cancel(true)），并置取消标记：
+     * 不响应中断的步骤（如 JDBC 查询）执行完后，后续步骤不再执行
      */
-    public Flux<String> chatStream(ChatRequestDto request) {
+    public Flux<ServerSentEvent<String>> chatStream(ChatRequestDto request) {
+        ChatTimings timings = new ChatTimings(meterRegistry);
+        AtomicReference<String> phase = new AtomicReference<>("retrieval");
+
+        AtomicBoolean retrievalCancelled = new AtomicBoolean();
+        Mono<StreamPrompt> prompt = Mono.fromCallable(() -> prepareStream(request, timings, retrievalCancelled))
+                .subscribeOn(retrievalScheduler)
+                // 取消后被中断的步骤可能抛出异常，下游已取消，直接结束
+                .onErrorResume(e -> retrievalCancelled.get(), e -> Mono.empty())
+                .doOnCancel(() -> retrievalCancelled.set(true));
+
+        Flux<ServerSentEvent<String>> answer = prompt.flatMapMany(p -> {
+            phase.set("generation");
+            StringBuilder fullAnswer = new StringBuilder();
+            Flux<String> tokens;
+            if (p.context().chunks() == 0) {
+                tokens = Flux.just(NO_CONTEXT_ANSWER)
+                        .doOnSubscribe(s -> conversationManager.addUserMessage(p.conversationId(), p.question()))
+                        .doOnNext(fullAnswer::append)
+                        .doOnComplete(() -> {
+                            timings.mark("generation");
+                            conversationManager.addAssistantMessage(p.conversationId(), NO_CONTEXT_ANSWER);
+                        });
+            } else {
+                tokens = ChatClient.builder(chatModel).build().prompt()
+                        .messages(p.messages())
+                        .stream()
+                        .content()
+                        .doOnSubscribe(s -> conversationManager.addUserMessage(p.conversationId(), p.question()))
+                        .doOnNext(content -> {
+                            timings.firstToken();
+                            fullAnswer.append(content);
+                        })
+                        .doOnComplete(() -> {
+                            // 流式完成后保存完整回复到历史
+                            timings.mark("generation");
+                            conversationManager.addAssistantMessage(p.conversationId(), fullAnswer.toString());
+                            log.info("Chat stream completed for conversation {}: {}", p.conversationId(), timings);
+                        })
+                        .doOnCancel(() -> {
+                            // 客户端断开：保存已生成的部分，下一轮对话仍能看到这段回答
+                            timings.mark("generation");
+                            String partial = fullAnswer.toString();
+                            int generated = contextPacker.countTokens(partial);
+                            DistributionSummary.builder("chat.stream.cancelled.tokens").register(meterRegistry)
+                                    .record(generated);
+                            if (!partial.isEmpty()) {
+                                conversationManager.addAssistantMessage(p.conversationId(), partial);
+                            }
+                            log.info("Chat stream cancelled for conversation {} after {} tokens: {}",
+                                    p.conversationId(), generated, timings);
+                        })
+                        .doOnError(error ->
+                                log.error("Chat stream error for conversation: {}", p.conversationId(), error));
+            }
+            return Flux.concat(
+                    Mono.fromCallable(() -> sources(p)),
+                    tokens.map(this::token),
+                    Mono.fromCallable(() -> usage(p, fullAnswer, timings)));
+        });
+
+        return Flux.concat(Flux.just(status("retrieving")), answer)
+                .doOnSubscribe(s -> activeStreams.incrementAndGet())
+                .doFinally(signal -> {
+                    activeStreams.decrementAndGet();
+                    if (signal == SignalType.CANCEL) {
+                        cancelled("chat", phase.get());
+                    }
+                });
+    }
+
+    /**
+     * 记录被客户端取消的流：phase 为取消时所处的阶段（retrieval / generation）
+     */
+    private void cancelled(String endpoint, String phase) {
+        Counter.builder("chat.stream.cancelled")
+                .tag("endpoint", endpoint)
+                .tag("phase", phase)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 流式对话的阻塞部分（在检索线程池上执行）：检索 + 更新参考资料 + 组装消息
+     * 每一步之前检查是否已取消
+     *
+     * @return 已取消时返回 null（Mono 为空）
+     */
+    private StreamPrompt prepareStream(ChatRequestDto request, ChatTimings timings, AtomicBoolean cancelled) {
+        timings.mark("queue");
+        if (isCancelled(cancelled)) {
+            return null;
+        }
+
         // 1. 验证并准备会话 ID
         String conversationId = request.getConversationId();
         if (conversationId == null || conversationId.isBlank()) {
             conversationId = conversationManager.createConversation();
         }
-        final String finalConversationId = conversationId;
 
         // 2. 向量检索相关知识
         List<KnowledgeSearchResultDto> searchResults = knowledgeService.searchBySemantics(
@@ -127,66 +287,114 @@ public class ChatService {
                 request.getSpaceId(),
                 request.getKnowledgeIds(),
                 request.getTopK(),
-                request.getSimilarityThreshold());
-
-        if (searchResults.isEmpty()) {
-            return Flux.just("抱歉，我在知识库中没有找到与您的问题相关的信息。");
+                request.getSimilarityThreshold(),
+                request.getSearchEffort());
+        timings.mark("retrieval");
+        if (isCancelled(cancelled)) {
+            return null;
         }
 
-        // 3. 构造上下文
-        String context = buildContext(searchResults, request.getChunksPerKnowledge());
-
-        // 4. 构造系统消息
-        List<Message> history = conversationManager.getHistory(finalConversationId);
-        if (history.isEmpty()) {
-            conversationManager.addSystemMessage(finalConversationId,
-                    String.format(SYSTEM_PROMPT_TEMPLATE, context));
+        // 3. 在会话已有的参考资料上增量更新
+        ContextPacker.PackedContext context = buildContext(conversationId, searchResults, request);
+        if (context.chunks() == 0) {
+            timings.mark("context");
+            return new StreamPrompt(conversationId, request.getQuestion(), context, List.of(), searchResults.size());
+        }
+        if (isCancelled(cancelled)) {
+            return null;
         }
 
-        // 5. 添加用户消息
-        conversationManager.addUserMessage(finalConversationId, request.getQuestion());
+        // 4. 组装消息：用户消息此时只放进 prompt，开始生成时才写入历史
+        List<Message> messages = buildMessages(conversationId, context, request.getQuestion());
+        timings.mark("context");
+        return new StreamPrompt(conversationId, request.getQuestion(), context, messages, searchResults.size());
+    }
 
-        // 6. 流式调用大模型
-        ChatClient chatClient = ChatClient.builder(chatModel).build();
+    /**
+     * 取消标记或线程中断标记（清除中断标记，检索线程会被复用）
+     */
+    private static boolean isCancelled(AtomicBoolean cancelled) {
+        boolean interrupted = Thread.interrupted();
+        return interrupted || cancelled.get();
+    }
 
-        StringBuilder fullAnswer = new StringBuilder();
+    private ServerSentEvent<String> status(String status) {
+        return ServerSentEvent.builder(status).event("status").build();
+    }
 
-        return chatClient.prompt()
-                .messages(conversationManager.getHistory(finalConversationId))
-                .stream()
-                .content()
-                .doOnNext(fullAnswer::append)
-                .doOnComplete(() -> {
-                    // 流式完成后保存完整回复到历史
-                    conversationManager.addAssistantMessage(finalConversationId, fullAnswer.toString());
-                    log.info("Chat stream completed for conversation: {}", finalConversationId);
-                })
-                .doOnError(error -> {
-                    log.error("Chat stream error for conversation: {}", finalConversationId, error);
-                });
+    private ServerSentEvent<String> token(String content) {
+        return ServerSentEvent.builder(content).build();
+    }
+
+    /**
+     * sources 事件：与非流式接口相同的来源列表，外加会话 ID
+     */
+    private ServerSentEvent<String> sources(StreamPrompt p) throws JsonProcessingException {
+        ChatSourcesDto sources = ChatSourcesDto.builder()
+                .conversationId(p.conversationId())
+                .sources(buildSources(p.context().knowledges()))
+                .retrievedCount(p.retrievedCount())
+                .contextTokens(p.context().tokens())
+                .build();
+        return ServerSentEvent.builder(OBJECT_MAPPER.writeValueAsString(sources)).event("sources").build();
     }
 
     /**
-     * 构造上下文字符串
+     * usage 事件：prompt 按发送给大模型的全部消息计数，没有调用大模型时为 0
      */
-    private String buildContext(List<KnowledgeSearchResultDto> searchResults, Integer chunksPerKnowledge) {
-        StringBuilder context = new StringBuilder();
+    private ServerSentEvent<String> usage(StreamPrompt p, CharSequence answer, ChatTimings timings)
+            throws JsonProcessingException {
+        int promptTokens = p.messages().stream().mapToInt(m -> contextPacker.countTokens(m.getText())).sum();
+        int completionTokens = p.messages().isEmpty() ? 0 : contextPacker.countTokens(answer.toString());
+        ChatUsageDto usage = ChatUsageDto.builder()
+                .promptTokens(promptTokens)
+                .completionTokens(completionTokens)
+                .totalTokens(promptTokens + completionTokens)
+                .ttftMs(timings.ttftMillis())
+                .totalMs(timings.elapsedMillis())
+                .stages(timings.stages())
+                .build();
+        return ServerSentEvent.builder(OBJECT_MAPPER.writeValueAsString(usage)).event("usage").build();
+    }
 
-        for (int i = 0; i < searchResults.size(); i++) {
-            KnowledgeSearchResultDto result = searchResults.get(i);
-            context.append(String.format("\n【资料%d：%s】\n", i + 1, result.getTitle()));
+    /**
+     * 检索完成后交给流式生成的数据
+     */
+    private record StreamPrompt(String conversationId, String question, ContextPacker.PackedContext context,
+                                List<Message> messages, int retrievedCount) {
+    }
 
-            // 取每个知识的前 N 个最相关片段
-            List<Document> topChunks = result.getChunks().stream()
-                    .limit(chunksPerKnowledge != null ? chunksPerKnowledge : 5)
-                    .toList();
+    /**
+     * 更新会话的参考资料：本轮分片按分数装入 token 预算，已在 prompt 中的分片不重复装入，
+     * 预算不足时淘汰最久未被命中的分片；检索范围变化时从空窗口开始，已删除的分片先移出窗口
+     */
+    private ContextPacker.PackedContext buildContext(String conversationId,
+                                                     List<KnowledgeSearchResultDto> searchResults,
+                                                     ChatRequestDto request) {
+        ConversationContext window = conversationManager.getContext(conversationId,
+                request.getSpaceId(), request.getKnowledgeIds());
+        ContextPacker.PackedContext context = contextPacker.pack(window,
+                searchResults, request.getChunksPerKnowledge(), request.getMaxContextTokens());
+        log.debug("Packed context for {}: chunks={}, added={}, duplicates={}, tokens={}", conversationId,
+                context.chunks(), context.added(), context.duplicates(), context.tokens());
+        return context;
+    }
 
-            for (Document chunk : topChunks) {
-                context.append(chunk.getText()).append("\n");
-            }
+    /**
+     * 系统消息（最新参考资料 + 较早轮次的滚动摘要）+ 最近的对话历史 + 本轮用户消息（尚未写入历史）
+     */
+    private List<Message> buildMessages(String conversationId, ContextPacker.PackedContext context,
+                                        String question) {
+        ConversationHistory history = conversationManager.getHistory(conversationId);
+        String system = String.format(SYSTEM_PROMPT_TEMPLATE, context.text());
+        if (history.summary() != null) {
+            system += String.format(SUMMARY_PROMPT_TEMPLATE, history.summary().text());
         }
-
-        return context.toString();
+        List<Message> messages = new ArrayList<>();
+        messages.add(new SystemMessage(system));
+        messages.addAll(history.messages());
+        messages.add(new UserMessage(question));
+        return messages;
     }
 
     /**
@@ -215,7 +423,7 @@ public class ChatService {
 
     /**
      * 简单LLM流式调用（不使用RAG）
-     * 用于AI写作助手等不需要知识库检索的场景
+     * 用于AI写作助手等不需要知识库检索的场景，返回原始 token，由 SseStreamWriter 编码为 JSON 帧
      */
     public Flux<String> simpleLlmStream(String prompt) {
         log.info("Simple LLM stream called with prompt length: {}",
@@ -227,19 +435,11 @@ public class ChatService {
                 .user(prompt)
                 .stream()
                 .content()
-                .doOnNext(content -> log.debug("LLM generated content chunk: {}", content))
-                .map(content -> {
-                    // 构造 SSE 格式，使用简单的转义
-                    String escaped = content
-                            .replace("\\", "\\\\")
-                            .replace("\"", "\\\"")
-                            .replace("\n", "\\n")
-                            .replace("\r", "\\r")
-                            .replace("\t", "\\t");
-                    return String.format("data: {\"content\": \"%s\"}\n\n", escaped);
-                })
-                .concatWith(Flux.just("data: [DONE]\n\n"))
                 .doOnComplete(() -> log.info("Simple LLM stream completed"))
+                .doOnCancel(() -> {
+                    log.info("Simple LLM stream cancelled by client");
+                    cancelled("simple", "generation");
+                })
                 .doOnError(e -> log.error("Error in simple LLM stream", e));
     }
 }
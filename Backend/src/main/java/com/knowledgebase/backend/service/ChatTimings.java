@@ -0,0 +1,84 @@
+package com.knowledgebase.backend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单次对话请求的分阶段计时
+ * 每个阶段从上一次 mark 开始计时，记录到 chat.stream.stage{stage=...}；
+ * 首个 token 到达时记录 chat.stream.ttft（从请求开始算起）
+ */
+public final class ChatTimings {
+
+    private final MeterRegistry meterRegistry;
+    private final long start = System.nanoTime();
+    private final Map<String, Long> stages = Collections.synchronizedMap(new LinkedHashMap<>());
+    private long last = start;
+    private volatile long ttftNanos = -1;
+
+    public ChatTimings(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 结束一个阶段
+     */
+    public synchronized void mark(String stage) {
+        long now = System.nanoTime();
+        record(stage, now - last);
+        last = now;
+    }
+
+    /**
+     * 首个 token 到达，只记录一次
+     */
+    public void firstToken() {
+        if (ttftNanos < 0) {
+            synchronized (this) {
+                if (ttftNanos < 0) {
+                    ttftNanos = System.nanoTime() - start;
+                    Timer.builder("chat.stream.ttft").register(meterRegistry).record(ttftNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 首 token 耗时（毫秒），尚未收到 token 时为 -1
+     */
+    public long ttftMillis() {
+        return ttftNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(ttftNanos);
+    }
+
+    /**
+     * @return 从请求开始到现在的耗时（毫秒）
+     */
+    public long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * @return 各阶段耗时（毫秒），按发生顺序
+     */
+    public Map<String, Long> stages() {
+        synchronized (stages) {
+            return new LinkedHashMap<>(stages);
+        }
+    }
+
+    private void record(String stage, long nanos) {
+        stages.put(stage, TimeUnit.NANOSECONDS.toMillis(nanos));
+        Timer.builder("chat.stream.stage").tag("stage", stage).register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "stages=" + stages() + ", ttft=" + ttftMillis() + "ms, total=" + elapsedMillis() + "ms";
+    }
+}
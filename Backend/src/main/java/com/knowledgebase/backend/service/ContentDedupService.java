@@ -0,0 +1,130 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dao.BlobContentMapper;
+import com.knowledgebase.backend.dto.FileUploadResponseDto;
+import com.knowledgebase.backend.entity.BlobContent;
+import com.knowledgebase.backend.utils.BlobKeys;
+import com.knowledgebase.backend.utils.HashingInputStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * 内容寻址上传：同一用户、同一分类下内容 SHA-256 相同的文件只存一份 blob
+ * 重复上传直接返回已有 blobKey，解析任务随后按 blobKey 复制已有向量（见 DocumentParseService.copyFromDuplicate）
+ * hash 一律由服务端读取上传内容后计算，不接受客户端声明的 hash 作为持有文件的证明；复用不跨用户，
+ * 否则知道 hash 即可拿到他人的 blobKey
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContentDedupService {
+
+    private final BlobContentMapper blobContentMapper;
+    private final FileStorageInterface fileStorageService;
+    private final BlobKeys blobKeys;
+
+    @Value("${storage.dedup.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * @param contentHash: 服务端计算的内容 SHA-256（十六进制）
+     * @param category: 分类文件夹
+     * @param userId: 用户id
+     * @return 该用户已有内容对应的上传结果，未命中返回 null
+     */
+    private FileUploadResponseDto find(String contentHash, String category, Long userId) {
+        if (!enabled || userId == null || contentHash == null || contentHash.isBlank()) {
+            return null;
+        }
+        BlobContent existing = blobContentMapper.selectByHash(contentHash.toLowerCase(), normalize(category), userId);
+        if (existing == null) {
+            return null;
+        }
+        return FileUploadResponseDto.builder()
+                .blobKey(existing.getBlobKey())
+                .contentHash(existing.getContentHash())
+                .size(existing.getSize())
+                .build();
+    }
+
+    /**
+     * @param uploaded: 刚上传完成的文件（需带服务端计算的 contentHash、size）
+     * @param category: 分类文件夹
+     * @param userId: 用户id
+     * @return 登记后的结果：该用户已有相同内容（或并发上传了相同内容）时返回已有的一份，并删除本次多余的 blob
+     */
+    public FileUploadResponseDto register(FileUploadResponseDto uploaded, String category, Long userId) {
+        if (!enabled || userId == null) {
+            return uploaded;
+        }
+        String folder = normalize(category);
+        int inserted = blobContentMapper.insertIgnore(BlobContent.builder()
+                .contentHash(uploaded.getContentHash())
+                .userId(userId)
+                .category(folder)
+                .blobKey(uploaded.getBlobKey())
+                .size(uploaded.getSize())
+                .build());
+        if (inserted == 1) {
+            return uploaded;
+        }
+        FileUploadResponseDto existing = find(uploaded.getContentHash(), folder, userId);
+        if (existing == null || existing.getBlobKey().equals(uploaded.getBlobKey())) {
+            return uploaded;
+        }
+        discard(uploaded.getBlobKey());
+        return existing;
+    }
+
+    /**
+     * @param file: 上传的文件
+     * @param category: 分类文件夹
+     * @param userId: 用户id
+     * @return FileUploadResponseDto
+     * @description multipart 上传：文件已由容器落盘，先读一遍计算 hash，命中时不再上传
+     */
+    public FileUploadResponseDto upload(MultipartFile file, String category, Long userId) {
+        if (!enabled) {
+            return fileStorageService.upload(file, category, userId);
+        }
+        blobKeys.validateFile(file);
+        String contentHash;
+        try (HashingInputStream in = new HashingInputStream(file.getInputStream(), Long.MAX_VALUE)) {
+            in.transferTo(OutputStream.nullOutputStream());
+            contentHash = in.hex();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read uploaded file", e);
+        }
+        FileUploadResponseDto existing = find(contentHash, category, userId);
+        if (existing != null) {
+            log.info("Upload deduplicated, contentHash={}, blobKey={}", contentHash, existing.getBlobKey());
+            return existing;
+        }
+        FileUploadResponseDto res = fileStorageService.upload(file, category, userId);
+        res.setContentHash(contentHash);
+        res.setSize(file.getSize());
+        return register(res, category, userId);
+    }
+
+    /**
+     * @param blobKey: 需要删除的 blob（重复内容或校验失败的上传）
+     */
+    public void discard(String blobKey) {
+        try {
+            fileStorageService.delete(blobKey);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete duplicate blob {}", blobKey, e);
+        }
+    }
+
+    private static String normalize(String category) {
+        return (category == null || category.isBlank()) ? "common" : category.trim();
+    }
+}
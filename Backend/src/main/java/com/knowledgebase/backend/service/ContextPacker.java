@@ -0,0 +1,240 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dto.KnowledgeSearchResultDto;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按 token 预算组装 RAG 参考资料
+ * - token 计数与 TokenTextSplitter 使用同一个编码（CL100K_BASE）
+ * - 所有知识的分片放在一起按分片分数排序（混合检索为 rrfScore，否则为 1 - 距离），依次装入直到预算用完
+ * - 与已选分片内容重叠（token 窗口包含率超过阈值）或内容指纹相同的分片跳过
+ * - 同一轮装入的分片按知识分组，组按最高分片排名，组内按分片在原文中的顺序排列
+ * - 多轮对话时在会话的参考资料窗口（ConversationContext）上增量追加和淘汰
+ */
+@Service
+public class ContextPacker {
+
+    /** 近似重复判断使用的 token 窗口长度 */
+    private static final int SHINGLE = 8;
+
+    private static final String HEADER = "\n【资料%d：%s】\n";
+
+    private final Encoding encoding = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    @Value("${knowledge.context.max-tokens:20000}")
+    private int maxTokens;
+
+    @Value("${knowledge.context.duplicate-threshold:0.8}")
+    private double duplicateThreshold;
+
+    /**
+     * 单轮打包：不复用之前的上下文
+     *
+     * @param searchResults      检索结果（按知识聚合）
+     * @param chunksPerKnowledge 每个知识最多装入的分片数，null 不限制
+     * @param tokenBudget        本次请求的 token 预算，null 或超过配置上限时使用配置上限
+     * @return 参考资料文本及其 token 数
+     */
+    public PackedContext pack(List<KnowledgeSearchResultDto> searchResults, Integer chunksPerKnowledge,
+                              Integer tokenBudget) {
+        return pack(new ConversationContext(), searchResults, chunksPerKnowledge, tokenBudget);
+    }
+
+    /**
+     * 多轮打包：在会话已有的参考资料上增量更新
+     * - 本轮再次命中的分片（或与其重复的分片）保留并刷新使用轮次，不重复装入
+     * - 新分片按分数依次追加，预算不足时先淘汰最久未被命中的旧分片，仍放不下则跳过
+     *
+     * @param window             会话的参考资料窗口，调用后已更新
+     * @param searchResults      本轮检索结果（按知识聚合）
+     * @param chunksPerKnowledge 每个知识本轮最多命中的分片数，null 不限制
+     * @param tokenBudget        本次请求的 token 预算，null 或超过配置上限时使用配置上限
+     * @return 更新后的全部参考资料；knowledges 只包含本轮命中的知识
+     */
+    public PackedContext pack(ConversationContext window, List<KnowledgeSearchResultDto> searchResults,
+                              Integer chunksPerKnowledge, Integer tokenBudget) {
+        int budget = tokenBudget == null ? maxTokens : Math.max(0, Math.min(tokenBudget, maxTokens));
+        int perKnowledge = chunksPerKnowledge == null ? Integer.MAX_VALUE : Math.max(1, chunksPerKnowledge);
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (KnowledgeSearchResultDto result : searchResults) {
+            for (Document chunk : result.getChunks()) {
+                candidates.add(new Candidate(result, chunk, score(chunk)));
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::score).reversed());
+
+        synchronized (window) {
+            int turn = window.nextTurn();
+            window.shrinkTo(budget);
+            // 本轮命中的知识（按最高分片排名）及其命中分片数
+            Map<Long, KnowledgeSearchResultDto> hit = new LinkedHashMap<>();
+            Map<Long, Integer> hitCount = new HashMap<>();
+            List<ConversationContext.Entry> added = new ArrayList<>();
+            Map<ConversationContext.Entry, Candidate> addedFrom = new HashMap<>();
+            int addedCost = 0;
+            int duplicates = 0;
+            for (Candidate c : candidates) {
+                Long knowledgeId = c.result().getKnowledgeId();
+                if (hitCount.getOrDefault(knowledgeId, 0) >= perKnowledge) {
+                    continue;
+                }
+                ConversationContext.Entry existing = c.chunk().getId() == null ? null : window.get(c.chunk().getId());
+                if (existing == null) {
+                    IntArrayList tokens = encoding.encodeOrdinary(c.chunk().getText());
+                    Set<Long> shingles = shingles(tokens);
+                    Object chunkHash = c.chunk().getMetadata().get("chunkHash");
+                    ConversationContext.Entry duplicate = findDuplicate(chunkHash, shingles, window.entries(), added);
+                    if (duplicate != null) {
+                        duplicates++;
+                        duplicate.lastUsedTurn = turn;
+                        continue;
+                    }
+                    int cost = tokens.size() + 1
+                            + encoding.countTokensOrdinary(String.format(HEADER, 0, c.result().getTitle()));
+                    // 先淘汰不再相关的旧分片腾出预算，仍放不下的分片跳过，后面更短的分片可能仍能装入
+                    while (window.tokens() + addedCost + cost > budget && window.evictStalest()) {
+                        // evictStalest 已更新 window.tokens()
+                    }
+                    if (window.tokens() + addedCost + cost > budget) {
+                        continue;
+                    }
+                    ConversationContext.Entry entry = new ConversationContext.Entry(c.chunk().getId(), knowledgeId,
+                            c.result().getTitle(), c.chunk().getText(), chunkHash, shingles, cost, turn);
+                    added.add(entry);
+                    addedFrom.put(entry, c);
+                    addedCost += cost;
+                } else {
+                    existing.lastUsedTurn = turn;
+                }
+                hit.putIfAbsent(knowledgeId, c.result());
+                hitCount.merge(knowledgeId, 1, Integer::sum);
+            }
+
+            // 新分片按知识排名分组、组内按原文顺序追加
+            List<Long> rank = new ArrayList<>(hit.keySet());
+            added.sort(Comparator.comparingInt((ConversationContext.Entry e) -> rank.indexOf(e.knowledgeId))
+                    .thenComparingInt(e -> chunkIndex(addedFrom.get(e).chunk())));
+            for (ConversationContext.Entry entry : added) {
+                window.append(entry);
+            }
+
+            StringBuilder context = new StringBuilder();
+            int index = 0;
+            for (List<ConversationContext.Entry> group : window.groups()) {
+                context.append(String.format(HEADER, ++index, group.get(0).title));
+                for (ConversationContext.Entry entry : group) {
+                    context.append(entry.text).append("\n");
+                }
+            }
+            String text = context.toString();
+            return new PackedContext(text, countTokens(text), window.size(), added.size(), duplicates,
+                    new ArrayList<>(hit.values()));
+        }
+    }
+
+    /**
+     * @return 文本的 token 数（与分片时的计数一致）
+     */
+    public int countTokens(String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokensOrdinary(text);
+    }
+
+    /**
+     * @return 与该分片内容指纹相同、或 token 窗口包含率达到阈值的已有分片，没有返回 null
+     */
+    private ConversationContext.Entry findDuplicate(Object chunkHash, Set<Long> shingles,
+                                                    Iterable<ConversationContext.Entry> window,
+                                                    List<ConversationContext.Entry> added) {
+        for (Iterable<ConversationContext.Entry> entries : List.of(window, added)) {
+            for (ConversationContext.Entry other : entries) {
+                if ((chunkHash != null && chunkHash.equals(other.chunkHash)) || overlaps(shingles, other.shingles)) {
+                    return other;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 包含率：较短分片有多大比例出现在另一个分片中，子串和首尾重叠都能识别
+     */
+    private boolean overlaps(Set<Long> a, Set<Long> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return false;
+        }
+        Set<Long> small = a.size() <= b.size() ? a : b;
+        Set<Long> large = small == a ? b : a;
+        int common = 0;
+        for (Long s : small) {
+            if (large.contains(s)) {
+                common++;
+            }
+        }
+        return (double) common / small.size() >= duplicateThreshold;
+    }
+
+    static Set<Long> shingles(IntArrayList tokens) {
+        Set<Long> shingles = new HashSet<>();
+        int n = tokens.size();
+        if (n == 0) {
+            return shingles;
+        }
+        int width = Math.min(SHINGLE, n);
+        for (int i = 0; i + width <= n; i++) {
+            long h = 1125899906842597L;
+            for (int j = i; j < i + width; j++) {
+                h = 31 * h + tokens.get(j);
+            }
+            shingles.add(h);
+        }
+        return shingles;
+    }
+
+    private static double score(Document chunk) {
+        Object rrf = chunk.getMetadata().get("rrfScore");
+        if (rrf instanceof Number n) {
+            return n.doubleValue();
+        }
+        Object distance = chunk.getMetadata().get("distance");
+        if (distance instanceof Number n) {
+            return 1.0 - n.doubleValue();
+        }
+        return chunk.getScore() != null ? chunk.getScore() : 0.0;
+    }
+
+    private static int chunkIndex(Document chunk) {
+        Object index = chunk.getMetadata().get("chunkIndex");
+        return index instanceof Number n ? n.intValue() : Integer.MAX_VALUE;
+    }
+
+    private record Candidate(KnowledgeSearchResultDto result, Document chunk, double score) {
+    }
+
+    /**
+     * @param text       参考资料文本
+     * @param tokens     参考资料的 token 数
+     * @param chunks     参考资料中的分片数
+     * @param added      本轮新装入的分片数
+     * @param duplicates 因重复被跳过的分片数
+     * @param knowledges 本轮命中的知识，按排名排列
+     */
+    public record PackedContext(String text, int tokens, int chunks, int added, int duplicates,
+                                List<KnowledgeSearchResultDto> knowledges) {
+    }
+}
@@ -0,0 +1,202 @@
+package com.knowledgebase.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 会话历史的进程内缓存（内存存储本身 / JDBC 存储的热缓存）
+ * - 每个会话的历史是定长环形缓冲区（只保留最近 maxMessages 条），并发追加无锁
+ * - 过期会话由 sweep() 定时清理，读写路径不扫描全部会话；访问到已过期但尚未清理的会话按不存在处理
+ * - 会话总数超过 maxConversations 时按最近活跃时间淘汰最久未活跃的会话（批量淘汰到上限的 90%）
+ * - 指标：chat.conversations.active、chat.conversations.evictions{reason=expired|capacity}
+ */
+@Slf4j
+final class ConversationCache {
+
+    private final Map<String, Entry> conversations = new ConcurrentHashMap<>();
+
+    /** 容量淘汰只需一个线程执行，其他线程不等待 */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final int maxMessages;
+    private final int maxConversations;
+    private final long timeoutMillis;
+    private final Counter expired;
+    private final Counter evicted;
+
+    ConversationCache(int maxMessages, int maxConversations, long timeoutMillis, MeterRegistry meterRegistry) {
+        this.maxMessages = maxMessages;
+        this.maxConversations = maxConversations;
+        this.timeoutMillis = timeoutMillis;
+        this.expired = meterRegistry.counter("chat.conversations.evictions", "reason", "expired");
+        this.evicted = meterRegistry.counter("chat.conversations.evictions", "reason", "capacity");
+        Gauge.builder("chat.conversations.active", conversations, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * @return 未过期的会话，不存在或已过期返回 null
+     */
+    Entry get(String conversationId) {
+        Entry entry = conversations.get(conversationId);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.lastActive > timeoutMillis) {
+            if (conversations.remove(conversationId, entry)) {
+                expired.increment();
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 获取或创建会话并更新活跃时间
+     */
+    Entry touch(String conversationId) {
+        Entry entry = get(conversationId);
+        if (entry == null) {
+            Entry created = newEntry(0);
+            entry = conversations.putIfAbsent(conversationId, created);
+            if (entry == null) {
+                entry = created;
+                enforceCapacity();
+            }
+        }
+        entry.lastActive = System.currentTimeMillis();
+        return entry;
+    }
+
+    /**
+     * 放入（替换）会话，用于从持久层加载
+     */
+    void put(String conversationId, Entry entry) {
+        conversations.put(conversationId, entry);
+        enforceCapacity();
+    }
+
+    Entry newEntry(long start) {
+        return new Entry(maxMessages, start);
+    }
+
+    void remove(String conversationId) {
+        conversations.remove(conversationId);
+    }
+
+    /**
+     * 仅当会话仍是 entry 时移除，不影响期间重新加载的会话
+     */
+    void remove(String conversationId, Entry entry) {
+        conversations.remove(conversationId, entry);
+    }
+
+    /**
+     * @return 当前缓存的会话 ID 快照
+     */
+    List<String> ids() {
+        return new ArrayList<>(conversations.keySet());
+    }
+
+    int size() {
+        return conversations.size();
+    }
+
+    /**
+     * 清理过期会话
+     *
+     * @return 清理的会话数
+     */
+    int sweep() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Map.Entry<String, Entry> e : conversations.entrySet()) {
+            if (now - e.getValue().lastActive > timeoutMillis && conversations.remove(e.getKey(), e.getValue())) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            expired.increment(removed);
+            log.info("Removed {} expired conversations, active={}", removed, conversations.size());
+        }
+        return removed;
+    }
+
+    /**
+     * 超过容量时淘汰最久未活跃的会话，一次淘汰到上限的 90%，排序开销分摊到多次创建
+     */
+    private void enforceCapacity() {
+        if (conversations.size() <= maxConversations || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int target = maxConversations - maxConversations / 10;
+            int excess = conversations.size() - target;
+            if (excess <= 0) {
+                return;
+            }
+            // 先取活跃时间快照再排序，排序期间会话仍可能被访问
+            List<Candidate> oldest = conversations.entrySet().stream()
+                    .map(e -> new Candidate(e.getKey(), e.getValue(), e.getValue().lastActive))
+                    .sorted(Comparator.comparingLong(Candidate::lastActive))
+                    .limit(excess)
+                    .toList();
+            int removed = 0;
+            for (Candidate c : oldest) {
+                if (conversations.remove(c.id(), c.entry())) {
+                    removed++;
+                }
+            }
+            evicted.increment(removed);
+            log.warn("Conversation capacity {} exceeded, evicted {} least recently active", maxConversations, removed);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private record Candidate(String id, Entry entry, long lastActive) {
+    }
+
+    /**
+     * 缓存中的会话：最近消息 + 累计消息数 + 滚动摘要 + 最近活跃时间
+     */
+    static final class Entry {
+        final MessageRing history;
+        /** 会话累计消息数（含环形缓冲区已覆盖的），JDBC 存储用它判断缓存是否落后于其他节点 */
+        final AtomicLong count;
+        final AtomicReference<ConversationSummary> summary = new AtomicReference<>();
+        volatile long lastActive = System.currentTimeMillis();
+
+        Entry(int maxMessages, long start) {
+            this.history = new MessageRing(maxMessages, start);
+            this.count = new AtomicLong(start);
+        }
+
+        /**
+         * @return 摘要之后的最近消息
+         */
+        ConversationHistory snapshot() {
+            ConversationSummary current = summary.get();
+            MessageRing.Window window = history.read(current == null ? 0 : current.through());
+            return new ConversationHistory(current, window.messages(), window.end());
+        }
+
+        /**
+         * 只接受比现有摘要覆盖更多消息的摘要（异步摘要可能乱序完成）
+         */
+        void summarize(ConversationSummary next) {
+            summary.accumulateAndGet(next,
+                    (current, s) -> current == null || s.through() > current.through() ? s : current);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.knowledgebase.backend.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 一个会话当前放在 prompt 里的参考资料分片（按装入顺序）
+ * 每轮检索后由 ContextPacker 更新：再次命中的分片刷新使用轮次，新分片追加到末尾，
+ * 超出 token 预算时淘汰最久未被命中的分片。未变化的分片保持原有顺序，prompt 前缀尽量稳定。
+ * 窗口只对创建时的检索范围（space + knowledgeIds）有效，范围变化时由 ConversationManager 换新窗口。
+ * 方法由 ContextPacker / ConversationManager 在持有该对象锁时调用
+ */
+public class ConversationContext {
+
+    /** 分片 id -> 分片，按装入顺序 */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    /** 检索范围，见 ConversationManager#scopeOf */
+    private final String scope;
+    private int turn;
+    private int tokens;
+
+    public ConversationContext() {
+        this("");
+    }
+
+    ConversationContext(String scope) {
+        this.scope = scope;
+    }
+
+    String scope() {
+        return scope;
+    }
+
+    int nextTurn() {
+        return ++turn;
+    }
+
+    int turn() {
+        return turn;
+    }
+
+    int tokens() {
+        return tokens;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    Entry get(String chunkId) {
+        return entries.get(chunkId);
+    }
+
+    Iterable<Entry> entries() {
+        return entries.values();
+    }
+
+    List<String> chunkIds() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * 移除指定分片（如对应知识已删除或已重新解析）
+     *
+     * @return 实际移除的分片数
+     */
+    int remove(Collection<String> chunkIds) {
+        int removed = 0;
+        for (String chunkId : chunkIds) {
+            Entry entry = entries.remove(chunkId);
+            if (entry != null) {
+                tokens -= entry.cost;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    void append(Entry entry) {
+        Entry previous = entries.put(entry.chunkId, entry);
+        tokens += entry.cost - (previous == null ? 0 : previous.cost);
+    }
+
+    /**
+     * 淘汰本轮之前最久未被命中的一个分片（同一轮次先淘汰先装入的）
+     *
+     * @return 是否淘汰了分片；本轮命中的分片不会被淘汰
+     */
+    boolean evictStalest() {
+        Entry stalest = null;
+        for (Entry e : entries.values()) {
+            if (e.lastUsedTurn < turn && (stalest == null || e.lastUsedTurn < stalest.lastUsedTurn)) {
+                stalest = e;
+            }
+        }
+        if (stalest == null) {
+            return false;
+        }
+        entries.remove(stalest.chunkId);
+        tokens -= stalest.cost;
+        return true;
+    }
+
+    /**
+     * 淘汰所有本轮之前的分片直到不超过预算（预算调小时使用）
+     */
+    void shrinkTo(int budget) {
+        while (tokens > budget && evictStalest()) {
+            // evictStalest 已更新 tokens
+        }
+    }
+
+    /**
+     * @return 按装入顺序排列的分片，相邻的同一知识的分片归为一组
+     */
+    List<List<Entry>> groups() {
+        List<List<Entry>> groups = new ArrayList<>();
+        List<Entry> current = null;
+        for (Entry e : entries.values()) {
+            if (current == null || !current.get(0).knowledgeId.equals(e.knowledgeId)) {
+                current = new ArrayList<>();
+                groups.add(current);
+            }
+            current.add(e);
+        }
+        return groups;
+    }
+
+    /**
+     * 上下文中的一个分片
+     */
+    static final class Entry {
+        final String chunkId;
+        final Long knowledgeId;
+        final String title;
+        final String text;
+        final Object chunkHash;
+        final Set<Long> shingles;
+        /** 正文与标题行合计的 token 数 */
+        final int cost;
+        int lastUsedTurn;
+
+        Entry(String chunkId, Long knowledgeId, String title, String text, Object chunkHash, Set<Long> shingles,
+              int cost, int lastUsedTurn) {
+            this.chunkId = chunkId;
+            this.knowledgeId = knowledgeId;
+            this.title = title;
+            this.text = text;
+            this.chunkHash = chunkHash;
+            this.shingles = shingles;
+            this.cost = cost;
+            this.lastUsedTurn = lastUsedTurn;
+        }
+    }
+}
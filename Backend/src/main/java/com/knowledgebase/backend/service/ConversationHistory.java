@@ -0,0 +1,24 @@
+package com.knowledgebase.backend.service;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 会话历史快照
+ *
+ * @param summary  滚动摘要，尚未生成时为 null
+ * @param messages 摘要之后的最近消息（按时间顺序）
+ * @param end      最后一条消息的序号 + 1，即会话累计消息数
+ */
+public record ConversationHistory(ConversationSummary summary, List<Message> messages, long end) {
+
+    public static final ConversationHistory EMPTY = new ConversationHistory(null, List.of(), 0);
+
+    /**
+     * @return 第一条消息的序号
+     */
+    public long start() {
+        return end - messages.size();
+    }
+}
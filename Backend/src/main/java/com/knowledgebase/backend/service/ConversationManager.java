@@ -1,164 +1,149 @@
 package com.knowledgebase.backend.service;
 
-import com.knowledgebase.backend.dto.MessageDto;
+import com.knowledgebase.backend.utils.LruCache;
+import com.knowledgebase.backend.vector.ChunkRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.messages.AssistantMessage;
-import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 /**
  * 对话历史管理器
- * 使用内存缓存管理多轮对话历史
+ * 历史消息由 ConversationStore 保存（chat.conversation.store 选择内存或 MySQL 实现）；
+ * 会话的参考资料窗口只是 prompt 组装的本地缓存，不持久化，丢失后下一轮重新检索即可；
+ * 窗口按检索范围（space + knowledgeIds）区分，范围变化时换新窗口，每轮使用前移出已删除的分片；
+ * 每轮结束后由 ConversationSummarizer 在后台把较早的轮次折叠为滚动摘要
  */
 @Component
 @Slf4j
 public class ConversationManager {
 
-    /**
-     * 对话历史存储：conversationId -> 消息列表
-     */
-    private final Map<String, List<Message>> conversations = new ConcurrentHashMap<>();
-
-    /**
-     * 对话最后活跃时间：conversationId -> timestamp
-     */
-    private final Map<String, Long> lastActiveTime = new ConcurrentHashMap<>();
-
-    /**
-     * 对话过期时间（30分钟）
-     */
-    private static final long CONVERSATION_TIMEOUT = 30 * 60 * 1000;
+    private final ConversationStore store;
+    private final ConversationSummarizer summarizer;
+    private final ChunkRepository chunkRepository;
 
     /**
-     * 最大历史消息数量
+     * 会话当前的参考资料窗口：conversationId -> 已装入 prompt 的分片
      */
-    private static final int MAX_HISTORY_SIZE = 10;
+    private final LruCache<String, ConversationContext> contexts;
+
+    public ConversationManager(ConversationStore store, ConversationSummarizer summarizer,
+                               ChunkRepository chunkRepository,
+                               @Value("${chat.conversation.max-conversations:10000}") int maxConversations) {
+        this.store = store;
+        this.summarizer = summarizer;
+        this.chunkRepository = chunkRepository;
+        this.contexts = new LruCache<>(maxConversations);
+    }
 
     /**
      * 创建新会话
      */
     public String createConversation() {
         String conversationId = UUID.randomUUID().toString();
-        conversations.put(conversationId, new ArrayList<>());
-        lastActiveTime.put(conversationId, System.currentTimeMillis());
+        store.create(conversationId);
         log.info("Created new conversation: {}", conversationId);
         return conversationId;
     }
 
     /**
-     * 添加系统消息（RAG prompt）
+     * 获取会话在本轮检索范围下的参考资料窗口
+     * - 不存在或检索范围与上一轮不同时创建新窗口（旧范围的资料不能出现在新范围的回答里）
+     * - 移出已不在向量表中的分片（知识已删除或重新解析），按主键核对，分片数受 token 预算限制
+     *
+     * @param spaceId      本轮检索的 space，null 不限
+     * @param knowledgeIds 本轮检索的知识范围，null 或空不限
      */
-    public void addSystemMessage(String conversationId, String content) {
-        List<Message> history = getOrCreateConversation(conversationId);
-        history.add(new SystemMessage(content));
-        updateActiveTime(conversationId);
+    public ConversationContext getContext(String conversationId, Long spaceId, List<Long> knowledgeIds) {
+        String scope = scopeOf(spaceId, knowledgeIds);
+        ConversationContext context = contexts.computeIfAbsent(conversationId, k -> new ConversationContext(scope));
+        if (!scope.equals(context.scope())) {
+            log.debug("Retrieval scope of {} changed, reset context window: {} -> {}",
+                    conversationId, context.scope(), scope);
+            context = new ConversationContext(scope);
+            contexts.put(conversationId, context);
+        }
+        removeDeletedChunks(conversationId, context);
+        return context;
     }
 
     /**
-     * 添加用户消息
+     * 检索范围的规范表示：knowledgeIds 去重排序，顺序不同视为同一范围
      */
-    public void addUserMessage(String conversationId, String content) {
-        List<Message> history = getOrCreateConversation(conversationId);
-        history.add(new UserMessage(content));
-        updateActiveTime(conversationId);
+    static String scopeOf(Long spaceId, List<Long> knowledgeIds) {
+        String knowledge = knowledgeIds == null ? "" : knowledgeIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+        return (spaceId == null ? "" : spaceId) + "|" + knowledge;
     }
 
-    /**
-     * 添加 AI 回复
-     */
-    public void addAssistantMessage(String conversationId, String content) {
-        List<Message> history = getOrCreateConversation(conversationId);
-        history.add(new AssistantMessage(content));
-        updateActiveTime(conversationId);
-
-        // 保持历史消息数量在限制内（保留系统消息 + 最近的对话）
-        if (history.size() > MAX_HISTORY_SIZE) {
-            // 找到第一个非系统消息的位置
-            int systemMsgCount = 0;
-            for (Message msg : history) {
-                if (msg instanceof SystemMessage) {
-                    systemMsgCount++;
-                } else {
-                    break;
-                }
-            }
-
-            // 保留系统消息 + 最近的对话
-            List<Message> systemMessages = history.subList(0, systemMsgCount);
-            List<Message> recentMessages = history.subList(
-                    history.size() - (MAX_HISTORY_SIZE - systemMsgCount),
-                    history.size());
-
-            List<Message> newHistory = new ArrayList<>(systemMessages);
-            newHistory.addAll(recentMessages);
-            conversations.put(conversationId, newHistory);
+    private void removeDeletedChunks(String conversationId, ConversationContext context) {
+        List<String> chunkIds;
+        synchronized (context) {
+            chunkIds = context.chunkIds();
         }
+        if (chunkIds.isEmpty()) {
+            return;
+        }
+        Set<String> missing = new HashSet<>(chunkIds);
+        missing.removeAll(chunkRepository.findExistingIds(chunkIds));
+        if (missing.isEmpty()) {
+            return;
+        }
+        int removed;
+        // 只移除核对过的分片，查询期间并发装入的新分片不受影响
+        synchronized (context) {
+            removed = context.remove(missing);
+        }
+        log.debug("Removed {} deleted chunks from context window of {}", removed, conversationId);
     }
 
     /**
-     * 获取对话历史
-     */
-    public List<Message> getHistory(String conversationId) {
-        cleanupExpiredConversations();
-        return new ArrayList<>(conversations.getOrDefault(conversationId, new ArrayList<>()));
-    }
-
-    /**
-     * 清除会话
+     * 添加用户消息
      */
-    public void clearConversation(String conversationId) {
-        conversations.remove(conversationId);
-        lastActiveTime.remove(conversationId);
-        log.info("Cleared conversation: {}", conversationId);
+    public void addUserMessage(String conversationId, String content) {
+        store.append(conversationId, new UserMessage(content));
     }
 
     /**
-     * 获取或创建会话
+     * 添加 AI 回复，一轮结束后异步检查是否需要折叠历史
      */
-    private List<Message> getOrCreateConversation(String conversationId) {
-        return conversations.computeIfAbsent(conversationId, k -> {
-            lastActiveTime.put(k, System.currentTimeMillis());
-            return new ArrayList<>();
-        });
+    public void addAssistantMessage(String conversationId, String content) {
+        store.append(conversationId, new AssistantMessage(content));
+        summarizer.schedule(conversationId);
     }
 
     /**
-     * 更新活跃时间
+     * 获取对话历史：滚动摘要 + 摘要之后的最近消息
      */
-    private void updateActiveTime(String conversationId) {
-        lastActiveTime.put(conversationId, System.currentTimeMillis());
+    public ConversationHistory getHistory(String conversationId) {
+        return store.history(conversationId);
     }
 
     /**
-     * 清理过期会话
+     * 清除会话
      */
-    private void cleanupExpiredConversations() {
-        long now = System.currentTimeMillis();
-        List<String> expiredIds = new ArrayList<>();
-
-        for (Map.Entry<String, Long> entry : lastActiveTime.entrySet()) {
-            if (now - entry.getValue() > CONVERSATION_TIMEOUT) {
-                expiredIds.add(entry.getKey());
-            }
-        }
-
-        for (String id : expiredIds) {
-            conversations.remove(id);
-            lastActiveTime.remove(id);
-            log.info("Removed expired conversation: {}", id);
-        }
+    public void clearConversation(String conversationId) {
+        store.clear(conversationId);
+        contexts.remove(conversationId);
+        log.info("Cleared conversation: {}", conversationId);
     }
 
     /**
      * 获取活跃会话数量
      */
     public int getActiveConversationCount() {
-        cleanupExpiredConversations();
-        return conversations.size();
+        return store.activeCount();
     }
 }
@@ -0,0 +1,41 @@
+package com.knowledgebase.backend.service;
+
+import org.springframework.ai.chat.messages.Message;
+
+/**
+ * 会话历史存储 SPI，由 chat.conversation.store 选择实现：
+ * - memory（默认）：进程内存储，重启丢失，多实例部署需要粘性会话
+ * - jdbc：MySQL 持久化，异步批量写入，本地热缓存，多实例共享会话历史
+ */
+public interface ConversationStore {
+
+    /**
+     * 登记新会话
+     */
+    void create(String conversationId);
+
+    /**
+     * 追加一条消息（用户消息或 AI 回复），不存在的会话自动创建
+     */
+    void append(String conversationId, Message message);
+
+    /**
+     * @return 滚动摘要及其之后的最近消息，不存在或已过期返回 {@link ConversationHistory#EMPTY}
+     */
+    ConversationHistory history(String conversationId);
+
+    /**
+     * 保存滚动摘要，只在 summary.through 比现有摘要更新时生效
+     */
+    void summarize(String conversationId, ConversationSummary summary);
+
+    /**
+     * 删除会话及其历史
+     */
+    void clear(String conversationId);
+
+    /**
+     * @return 本节点缓存中的活跃会话数
+     */
+    int activeCount();
+}
@@ -0,0 +1,195 @@
+package com.knowledgebase.backend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 会话滚动摘要：一轮对话结束后在后台线程检查历史，超过阈值时把较早的轮次折叠进摘要，
+ * 之后的 prompt 只带摘要 + 最近几条消息，摘要生成不在用户请求路径上
+ * 触发条件（满足其一）：
+ * - 摘要之后的消息 + 现有摘要超过 trigger-tokens
+ * - 摘要之后的消息数即将超过 max-messages（再来一轮就会被环形缓冲区覆盖而丢失）
+ * 同一会话同时只有一个摘要任务；队列满时放弃本次摘要，下一轮结束时会再次检查
+ * 指标：chat.conversations.summaries{result=ok|failed|rejected}、chat.conversations.summarize（耗时）
+ */
+@Service
+@Slf4j
+public class ConversationSummarizer {
+
+    private static final String SUMMARY_PROMPT_TEMPLATE = """
+            请把下面的对话压缩为一段摘要，供后续对话参考。
+            要求：保留用户关心的问题、对话中给出的关键事实和结论、尚未解决的问题；
+            不要添加对话中没有的信息；摘要不超过%d字，直接输出摘要内容。
+
+            **已有摘要：**
+            %s
+
+            **新增对话：**
+            %s
+            """;
+
+    private final ConversationStore store;
+    private final ChatModel chatModel;
+    private final ContextPacker contextPacker;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.conversation.summary.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 摘要之后的消息 + 摘要超过该 token 数时触发
+     */
+    @Value("${chat.conversation.summary.trigger-tokens:2000}")
+    private int triggerTokens;
+
+    /**
+     * 折叠时原样保留的最近消息数（默认保留最近一轮问答）
+     */
+    @Value("${chat.conversation.summary.keep-messages:2}")
+    private int keepMessages;
+
+    /**
+     * 摘要长度上限
+     */
+    @Value("${chat.conversation.summary.max-tokens:500}")
+    private int maxTokens;
+
+    @Value("${chat.conversation.max-messages:10}")
+    private int maxMessages;
+
+    @Value("${chat.conversation.summary.threads:2}")
+    private int threads;
+
+    @Value("${chat.conversation.summary.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+    private Timer timer;
+
+    /** 正在排队或执行摘要的会话 */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public ConversationSummarizer(ConversationStore store, ChatModel chatModel, ContextPacker contextPacker,
+                                  MeterRegistry meterRegistry) {
+        this.store = store;
+        this.chatModel = chatModel;
+        this.contextPacker = contextPacker;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger seq = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread t = new Thread(r, "conversation-summarizer-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        timer = meterRegistry.timer("chat.conversations.summarize");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 一轮对话结束后调用，立即返回
+     */
+    public void schedule(String conversationId) {
+        if (!enabled || !inFlight.add(conversationId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    summarizeIfNeeded(conversationId);
+                } finally {
+                    inFlight.remove(conversationId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(conversationId);
+            meterRegistry.counter("chat.conversations.summaries", "result", "rejected").increment();
+            log.warn("Summary queue full, skipped conversation {}", conversationId);
+        }
+    }
+
+    /**
+     * 检查会话历史，需要时生成新摘要
+     *
+     * @return 是否生成了新摘要
+     */
+    boolean summarizeIfNeeded(String conversationId) {
+        ConversationHistory history = store.history(conversationId);
+        List<Message> messages = history.messages();
+        int fold = messages.size() - keepMessages;
+        if (fold <= 0 || !needsSummary(history)) {
+            return false;
+        }
+        String previous = history.summary() == null ? "无" : history.summary().text();
+        String prompt = String.format(SUMMARY_PROMPT_TEMPLATE, maxTokens, previous,
+                transcript(messages.subList(0, fold)));
+        try {
+            String text = timer.record(() -> chatModel.call(new Prompt(new UserMessage(prompt),
+                    ChatOptions.builder().maxTokens(maxTokens).build()))
+                    .getResult().getOutput().getText());
+            if (text == null || text.isBlank()) {
+                throw new IllegalStateException("Empty summary");
+            }
+            store.summarize(conversationId, new ConversationSummary(text.strip(), history.start() + fold));
+            meterRegistry.counter("chat.conversations.summaries", "result", "ok").increment();
+            log.debug("Summarized {} messages of conversation {}", fold, conversationId);
+            return true;
+        } catch (RuntimeException e) {
+            meterRegistry.counter("chat.conversations.summaries", "result", "failed").increment();
+            log.warn("Failed to summarize conversation {}", conversationId, e);
+            return false;
+        }
+    }
+
+    private boolean needsSummary(ConversationHistory history) {
+        if (history.messages().size() + keepMessages >= maxMessages) {
+            return true;
+        }
+        int tokens = history.summary() == null ? 0 : contextPacker.countTokens(history.summary().text());
+        for (Message m : history.messages()) {
+            tokens += contextPacker.countTokens(m.getText());
+            if (tokens > triggerTokens) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String transcript(List<Message> messages) {
+        StringBuilder sb = new StringBuilder();
+        for (Message m : messages) {
+            sb.append(m.getMessageType() == MessageType.ASSISTANT ? "助手：" : "用户：")
+                    .append(m.getText())
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+}
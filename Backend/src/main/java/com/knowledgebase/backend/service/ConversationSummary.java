@@ -0,0 +1,10 @@
+package com.knowledgebase.backend.service;
+
+/**
+ * 会话的滚动摘要
+ *
+ * @param text    摘要内容
+ * @param through 已折叠进摘要的消息数：序号小于 through 的消息只以摘要形式进入 prompt
+ */
+public record ConversationSummary(String text, long through) {
+}
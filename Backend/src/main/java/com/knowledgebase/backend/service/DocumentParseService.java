@@ -1,23 +1,33 @@
 package com.knowledgebase.backend.service;
 
 import com.knowledgebase.backend.dao.KnowledgeMapper;
+import com.knowledgebase.backend.vector.ChunkRepository;
+import com.knowledgebase.backend.vector.EmbeddingCache;
+import com.knowledgebase.backend.vector.VersionedVectorStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.ai.vectorstore.filter.Filter;
-import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -26,58 +36,219 @@ public class DocumentParseService {
 
     private final FileStorageInterface fileStorageService;
     private final KnowledgeMapper knowledgeMapper;
-    private final VectorStore vectorStore;
+    private final VersionedVectorStore vectorStore;
+    private final EmbeddingPipeline embeddingPipeline;
+    private final ChunkRepository chunkRepository;
+    private final EmbeddingModel embeddingModel;
+    private final StreamingTextExtractor streamingTextExtractor;
     private final TokenTextSplitter splitter = new TokenTextSplitter();
 
+    private static final List<String> REFRESHED_METADATA = List.of("chunkIndex", "blobKey", "filename");
+
     @Value("${knowledge.vector.min-length:100}")
     private int minVectorLength;
 
-    @Async // 异步解析，不阻塞主流程
-    public void parseAndEmbed(Long knowledgeId, String blobKey) {
+    @Value("${knowledge.vector.incremental:true}")
+    private boolean incrementalReindex;
+
+    @Value("${storage.dedup.enabled:true}")
+    private boolean dedupEnabled;
+
+    @Value("${knowledge.ingest.streaming:true}")
+    private boolean streamingExtraction;
+
+    /**
+     * 解析文件并写入向量库，由 ParseJobWorker 在任务线程中调用
+     * 失败时抛出异常，是否重试由任务队列决定
+     */
+    public void parseAndEmbed(Long knowledgeId, String blobKey) throws IOException {
+        if (copyFromDuplicate(knowledgeId, blobKey)) {
+            return;
+        }
         knowledgeMapper.updateParseJob(knowledgeId, "RUNNING");
+        knowledgeMapper.updateParseProgress(knowledgeId, 0);
         try (InputStream inputStream = fileStorageService.download(blobKey).getStream()) {
             // 获取知识所属的 spaceId
             Long spaceId = knowledgeMapper.selectById(knowledgeId).getSpaceId();
 
-            TikaDocumentReader reader = new TikaDocumentReader(new InputStreamResource(inputStream));
-            List<Document> rawDocs = reader.read();
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("knowledgeId", knowledgeId);
+            metadata.put("spaceId", spaceId); // 添加 spaceId 以支持向量库层面过滤
+            metadata.put("blobKey", blobKey);
+            metadata.put("filename", extractFilename(blobKey));
 
-            List<Document> cleanDocs = new java.util.ArrayList<>();
+            // 分批并行计算 embedding，每批拿到向量后立即写入向量表；已写入的分片数写回 parse_progress
+            // （回调只在本线程执行，进度变化时才写）
+            EmbeddingPipeline.Batcher batcher = embeddingPipeline.open("knowledgeId=" + knowledgeId,
+                    (done, submitted, embedded) -> knowledgeMapper.updateParseProgress(knowledgeId, embedded));
+            // 增量模式：已存在且内容未变化的分片不重新计算 embedding，只刷新序号等 metadata
+            Set<String> existingIds = incrementalReindex ? chunkRepository.findChunkIds(knowledgeId) : Set.of();
+            ChunkFeeder feeder = new ChunkFeeder(knowledgeId, metadata, existingIds, batcher);
 
-            log.info("Parsing document for knowledgeId={}, blobKey={}, rawDocsSize={}",
-                    knowledgeId, blobKey, rawDocs.size());
-            for (Document d : rawDocs) {
-                // 使用纯内容，避免携带 Tika 的格式化头信息（如 source 等）
-                String text = stripInvalidSource(d.getText());
-                if (text.isBlank()) {
-                    continue; // 跳过空文档
+            if (streamingExtraction) {
+                // 流式：Tika 输出按窗口切出后立即切分、送入管线，管线满时阻塞解析线程
+                long chars = streamingTextExtractor.extract(inputStream, feeder::feed);
+                log.info("Streamed document for knowledgeId={}, blobKey={}, chars={}, windows={}",
+                        knowledgeId, blobKey, chars, feeder.texts);
+            } else {
+                TikaDocumentReader reader = new TikaDocumentReader(new InputStreamResource(inputStream));
+                List<Document> rawDocs = reader.read();
+                log.info("Parsing document for knowledgeId={}, blobKey={}, rawDocsSize={}",
+                        knowledgeId, blobKey, rawDocs.size());
+                for (Document d : rawDocs) {
+                    // 使用纯内容，避免携带 Tika 的格式化头信息（如 source 等）
+                    feeder.feed(stripInvalidSource(d.getText()));
                 }
-
-                Map<String, Object> metadata = new HashMap<>();
-                metadata.put("knowledgeId", knowledgeId);
-                metadata.put("spaceId", spaceId); // 添加 spaceId 以支持向量库层面过滤
-                metadata.put("blobKey", blobKey);
-                metadata.put("filename", extractFilename(blobKey));
-                cleanDocs.add(new Document(text, metadata));
-                log.info("Extracted clean document chunk, length={}, knowledgeId={}, blobKey={}",
-                        text.length(), knowledgeId, blobKey);
             }
 
-            if (!cleanDocs.isEmpty()) {
-                List<Document> chunks = splitter.split(cleanDocs);
-                vectorStore.add(chunks);
-                log.info("Parse and embed succeeded for knowledgeId={}, blobKey={}", knowledgeId, blobKey);
+            int embedded = batcher.finish();
+            if (!feeder.keptIds.isEmpty()) {
+                Set<String> staleIds = new HashSet<>(existingIds);
+                staleIds.removeAll(feeder.keptIds);
+                // 新分片已由管线逐批写入；最后在一个事务中删除消失的分片并刷新保留分片的 metadata
+                int[] deleted = new int[1];
+                chunkRepository.inTransaction(() -> {
+                    deleted[0] = chunkRepository.deleteByIds(staleIds);
+                    chunkRepository.updateMetadata(feeder.unchanged);
+                });
+                log.info("Parse and embed succeeded for knowledgeId={}, blobKey={}, chunks={}, embedded={}, "
+                                + "unchanged={}, deleted={}", knowledgeId, blobKey, feeder.keptIds.size(), embedded,
+                        feeder.unchanged.size(), deleted[0]);
                 knowledgeMapper.updateParseJob(knowledgeId, "DONE");
             } else {
                 log.warn("Parse result is empty for knowledgeId={}, blobKey={}", knowledgeId, blobKey);
                 knowledgeMapper.updateParseJob(knowledgeId, "FAILED");
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parse and embed interrupted for knowledgeId=" + knowledgeId, e);
+        } catch (IOException | RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            log.error("Parse and embed failed for knowledgeId={}, blobKey={}", knowledgeId, blobKey, e);
-            knowledgeMapper.updateParseJob(knowledgeId, "FAILED");
+            throw new IllegalStateException("Parse and embed failed for knowledgeId=" + knowledgeId, e);
         }
     }
 
+    /**
+     * 把抽取出的文本切分、打上分片指纹后送入向量化管线，
+     * 整篇文档一次送入和按窗口多次送入共用，分片序号与指纹计数跨窗口连续
+     * 新分片交给管线后不再持有（管线写入向量表后释放）；已存在的分片只记录 id 和需要刷新的 metadata
+     */
+    private final class ChunkFeeder {
+        private final Long knowledgeId;
+        private final Map<String, Object> metadata;
+        private final Set<String> existingIds;
+        private final EmbeddingPipeline.Batcher batcher;
+        private final Set<String> keptIds = new HashSet<>();
+        private final Map<String, Map<String, Object>> unchanged = new HashMap<>();
+        private final Map<String, Integer> occurrences = new HashMap<>();
+        private int chunkIndex;
+        private int texts;
+
+        private ChunkFeeder(Long knowledgeId, Map<String, Object> metadata, Set<String> existingIds,
+                            EmbeddingPipeline.Batcher batcher) {
+            this.knowledgeId = knowledgeId;
+            this.metadata = metadata;
+            this.existingIds = existingIds;
+            this.batcher = batcher;
+        }
+
+        private void feed(String text) throws InterruptedException {
+            text = text.trim();
+            if (text.isBlank()) {
+                return; // 跳过空文本
+            }
+            texts++;
+            log.debug("Extracted document text, length={}, knowledgeId={}", text.length(), knowledgeId);
+            for (Document chunk : splitter.split(new Document(text, new HashMap<>(metadata)))) {
+                Document fingerprinted = withChunkId(chunk, knowledgeId, chunkIndex++, occurrences);
+                if (!keptIds.add(fingerprinted.getId())) {
+                    continue;
+                }
+                if (existingIds.contains(fingerprinted.getId())) {
+                    unchanged.put(fingerprinted.getId(), refreshedMetadata(fingerprinted));
+                } else {
+                    batcher.add(fingerprinted);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按 knowledgeId + 分片内容指纹 + 同内容出现次数生成确定性 id：
+     * - 内容未变化的分片 id 不变，增量重建索引时据此判断哪些分片需要新增/删除
+     * - 同一文件重试解析时覆盖已写入的分片（PgChunkVectorStore 按 id upsert），不会产生重复向量
+     */
+    private Document withChunkId(Document chunk, Long knowledgeId, int chunkIndex, Map<String, Integer> occurrences) {
+        String chunkHash = EmbeddingCache.hash(chunk.getText());
+        String id = chunkId(knowledgeId, chunkHash, occurrences);
+        Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+        metadata.put("chunkIndex", chunkIndex);
+        metadata.put("chunkHash", chunkHash);
+        return new Document(id, chunk.getText(), metadata);
+    }
+
+    /**
+     * 内容未变化的分片在重建时需要更新的 metadata：序号随前后文变化，来源文件随重新上传变化
+     */
+    private static Map<String, Object> refreshedMetadata(Document chunk) {
+        Map<String, Object> patch = new HashMap<>();
+        for (String key : REFRESHED_METADATA) {
+            if (chunk.getMetadata().containsKey(key)) {
+                patch.put(key, chunk.getMetadata().get(key));
+            }
+        }
+        return patch;
+    }
+
+    private static String chunkId(Long knowledgeId, String chunkHash, Map<String, Integer> occurrences) {
+        int occurrence = occurrences.merge(chunkHash, 1, Integer::sum);
+        return UUID.nameUUIDFromBytes((knowledgeId + ":" + chunkHash + ":" + occurrence)
+                .getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * 内容去重：同一个 blob（内容 hash 相同的上传复用 blob）已被其他知识解析完成时，
+     * 直接复制其分片和向量，改写 knowledgeId / spaceId，不再下载、解析和调用 embedding。
+     * 分片 id 按本知识重新生成，与正常解析得到的 id 一致，之后的增量重建不受影响。
+     *
+     * @return 是否已通过复制完成
+     */
+    public boolean copyFromDuplicate(Long knowledgeId, String blobKey) {
+        if (!dedupEnabled || blobKey == null || blobKey.isBlank()) {
+            return false;
+        }
+        Long sourceId = knowledgeMapper.selectParsedIdByBlobKey(blobKey, knowledgeId);
+        if (sourceId == null) {
+            return false;
+        }
+        List<ChunkRepository.ChunkRef> chunks = chunkRepository.findChunkRefs(sourceId);
+        if (chunks.isEmpty()) {
+            return false;
+        }
+        Long spaceId = knowledgeMapper.selectById(knowledgeId).getSpaceId();
+        Map<String, Integer> occurrences = new HashMap<>();
+        Map<String, String> idMapping = new LinkedHashMap<>();
+        for (ChunkRepository.ChunkRef chunk : chunks) {
+            idMapping.put(chunk.id(), chunkId(knowledgeId, chunk.chunkHash(), occurrences));
+        }
+        Set<String> staleIds = new HashSet<>(chunkRepository.findChunkIds(knowledgeId));
+        staleIds.removeAll(idMapping.values());
+        int[] copied = new int[1];
+        chunkRepository.inTransaction(() -> {
+            chunkRepository.deleteByIds(staleIds);
+            copied[0] = chunkRepository.copyChunks(idMapping, knowledgeId, spaceId);
+        });
+        knowledgeMapper.updateParseJob(knowledgeId, "DONE");
+        log.info("Copied chunks for knowledgeId={} from knowledgeId={}, blobKey={}, chunks={}, copied={}, deleted={}",
+                knowledgeId, sourceId, blobKey, chunks.size(), copied[0], staleIds.size());
+        return true;
+    }
+
+    public boolean isIncrementalReindex() {
+        return incrementalReindex;
+    }
+
     private String stripInvalidSource(String text) {
         if (text == null)
             return "";
@@ -93,41 +264,88 @@ public class DocumentParseService {
     }
 
     /**
-     * 将手工录入的 Markdown 文本参与向量检索：
+     * 将手工录入的 Markdown 文本参与向量检索（创建或内容更新后重建索引）：
      * - 短文本（< minVectorLength）作为单块写入向量库
      * - 长文本按 TokenTextSplitter 分片后写入
-     * 不涉及 parse_job 状态机更新，仅负责向量化。
+     * - 增量模式：与已入库分片 id（内容指纹）做差集，只删除消失的分片、只新增新出现的分片，
+     *   保留的分片刷新序号；新分片的 embedding 在事务外计算一次，随后带着向量在同一个向量库事务里完成增删，
+     *   检索不会看到文档被清空或只索引了一半的中间状态
+     * - 非增量模式：先删除全部旧向量再整体写入（原有行为）
+     * 不涉及 parse_job 状态机更新，失败时抛出异常由任务队列重试。
      */
-    public void embedMarkdown(Long knowledgeId, String content) {
-        try {
-            if (content == null || content.isBlank())
-                return;
+    public void reindexMarkdown(Long knowledgeId, String content) {
+        if (!incrementalReindex) {
+            deleteVectorsByKnowledgeId(knowledgeId);
+            List<Document> docs = buildMarkdownChunks(knowledgeId, content);
+            if (!docs.isEmpty()) {
+                vectorStore.add(docs);
+            }
+            return;
+        }
+        List<Document> docs = buildMarkdownChunks(knowledgeId, content);
+        // 按分片序号排列，用于判断保留的分片顺序是否变化
+        List<String> existingOrder = chunkRepository.findChunkRefs(knowledgeId).stream()
+                .map(ChunkRepository.ChunkRef::id).toList();
+        Set<String> existingIds = new HashSet<>(existingOrder);
+        Set<String> newIds = docs.stream().map(Document::getId).collect(Collectors.toSet());
+
+        List<Document> toAdd = docs.stream().filter(d -> !existingIds.contains(d.getId())).toList();
+        Set<String> toDelete = new HashSet<>(existingIds);
+        toDelete.removeAll(newIds);
+        if (toAdd.isEmpty() && toDelete.isEmpty() && existingOrder.equals(docs.stream().map(Document::getId).toList())) {
+            log.info("Reindex skipped, content unchanged for knowledgeId={}", knowledgeId);
+            return;
+        }
+        Map<String, Map<String, Object>> unchanged = new HashMap<>();
+        for (Document doc : docs) {
+            if (existingIds.contains(doc.getId())) {
+                unchanged.put(doc.getId(), refreshedMetadata(doc));
+            }
+        }
 
-            String text = content.trim();
+        // 远端 embedding 调用放在事务外，事务内直接写入算好的向量
+        List<float[]> embeddings = toAdd.isEmpty() ? List.of()
+                : embeddingModel.embed(toAdd, EmbeddingOptionsBuilder.builder().build(), new TokenCountBatchingStrategy());
+        chunkRepository.inTransaction(() -> {
+            chunkRepository.deleteByIds(toDelete);
+            chunkRepository.updateMetadata(unchanged);
+            if (!toAdd.isEmpty()) {
+                vectorStore.add(toAdd, embeddings);
+            }
+        });
+        log.info("Reindexed knowledgeId={}, added={}, deleted={}, unchanged={}",
+                knowledgeId, toAdd.size(), toDelete.size(), docs.size() - toAdd.size());
+    }
 
-            // 获取知识所属的 spaceId
-            Long spaceId = knowledgeMapper.selectById(knowledgeId).getSpaceId();
+    private List<Document> buildMarkdownChunks(Long knowledgeId, String content) {
+        if (content == null || content.isBlank())
+            return List.of();
 
-            // 构造元信息，便于后续按 knowledgeId 和 spaceId 过滤
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("knowledgeId", knowledgeId);
-            metadata.put("spaceId", spaceId); // 添加 spaceId
-            metadata.put("source", "markdown");
+        String text = content.trim();
 
-            List<Document> docs;
-            if (text.length() < minVectorLength) {
-                docs = List.of(new Document(text, metadata));
-            } else {
-                List<Document> base = List.of(new Document(text, metadata));
-                docs = splitter.split(base);
-            }
+        // 获取知识所属的 spaceId
+        Long spaceId = knowledgeMapper.selectById(knowledgeId).getSpaceId();
 
-            if (!docs.isEmpty()) {
-                vectorStore.add(docs);
-            }
-        } catch (Exception e) {
-            log.error("Embed markdown failed for knowledgeId={}", knowledgeId, e);
+        // 构造元信息，便于后续按 knowledgeId 和 spaceId 过滤
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("knowledgeId", knowledgeId);
+        metadata.put("spaceId", spaceId); // 添加 spaceId
+        metadata.put("source", "markdown");
+
+        List<Document> docs;
+        if (text.length() < minVectorLength) {
+            docs = List.of(new Document(text, metadata));
+        } else {
+            List<Document> base = List.of(new Document(text, metadata));
+            docs = splitter.split(base);
+        }
+
+        Map<String, Integer> occurrences = new HashMap<>();
+        List<Document> result = new ArrayList<>(docs.size());
+        for (int i = 0; i < docs.size(); i++) {
+            result.add(withChunkId(docs.get(i), knowledgeId, i, occurrences));
         }
+        return result;
     }
 
     /**
@@ -136,11 +354,9 @@ public class DocumentParseService {
      */
     public void deleteVectorsByKnowledgeId(Long knowledgeId) {
         try {
-            Filter.Expression filter = new FilterExpressionBuilder()
-                    .eq("knowledgeId", knowledgeId)
-                    .build();
-            vectorStore.delete(filter);
-            log.info("Deleted vectors for knowledgeId={}", knowledgeId);
+            // 按 knowledge_id 列索引删除，索引版本和全文索引只影响该知识所在的 space
+            int deleted = chunkRepository.deleteByKnowledgeId(knowledgeId);
+            log.info("Deleted vectors for knowledgeId={}, chunks={}", knowledgeId, deleted);
         } catch (Exception e) {
             log.error("Failed to delete vectors for knowledgeId={}", knowledgeId, e);
         }
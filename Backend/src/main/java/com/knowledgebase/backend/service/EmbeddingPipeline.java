@@ -0,0 +1,209 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.vector.VersionedVectorStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 分批并行向量化管线
+ * - 分片按 batch-size 聚合成批次，每批次独立调用 embedding，拿到向量后立即按分片 id upsert 到 pgvector，
+ *   不再经过 VectorStore.add 重新计算；批次写完即释放，内存占用只与 batch-size × concurrency 有关，与文档大小无关
+ * - 同一任务最多 concurrency 个批次在途，生产者在批次占满时阻塞
+ * - 单批次失败按 batch-retries 重试，已写入的批次不会因后续失败而丢弃；分片 id 是确定性的，任务重试时覆盖写入
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class EmbeddingPipeline {
+
+    private final EmbeddingModel embeddingModel;
+    private final VersionedVectorStore vectorStore;
+    private final BatchingStrategy batchingStrategy = new TokenCountBatchingStrategy();
+
+    @Value("${knowledge.ingest.batch-size:16}")
+    private int batchSize;
+
+    @Value("${knowledge.ingest.concurrency:4}")
+    private int concurrency;
+
+    @Value("${knowledge.ingest.batch-retries:2}")
+    private int batchRetries;
+
+    /**
+     * 独立的 embedding 线程池，不注册为 Spring Bean，避免替换掉 @Async 默认的 applicationTaskExecutor
+     */
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger seq = new AtomicInteger();
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "embed-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 打开一个批处理会话，一个解析任务对应一个会话
+     *
+     * @param jobName  日志中的任务标识
+     * @param listener 每个批次写入完成后的进度回调（可为 null）
+     */
+    public Batcher open(String jobName, ProgressListener listener) {
+        return new Batcher(jobName, listener);
+    }
+
+    /**
+     * 批次进度回调：只在调用 add / finish 的线程（解析线程）上执行，进度没有变化时不回调，
+     * 回调方可以直接写库，不会出现并发写或乱序覆盖
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param doneBatches      已写入的批次数
+         * @param submittedBatches 已提交的批次数
+         * @param embeddedChunks   已写入向量表的分片数
+         */
+        void onProgress(int doneBatches, int submittedBatches, int embeddedChunks);
+    }
+
+    public final class Batcher {
+
+        private final String jobName;
+        private final ProgressListener listener;
+        private final Semaphore inFlight = new Semaphore(concurrency);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final AtomicInteger doneBatches = new AtomicInteger();
+        private final AtomicInteger embeddedChunks = new AtomicInteger();
+        private volatile int submittedBatches;
+        /** 上次回调时的已完成批次数，只在生产者线程访问 */
+        private int reportedBatches;
+        private List<Document> buffer = new ArrayList<>(batchSize);
+
+        private Batcher(String jobName, ProgressListener listener) {
+            this.jobName = jobName;
+            this.listener = listener;
+        }
+
+        /**
+         * 追加一个分片，攒满一批后提交
+         */
+        public void add(Document chunk) throws InterruptedException {
+            throwIfFailed();
+            buffer.add(chunk);
+            if (buffer.size() >= batchSize) {
+                flush();
+            }
+            report();
+        }
+
+        public void addAll(Collection<Document> chunks) throws InterruptedException {
+            for (Document chunk : chunks) {
+                add(chunk);
+            }
+        }
+
+        /**
+         * 提交剩余分片并等待所有批次完成
+         *
+         * @return 写入向量表的分片总数
+         */
+        public int finish() throws InterruptedException {
+            if (!buffer.isEmpty()) {
+                flush();
+            }
+            // 拿满所有许可即表示在途批次全部结束
+            inFlight.acquire(concurrency);
+            inFlight.release(concurrency);
+            throwIfFailed();
+            report();
+            return embeddedChunks.get();
+        }
+
+        private void flush() throws InterruptedException {
+            List<Document> batch = buffer;
+            buffer = new ArrayList<>(batchSize);
+            inFlight.acquire();
+            int batchNo = ++submittedBatches;
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (failure.get() == null) {
+                            writeWithRetry(batch, batchNo);
+                            embeddedChunks.addAndGet(batch.size());
+                            doneBatches.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        private void writeWithRetry(List<Document> batch, int batchNo) throws InterruptedException {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    // 重试时已算好的向量命中 embedding 缓存，不会重复调用远端模型
+                    List<float[]> embeddings = embeddingModel.embed(batch, EmbeddingOptionsBuilder.builder().build(),
+                            batchingStrategy);
+                    vectorStore.add(batch, embeddings);
+                    log.debug("Wrote batch {} of {}, size={}", batchNo, jobName, batch.size());
+                    return;
+                } catch (RuntimeException e) {
+                    if (attempt >= batchRetries) {
+                        throw e;
+                    }
+                    log.warn("Write batch {} of {} failed (attempt {}), retrying", batchNo, jobName, attempt + 1, e);
+                    Thread.sleep(500L * (attempt + 1));
+                }
+            }
+        }
+
+        private void report() {
+            int done = doneBatches.get();
+            if (listener != null && done != reportedBatches) {
+                reportedBatches = done;
+                listener.onProgress(done, submittedBatches, embeddedChunks.get());
+            }
+        }
+
+        private void throwIfFailed() {
+            Throwable e = failure.get();
+            if (e != null) {
+                throw new IllegalStateException("Embedding pipeline failed for " + jobName, e);
+            }
+        }
+    }
+}
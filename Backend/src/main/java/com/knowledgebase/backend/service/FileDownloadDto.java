@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.io.InputStream;
+import java.nio.file.Path;
 
 @Data
 @NoArgsConstructor
@@ -13,7 +14,10 @@ import java.io.InputStream;
 @Builder
 public class FileDownloadDto {
     private InputStream stream; // 文件输入流
-    private long contentLength; // 文件大小
+    private long contentLength; // 文件大小（区间读取时为区间长度）
     private String contentType; // 文件类型
     private String filename;    // 文件名
+    private Path localPath;     // 本地存储时的文件路径，可直接零拷贝发送；远端存储为 null
+    private long lastModified;  // 最后修改时间（毫秒），未知为 0
+    private String etag;        // 强 ETag，由 blobKey 计算
 }
@@ -1,8 +1,13 @@
 package com.knowledgebase.backend.service;
 
 import com.knowledgebase.backend.dto.FileUploadResponseDto;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
 public interface FileStorageInterface {
 
     /**
@@ -14,10 +19,62 @@ public interface FileStorageInterface {
      */
     FileUploadResponseDto upload(MultipartFile file, String category, Long userId);
 
+    /**
+     * @param in: 文件内容流（请求体），由调用方关闭
+     * @param size: 文件大小，未知传 -1
+     * @param blobKey: 由 BlobKeys 生成的 blobname
+     * @param contentType: 文件类型
+     * @return FileUploadResponseDto
+     * @description 流式上传：边读边写入存储，不经过 multipart 临时文件
+     */
+    FileUploadResponseDto upload(InputStream in, long size, String blobKey, String contentType);
+
     /**
      * @param blobKey: 文件的blobname
      * @return FileDownloadDto
      * @description 根据blobname下载文件，返回下载DTO
      */
     FileDownloadDto download(String blobKey);
+
+    /**
+     * @param blobKey: 文件的blobname
+     * @return FileDownloadDto 不含文件流
+     * @description 只获取文件元信息（大小、类型、修改时间），用于条件请求和 Range 计算
+     */
+    default FileDownloadDto stat(String blobKey) {
+        FileDownloadDto dto = download(blobKey);
+        try {
+            dto.getStream().close();
+        } catch (IOException e) {
+            // 只需要元信息，关闭失败不影响结果
+        }
+        dto.setStream(null);
+        return dto;
+    }
+
+    /**
+     * @param blobKey: 文件的blobname
+     * @param offset: 起始字节
+     * @param count: 读取字节数
+     * @return FileDownloadDto contentLength 为区间长度
+     * @description 按字节区间读取文件，默认实现跳过前缀后截断，后端支持区间读取时应覆盖
+     */
+    default FileDownloadDto download(String blobKey, long offset, long count) {
+        FileDownloadDto dto = download(blobKey);
+        try {
+            InputStream in = dto.getStream();
+            in.skipNBytes(offset);
+            dto.setStream(BoundedInputStream.builder().setInputStream(in).setMaxCount(count).get());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read range of " + blobKey, e);
+        }
+        dto.setContentLength(count);
+        return dto;
+    }
+
+    /**
+     * @param blobKey: 文件的blobname
+     * @description 删除文件，不存在时忽略（如去重后多余的上传副本）
+     */
+    void delete(String blobKey);
 }
@@ -0,0 +1,90 @@
+package com.knowledgebase.backend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 进程内会话存储，chat.conversation.store=memory（默认）时启用
+ * 有界：每个会话只保留最近 max-messages 条消息，会话数超过 max-conversations 时淘汰最久未活跃的会话
+ */
+@Component
+@ConditionalOnProperty(name = "chat.conversation.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryConversationStore implements ConversationStore {
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 对话过期时间（默认30分钟）
+     */
+    @Value("${chat.conversation.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    /**
+     * 每个会话保留的最大历史消息数量
+     */
+    @Value("${chat.conversation.max-messages:10}")
+    private int maxMessages;
+
+    @Value("${chat.conversation.max-conversations:10000}")
+    private int maxConversations;
+
+    private ConversationCache cache;
+
+    public InMemoryConversationStore(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        cache = new ConversationCache(maxMessages, maxConversations, timeoutMinutes * 60 * 1000, meterRegistry);
+    }
+
+    @Override
+    public void create(String conversationId) {
+        cache.touch(conversationId);
+    }
+
+    @Override
+    public void append(String conversationId, Message message) {
+        ConversationCache.Entry entry = cache.touch(conversationId);
+        entry.history.append(message);
+        entry.count.incrementAndGet();
+    }
+
+    @Override
+    public ConversationHistory history(String conversationId) {
+        ConversationCache.Entry entry = cache.get(conversationId);
+        return entry == null ? ConversationHistory.EMPTY : entry.snapshot();
+    }
+
+    @Override
+    public void summarize(String conversationId, ConversationSummary summary) {
+        ConversationCache.Entry entry = cache.get(conversationId);
+        if (entry != null) {
+            entry.summarize(summary);
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        cache.remove(conversationId);
+    }
+
+    @Override
+    public int activeCount() {
+        return cache.size();
+    }
+
+    /**
+     * 定时清理过期会话
+     */
+    @Scheduled(fixedDelayString = "${chat.conversation.sweep-interval-ms:60000}")
+    void sweepExpired() {
+        cache.sweep();
+    }
+}
@@ -0,0 +1,377 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dao.ChatMessageMapper;
+import com.knowledgebase.backend.dao.ChatSummaryMapper;
+import com.knowledgebase.backend.entity.ChatMessage;
+import com.knowledgebase.backend.entity.ChatSummary;
+import com.knowledgebase.backend.entity.ConversationCount;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MySQL 会话存储，chat.conversation.store=jdbc 时启用，多实例部署无需粘性会话、重启不丢历史
+ * - 写入：消息先进入本地热缓存和写队列立即返回，后台线程按 flush-interval-ms / batch-size 批量插入，
+ *   流式回答结束时不会同步等待数据库
+ * - 读取：命中热缓存时直接返回，不访问数据库；未命中时从数据库加载最近的消息，并补上本节点尚未落库的消息
+ * - 校验（validate-reads）：写线程每 validate-interval-ms 对热缓存中的会话做一次按会话分组的计数查询，
+ *   与缓存的累计消息数不一致（其他节点写入了新消息）的会话移出缓存，下次读取时重新加载
+ * - 其他节点的消息在其落库且本节点完成下一次校验前不可见（最多滞后一个 flush 周期加一个校验周期）
+ * - 取出一批消息到写入提交在 flushLock 内完成，加载和清除会话也持有该锁，
+ *   因此每条未落库的消息要么仍在写队列/重试批次中，要么已在数据库中，不会被漏读或在清除后再写入
+ * - 滚动摘要同步写入 chat_summary 表（摘要在后台线程生成，不在请求路径上）；热缓存通过计数校验时
+ *   不会重新读取摘要，其他节点刚生成的摘要要到下一次重新加载才生效，期间只是 prompt 稍长
+ * - 指标：chat.conversations.pending（待写入消息数）、chat.conversations.flush（批量写入耗时）
+ */
+@Component
+@ConditionalOnProperty(name = "chat.conversation.store", havingValue = "jdbc")
+@Slf4j
+public class JdbcConversationStore implements ConversationStore {
+
+    private static final int PURGE_BATCH = 1000;
+
+    /** 校验时一条计数查询包含的会话数 */
+    private static final int VALIDATE_BATCH = 500;
+
+    private final ChatMessageMapper chatMessageMapper;
+    private final ChatSummaryMapper chatSummaryMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${chat.conversation.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    @Value("${chat.conversation.max-messages:10}")
+    private int maxMessages;
+
+    @Value("${chat.conversation.max-conversations:10000}")
+    private int maxConversations;
+
+    @Value("${chat.conversation.jdbc.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${chat.conversation.jdbc.batch-size:200}")
+    private int batchSize;
+
+    @Value("${chat.conversation.jdbc.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.conversation.jdbc.validate-reads:true}")
+    private boolean validateReads;
+
+    @Value("${chat.conversation.jdbc.validate-interval-ms:1000}")
+    private long validateIntervalMs;
+
+    @Value("${chat.conversation.jdbc.retention-hours:168}")
+    private long retentionHours;
+
+    private ConversationCache cache;
+    private LinkedBlockingQueue<ChatMessage> queue;
+    private ScheduledExecutorService flusher;
+    private Timer flushTimer;
+
+    /** 会话 -> 本节点已入队但尚未落库的消息数 */
+    private final Map<String, AtomicInteger> unflushed = new ConcurrentHashMap<>();
+
+    /** 上次写入失败的批次，下个周期优先重试 */
+    private volatile List<ChatMessage> retry = List.of();
+
+    /** 写入一批消息（从取出到提交）与加载、清除会话互斥 */
+    private final Object flushLock = new Object();
+
+    public JdbcConversationStore(ChatMessageMapper chatMessageMapper, ChatSummaryMapper chatSummaryMapper,
+                                 MeterRegistry meterRegistry) {
+        this.chatMessageMapper = chatMessageMapper;
+        this.chatSummaryMapper = chatSummaryMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        cache = new ConversationCache(maxMessages, maxConversations, timeoutMinutes * 60 * 1000, meterRegistry);
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        flushTimer = meterRegistry.timer("chat.conversations.flush");
+        Gauge.builder("chat.conversations.pending", queue, LinkedBlockingQueue::size).register(meterRegistry);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "conversation-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (validateReads) {
+            flusher.scheduleWithFixedDelay(this::validateQuietly, validateIntervalMs, validateIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 停止时把队列中剩余的消息写完
+     */
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flushQuietly();
+    }
+
+    @Override
+    public void create(String conversationId) {
+        cache.touch(conversationId);
+    }
+
+    @Override
+    public void append(String conversationId, Message message) {
+        ConversationCache.Entry entry = cache.touch(conversationId);
+        entry.history.append(message);
+        entry.count.incrementAndGet();
+        ChatMessage row = ChatMessage.builder()
+                .conversationId(conversationId)
+                .role(message.getMessageType().name())
+                .content(message.getText())
+                .createdAt(LocalDateTime.now())
+                .build();
+        unflushed.computeIfAbsent(conversationId, k -> new AtomicInteger()).incrementAndGet();
+        if (!queue.offer(row)) {
+            // 写队列已满（数据库持续不可用或写入跟不上），退化为同步写入
+            log.warn("Conversation write queue full, writing message synchronously");
+            synchronized (flushLock) {
+                chatMessageMapper.insertBatch(List.of(row));
+                flushed(List.of(row));
+            }
+        }
+    }
+
+    @Override
+    public ConversationHistory history(String conversationId) {
+        ConversationCache.Entry entry = cache.get(conversationId);
+        if (entry != null) {
+            return entry.snapshot();
+        }
+        ConversationCache.Entry loaded = load(conversationId);
+        if (loaded == null) {
+            return ConversationHistory.EMPTY;
+        }
+        cache.put(conversationId, loaded);
+        return loaded.snapshot();
+    }
+
+    @Override
+    public void summarize(String conversationId, ConversationSummary summary) {
+        ConversationCache.Entry entry = cache.get(conversationId);
+        if (entry != null) {
+            entry.summarize(summary);
+        }
+        chatSummaryMapper.upsert(ChatSummary.builder()
+                .conversationId(conversationId)
+                .content(summary.text())
+                .throughSeq(summary.through())
+                .updatedAt(LocalDateTime.now())
+                .build());
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        cache.remove(conversationId);
+        // 持锁时没有正在写入的批次：此前取出的批次已提交（随后被删除）或已转入重试批次
+        synchronized (flushLock) {
+            queue.removeIf(m -> m.getConversationId().equals(conversationId));
+            retry = retry.stream().filter(m -> !m.getConversationId().equals(conversationId)).toList();
+            unflushed.remove(conversationId);
+            chatMessageMapper.deleteByConversationId(conversationId);
+        }
+        chatSummaryMapper.deleteByConversationId(conversationId);
+    }
+
+    @Override
+    public int activeCount() {
+        return cache.size();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.conversation.sweep-interval-ms:60000}")
+    void sweepExpired() {
+        cache.sweep();
+    }
+
+    /**
+     * 删除超过保留期的消息，分批删除避免长事务
+     */
+    @Scheduled(fixedDelayString = "${chat.conversation.jdbc.purge-interval-ms:3600000}")
+    void purge() {
+        LocalDateTime before = LocalDateTime.now().minusHours(retentionHours);
+        int total = 0;
+        int deleted;
+        do {
+            deleted = chatMessageMapper.deleteCreatedBefore(before, PURGE_BATCH);
+            total += deleted;
+        } while (deleted == PURGE_BATCH);
+        chatSummaryMapper.deleteUpdatedBefore(before);
+        if (total > 0) {
+            log.info("Purged {} chat messages older than {}", total, before);
+        }
+    }
+
+    /**
+     * 把写队列中的消息批量写入数据库，每批在 flushLock 内取出并提交，批次之间释放锁
+     */
+    void flush() {
+        synchronized (flushLock) {
+            if (!retry.isEmpty()) {
+                insert(retry);
+                retry = List.of();
+            }
+        }
+        List<ChatMessage> batch = new ArrayList<>(batchSize);
+        while (true) {
+            synchronized (flushLock) {
+                if (queue.drainTo(batch, batchSize) == 0) {
+                    return;
+                }
+                try {
+                    insert(batch);
+                } catch (RuntimeException e) {
+                    retry = List.copyOf(batch);
+                    throw e;
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 对热缓存中的会话批量计数，移出落后于数据库的会话
+     * 计数与比较在 flushLock 内完成，期间不会有批次从写队列转入数据库
+     */
+    void validate() {
+        List<String> ids = cache.ids();
+        for (int i = 0; i < ids.size(); i += VALIDATE_BATCH) {
+            List<String> batch = ids.subList(i, Math.min(i + VALIDATE_BATCH, ids.size()));
+            synchronized (flushLock) {
+                Map<String, Long> persisted = new HashMap<>(batch.size() * 2);
+                for (ConversationCount c : chatMessageMapper.countByConversationIds(batch)) {
+                    persisted.put(c.getConversationId(), c.getMessageCount());
+                }
+                for (String id : batch) {
+                    ConversationCache.Entry entry = cache.get(id);
+                    if (entry != null && entry.count.get() != persisted.getOrDefault(id, 0L) + pending(id)) {
+                        cache.remove(id, entry);
+                    }
+                }
+            }
+        }
+    }
+
+    private void validateQuietly() {
+        try {
+            validate();
+        } catch (Exception e) {
+            log.error("Failed to validate cached conversations", e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to flush conversation messages, will retry", e);
+        }
+    }
+
+    private void insert(List<ChatMessage> batch) {
+        flushTimer.record(() -> chatMessageMapper.insertBatch(batch));
+        flushed(batch);
+    }
+
+    private void flushed(List<ChatMessage> batch) {
+        for (ChatMessage m : batch) {
+            AtomicInteger pending = unflushed.get(m.getConversationId());
+            if (pending != null && pending.decrementAndGet() <= 0) {
+                unflushed.remove(m.getConversationId(), pending);
+            }
+        }
+    }
+
+    /**
+     * @return 数据库中的消息数 + 本节点尚未落库的消息数，应等于热缓存中的累计消息数
+     */
+    private long persistedCount(String conversationId) {
+        return chatMessageMapper.countByConversationId(conversationId) + pending(conversationId);
+    }
+
+    private int pending(String conversationId) {
+        AtomicInteger pending = unflushed.get(conversationId);
+        return pending == null ? 0 : pending.get();
+    }
+
+    /**
+     * 从数据库加载最近的消息并补上本节点写队列中的消息
+     * 持有 flushLock，读取期间不会有批次从写队列转入数据库
+     *
+     * @return 加载的会话；不存在或最后一条消息已超过过期时间返回 null
+     */
+    private ConversationCache.Entry load(String conversationId) {
+        synchronized (flushLock) {
+            return loadLocked(conversationId);
+        }
+    }
+
+    private ConversationCache.Entry loadLocked(String conversationId) {
+        List<ChatMessage> rows = new ArrayList<>(chatMessageMapper.selectRecent(conversationId, maxMessages));
+        Collections.reverse(rows);
+        List<ChatMessage> pending = new ArrayList<>(retry);
+        for (ChatMessage m : queue) {
+            pending.add(m);
+        }
+        pending.removeIf(m -> !m.getConversationId().equals(conversationId));
+        if (rows.isEmpty() && pending.isEmpty()) {
+            return null;
+        }
+        if (pending.isEmpty() && rows.get(rows.size() - 1).getCreatedAt()
+                .isBefore(LocalDateTime.now().minusMinutes(timeoutMinutes))) {
+            return null;
+        }
+        // 序号从会话累计消息数倒推，与摘要的 through 对齐
+        long total = persistedCount(conversationId);
+        ConversationCache.Entry entry = cache.newEntry(Math.max(0, total - rows.size() - pending.size()));
+        for (ChatMessage m : rows) {
+            entry.history.append(toMessage(m));
+        }
+        for (ChatMessage m : pending) {
+            entry.history.append(toMessage(m));
+        }
+        entry.count.set(total);
+        ChatSummary summary = chatSummaryMapper.selectByConversationId(conversationId);
+        if (summary != null) {
+            entry.summarize(new ConversationSummary(summary.getContent(), summary.getThroughSeq()));
+        }
+        return entry;
+    }
+
+    private static Message toMessage(ChatMessage m) {
+        return MessageType.ASSISTANT.name().equals(m.getRole())
+                ? new AssistantMessage(m.getContent())
+                : new UserMessage(m.getContent());
+    }
+}
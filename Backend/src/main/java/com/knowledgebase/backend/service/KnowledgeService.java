@@ -10,6 +10,8 @@ import com.knowledgebase.backend.entity.Knowledge;
 import com.knowledgebase.backend.entity.KnowledgeType;
 import com.knowledgebase.backend.service.FileDownloadDto;
 import com.knowledgebase.backend.service.FileStorageInterface;
+import com.knowledgebase.backend.utils.BlobKeys;
+import com.knowledgebase.backend.vector.HybridRetriever;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
@@ -21,6 +23,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -40,6 +43,11 @@ public class KnowledgeService {
      */
     private final FileStorageInterface fileStorageService;
     private final DocumentParseService documentParseService;
+    private final ParseJobService parseJobService;
+    private final BlobKeys blobKeys;
+    private final StreamingUploadService streamingUploadService;
+    private final ContentDedupService contentDedupService;
+    private final HybridRetriever hybridRetriever;
 
     @Transactional
     public Knowledge create(KnowledgeCreateRequestDto req) {
@@ -72,14 +80,14 @@ public class KnowledgeService {
 
         knowledgeMapper.insert(k);
 
-        // 异步解析文档类知识
+        // 文档类知识入队异步解析（与本事务一起提交，重启不丢失）
         if (k.getType() == KnowledgeType.DOC && k.getBlobKey() != null) {
-            documentParseService.parseAndEmbed(k.getId(), k.getBlobKey());
+            parseJobService.enqueueDoc(k.getId(), k.getBlobKey(), -1);
         }
 
-        // 手工录入类（Markdown/Manual）也参与向量检索
+        // 手工录入类（Markdown/Manual）也参与向量检索，走快速通道
         if (k.getType() == KnowledgeType.MANUAL && k.getContent() != null && !k.getContent().isBlank()) {
-            documentParseService.embedMarkdown(k.getId(), k.getContent());
+            parseJobService.enqueueManual(k.getId());
         }
 
         return knowledgeMapper.selectById(k.getId());
@@ -111,16 +119,17 @@ public class KnowledgeService {
 
         // 如果更新为文档类并携带新的 blobKey，则重新触发解析
         if (existing.getType() == KnowledgeType.DOC && req.getBlobKey() != null && !req.getBlobKey().isBlank()) {
-            // 先删除旧向量，再重新解析
-            documentParseService.deleteVectorsByKnowledgeId(id);
+            // 非增量模式先删除旧向量；增量模式由解析任务对比分片指纹，只增删有变化的分片
+            if (!documentParseService.isIncrementalReindex()) {
+                documentParseService.deleteVectorsByKnowledgeId(id);
+            }
             knowledgeMapper.updateParseJob(id, "PENDING");
-            documentParseService.parseAndEmbed(id, req.getBlobKey());
+            parseJobService.enqueueDoc(id, req.getBlobKey(), -1);
         }
 
-        // 如果是手工录入类，内容更新后重新向量化：先删除旧向量，再添加新向量
+        // 如果是手工录入类，内容更新后重建向量索引（默认增量：只替换有变化的分片）
         if (existing.getType() == KnowledgeType.MANUAL && req.getContent() != null && !req.getContent().isBlank()) {
-            documentParseService.deleteVectorsByKnowledgeId(id);
-            documentParseService.embedMarkdown(id, req.getContent());
+            parseJobService.enqueueManual(id);
         }
 
         return knowledgeMapper.selectById(id);
@@ -187,11 +196,36 @@ public class KnowledgeService {
     @Transactional
     public FileUploadResponseDto uploadOssFile(Long id, MultipartFile file, String category, Long userId) {
         Knowledge existing = get(id);
-        FileUploadResponseDto res = fileStorageService.upload(file, category, userId);
+        FileUploadResponseDto res = contentDedupService.upload(file, category, userId);
+        knowledgeMapper.updateBlobKey(id, res.getBlobKey());
+        if (existing.getType() == KnowledgeType.DOC) {
+            knowledgeMapper.updateParseJob(id, "PENDING");
+            parseJobService.enqueueDoc(id, res.getBlobKey(), file.getSize());
+        }
+        return res;
+    }
+
+    /**
+     * @param id:            知识id
+     * @param in:            请求体
+     * @param contentLength: 请求体长度，未知为 -1
+     * @param filename:      原始文件名
+     * @param category:      分类文件类别
+     * @param userId:        用户id
+     * @param contentHash:   客户端计算的内容 SHA-256（可空），用于完整性校验
+     * @return FileUploadResponseDto blobKey、contentHash、size
+     * @description 流式上传知识关联的文件，并更新知识的blobKey字段
+     */
+    @Transactional
+    public FileUploadResponseDto uploadOssFile(Long id, InputStream in, long contentLength, String filename,
+                                               String category, Long userId, String contentHash) {
+        Knowledge existing = get(id);
+        FileUploadResponseDto res = streamingUploadService.upload(in, contentLength, filename, category, userId,
+                contentHash);
         knowledgeMapper.updateBlobKey(id, res.getBlobKey());
         if (existing.getType() == KnowledgeType.DOC) {
             knowledgeMapper.updateParseJob(id, "PENDING");
-            documentParseService.parseAndEmbed(id, res.getBlobKey());
+            parseJobService.enqueueDoc(id, res.getBlobKey(), res.getSize());
         }
         return res;
     }
@@ -202,16 +236,47 @@ public class KnowledgeService {
      * @description 获取知识关联的文件下载流和头信息
      */
     public FileDownloadDto getKnowledgeFile(Long id) {
+        Knowledge existing = getWithFile(id);
+        return withKnowledgeInfo(existing, fileStorageService.download(existing.getBlobKey()));
+    }
+
+    /**
+     * @param id: 知识id
+     * @param offset: 起始字节
+     * @param count: 读取字节数
+     * @return FileDownloadDto 区间内容
+     * @description 按字节区间读取知识关联的文件（Range 请求）
+     */
+    public FileDownloadDto getKnowledgeFile(Long id, long offset, long count) {
+        Knowledge existing = getWithFile(id);
+        return withKnowledgeInfo(existing, fileStorageService.download(existing.getBlobKey(), offset, count));
+    }
+
+    /**
+     * @param id: 知识id
+     * @return FileDownloadDto 不含文件流
+     * @description 获取知识关联文件的元信息和 ETag，用于条件请求与 Range 计算
+     */
+    public FileDownloadDto getKnowledgeFileInfo(Long id) {
+        Knowledge existing = getWithFile(id);
+        return withKnowledgeInfo(existing, fileStorageService.stat(existing.getBlobKey()));
+    }
+
+    private Knowledge getWithFile(Long id) {
         Knowledge existing = get(id);
         if (existing.getBlobKey() == null || existing.getBlobKey().isBlank()) {
             throw new IllegalArgumentException("Knowledge has no file");
         }
-        FileDownloadDto fileDto = fileStorageService.download(existing.getBlobKey());
+        return existing;
+    }
+
+    private FileDownloadDto withKnowledgeInfo(Knowledge existing, FileDownloadDto fileDto) {
         // Use knowledge title as filename if available, as it contains the original
         // filename with extension
         if (existing.getTitle() != null && !existing.getTitle().isBlank()) {
             fileDto.setFilename(existing.getTitle());
         }
+        fileDto.setEtag(blobKeys.etag(existing.getBlobKey()));
         return fileDto;
     }
 
@@ -223,6 +288,8 @@ public class KnowledgeService {
      * @param knowledgeIds        限定知识 ID 列表（可选）
      * @param topK                返回最相关的 N 个片段
      * @param similarityThreshold 相似度阈值
+     * @param searchEffort        ANN 检索力度（HNSW ef_search / IVFFlat probes），null 使用数据库默认值；
+     *                            越大召回越高、延迟越高，由调用方按接口的延迟要求选择
      * @return 检索结果列表，按 knowledgeId 聚合
      */
     public List<KnowledgeSearchResultDto> searchBySemantics(
@@ -230,7 +297,8 @@ public class KnowledgeService {
             Long spaceId,
             List<Long> knowledgeIds,
             int topK,
-            double similarityThreshold) {
+            double similarityThreshold,
+            Integer searchEffort) {
 
         try {
             // 构造过滤条件
@@ -260,8 +328,8 @@ public class KnowledgeService {
                 requestBuilder.filterExpression(filter);
             }
 
-            // 执行向量检索
-            List<Document> chunks = vectorStore.similaritySearch(requestBuilder.build());
+            // 混合检索：向量与全文并行检索后按 RRF 融合（向量一路相同问题、范围且索引未变化时直接复用上次的排序结果）
+            List<Document> chunks = hybridRetriever.search(requestBuilder.build(), spaceId, knowledgeIds, searchEffort);
 
             if (chunks.isEmpty()) {
                 return Collections.emptyList();
@@ -283,31 +351,36 @@ public class KnowledgeService {
             return knowledges.stream()
                     .map(knowledge -> {
                         List<Document> relatedChunks = groupedByKnowledge.get(knowledge.getId());
+                        // 只由全文检索命中的分片没有向量距离，不参与平均相似度
                         double avgScore = relatedChunks.stream()
+                                .filter(doc -> doc.getMetadata().get("distance") instanceof Number
+                                        || doc.getMetadata().get("score") instanceof Number)
                                 .mapToDouble(doc -> {
                                     Object distObj = doc.getMetadata().get("distance");
                                     if (distObj instanceof Number) {
                                         double distance = ((Number) distObj).doubleValue();
                                         return Math.max(0.0, 1.0 - distance); // similarity in [0,1]
                                     }
-                                    Object scoreObj = doc.getMetadata().get("score");
-                                    if (scoreObj instanceof Number) {
-                                        return ((Number) scoreObj).doubleValue();
-                                    }
-                                    return 0.0;
+                                    return ((Number) doc.getMetadata().get("score")).doubleValue();
                                 })
                                 .average()
                                 .orElse(0.0);
-
+                        // 混合检索时按融合分数之和排序，向量检索时按平均相似度排序
+                        double rankScore = relatedChunks.stream()
+                                .map(doc -> doc.getMetadata().get("rrfScore"))
+                                .filter(Number.class::isInstance)
+                                .mapToDouble(v -> ((Number) v).doubleValue())
+                                .sum();
                         return KnowledgeSearchResultDto.builder()
                                 .knowledgeId(knowledge.getId())
                                 .title(knowledge.getTitle())
                                 .type(knowledge.getType() != null ? knowledge.getType().name() : null)
                                 .chunks(relatedChunks)
                                 .avgScore(avgScore)
+                                .rankScore(rankScore > 0 ? rankScore : avgScore)
                                 .build();
                     })
-                    .sorted(Comparator.comparingDouble(KnowledgeSearchResultDto::getAvgScore).reversed())
+                    .sorted(Comparator.comparingDouble(KnowledgeSearchResultDto::getRankScore).reversed())
                     .collect(Collectors.toList());
 
         } catch (Exception e) {
@@ -0,0 +1,53 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dto.FileUploadResponseDto;
+import com.knowledgebase.backend.utils.LocalFileClient;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+
+/**
+ * 本地磁盘存储实现，storage.type=local 时启用（开发、测试、内网部署）
+ */
+@Service
+@Qualifier("storageBackend")
+@ConditionalOnProperty(name = "storage.type", havingValue = "local")
+@RequiredArgsConstructor
+public class LocalFileStorageService implements FileStorageInterface {
+
+    private final LocalFileClient localFileClient;
+
+    @Override
+    public FileUploadResponseDto upload(MultipartFile file, String category, Long userId) {
+        return localFileClient.upload(file, category, userId);
+    }
+
+    @Override
+    public FileUploadResponseDto upload(InputStream in, long size, String blobKey, String contentType) {
+        return localFileClient.upload(in, blobKey);
+    }
+
+    @Override
+    public FileDownloadDto download(String blobKey) {
+        return localFileClient.download(blobKey);
+    }
+
+    @Override
+    public FileDownloadDto stat(String blobKey) {
+        return localFileClient.stat(blobKey);
+    }
+
+    @Override
+    public FileDownloadDto download(String blobKey, long offset, long count) {
+        return localFileClient.download(blobKey, offset, count);
+    }
+
+    @Override
+    public void delete(String blobKey) {
+        localFileClient.delete(blobKey);
+    }
+}
@@ -0,0 +1,79 @@
+package com.knowledgebase.backend.service;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 定长消息环形缓冲区，只保留最近 capacity 条消息
+ * 追加无锁：先用 CAS 领取序号再写入槽位；读取按序号校验槽位，跳过尚未写完或已被覆盖的槽位
+ */
+final class MessageRing {
+
+    private final AtomicReferenceArray<Slot> slots;
+    private final AtomicLong next;
+
+    MessageRing(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param start 第一条消息的序号（从持久层加载时等于此前已有的消息数，使序号在各节点一致）
+     */
+    MessageRing(int capacity, long start) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ring capacity must be positive");
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.next = new AtomicLong(start);
+    }
+
+    void append(Message message) {
+        long seq = next.getAndIncrement();
+        slots.set(index(seq), new Slot(seq, message));
+    }
+
+    /**
+     * @return 按追加顺序排列的最近消息
+     */
+    List<Message> snapshot() {
+        return read(0).messages();
+    }
+
+    /**
+     * 读取序号不小于 from 的最近消息
+     * 遇到已领取序号但尚未写完的槽位即停止，保证返回的消息连续且以 end 之前的最后一条结尾
+     */
+    Window read(long from) {
+        long end = next.get();
+        long start = Math.max(from, end - slots.length());
+        List<Message> messages = new ArrayList<>((int) Math.max(0, end - start));
+        for (long seq = start; seq < end; seq++) {
+            Slot slot = slots.get(index(seq));
+            if (slot == null || slot.seq < seq) {
+                return new Window(messages, seq);
+            }
+            if (slot.seq == seq) {
+                messages.add(slot.message);
+            }
+        }
+        return new Window(messages, Math.max(start, end));
+    }
+
+    private int index(long seq) {
+        return (int) (seq % slots.length());
+    }
+
+    private record Slot(long seq, Message message) {
+    }
+
+    /**
+     * @param messages 按追加顺序排列的消息
+     * @param end      最后一条消息的序号 + 1
+     */
+    record Window(List<Message> messages, long end) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dao.ParseJobMapper;
+import com.knowledgebase.backend.entity.ParseJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * 解析任务入队
+ * 任务写入 MySQL 的 parse_job_queue 表，与知识的增改在同一个事务里提交，
+ * 由 ParseJobWorker 轮询领取执行，进程重启不会丢任务
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ParseJobService {
+
+    public static final String TYPE_DOC = "DOC";
+    public static final String TYPE_MANUAL = "MANUAL";
+
+    /** 快速通道：手工笔记、小文件 */
+    public static final String LANE_FAST = "FAST";
+    /** 批量通道：大文件或大小未知的文件 */
+    public static final String LANE_BULK = "BULK";
+
+    private final ParseJobMapper parseJobMapper;
+
+    @Value("${knowledge.jobs.fast-lane-max-bytes:5242880}")
+    private long fastLaneMaxBytes;
+
+    /**
+     * @param knowledgeId: 知识id
+     * @param blobKey:     要解析的文件
+     * @param sizeHint:    文件大小（字节），未知传 -1，用于选择优先级通道
+     * @description 文档解析任务入队
+     */
+    public void enqueueDoc(Long knowledgeId, String blobKey, long sizeHint) {
+        String lane = sizeHint >= 0 && sizeHint <= fastLaneMaxBytes ? LANE_FAST : LANE_BULK;
+        enqueue(knowledgeId, TYPE_DOC, blobKey, lane);
+    }
+
+    /**
+     * @param knowledgeId: 知识id
+     * @description Markdown 重新向量化任务入队，执行时读取最新内容，连续多次编辑会合并为一次
+     */
+    public void enqueueManual(Long knowledgeId) {
+        enqueue(knowledgeId, TYPE_MANUAL, null, LANE_FAST);
+    }
+
+    private void enqueue(Long knowledgeId, String jobType, String blobKey, String lane) {
+        ParseJob pending = parseJobMapper.selectPending(knowledgeId, jobType);
+        if (pending != null && parseJobMapper.refreshPending(pending.getId(), blobKey, lane) > 0) {
+            log.info("Merged parse job into pending jobId={}, knowledgeId={}, type={}",
+                    pending.getId(), knowledgeId, jobType);
+            return;
+        }
+        ParseJob job = ParseJob.builder()
+                .knowledgeId(knowledgeId)
+                .jobType(jobType)
+                .blobKey(blobKey)
+                .lane(lane)
+                .build();
+        parseJobMapper.insert(job);
+        log.info("Enqueued parse job jobId={}, knowledgeId={}, type={}, lane={}",
+                job.getId(), knowledgeId, jobType, lane);
+    }
+}
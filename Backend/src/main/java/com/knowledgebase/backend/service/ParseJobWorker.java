@@ -0,0 +1,281 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dao.KnowledgeMapper;
+import com.knowledgebase.backend.dao.ParseJobMapper;
+import com.knowledgebase.backend.entity.Knowledge;
+import com.knowledgebase.backend.entity.ParseJob;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 解析任务执行器
+ * - 每个优先级通道有独立的线程和并发上限，小笔记不会排在大 PDF 后面
+ * - 通过条件更新领取任务并持有租约，执行期间定期续租；租约过期的任务可被其他节点接管
+ * - 同一知识同时只执行一个任务，后续任务等前一个完成（或租约过期）后才会被领取
+ * - 轮询和续租各用一个独立的调度线程，不占用 Spring 共享的 @Scheduled 线程，
+ *   也不会因为轮询卡在数据库上而错过续租
+ * - 失败按指数退避重试，超过最大次数后标记 FAILED
+ * - 启动时回收租约已过期的 RUNNING 任务和旧版 @Async 遗留的未完成解析；
+ *   显式配置了 node-id（每个实例唯一）时，同时立即回收该节点上次进程遗留的任务，不必等租约过期
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ParseJobWorker {
+
+    private final ParseJobMapper parseJobMapper;
+    private final KnowledgeMapper knowledgeMapper;
+    private final DocumentParseService documentParseService;
+
+    @Value("${knowledge.jobs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${knowledge.jobs.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${knowledge.jobs.node-id:}")
+    private String nodeId;
+
+    @Value("${knowledge.jobs.fast-lane-workers:2}")
+    private int fastLaneWorkers;
+
+    @Value("${knowledge.jobs.bulk-lane-workers:2}")
+    private int bulkLaneWorkers;
+
+    @Value("${knowledge.jobs.lease-seconds:300}")
+    private int leaseSeconds;
+
+    @Value("${knowledge.jobs.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${knowledge.jobs.backoff-base-seconds:10}")
+    private long backoffBaseSeconds;
+
+    @Value("${knowledge.jobs.backoff-max-seconds:600}")
+    private long backoffMaxSeconds;
+
+    /** 本进程的租约持有者标识：节点名 + 进程实例号 */
+    private String owner;
+
+    /**
+     * node-id 是否显式配置；默认取主机名时，同一主机上的多个实例或共用主机名的容器会得到相同的 node-id，
+     * 不能据此判断任务属于本节点上一次进程
+     */
+    private boolean stableNodeId;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    /** 本进程正在执行的任务，用于续租 */
+    private final Set<Long> runningJobIds = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean ready;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void init() throws Exception {
+        stableNodeId = nodeId != null && !nodeId.isBlank();
+        if (!stableNodeId) {
+            nodeId = InetAddress.getLocalHost().getHostName();
+        }
+        owner = nodeId + ":" + UUID.randomUUID();
+        lanes.put(ParseJobService.LANE_FAST, new Lane(ParseJobService.LANE_FAST, fastLaneWorkers));
+        lanes.put(ParseJobService.LANE_BULK, new Lane(ParseJobService.LANE_BULK, bulkLaneWorkers));
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger seq = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "parse-job-scheduler-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        long renewIntervalMs = leaseSeconds * 1000L / 3;
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::renewLeases, renewIntervalMs, renewIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ready = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        // 未完成的任务保持 RUNNING，下次启动或租约过期后会被重新领取
+        lanes.values().forEach(lane -> lane.executor.shutdownNow());
+    }
+
+    /**
+     * 启动恢复，完成后才开始轮询
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int recovered = parseJobMapper.recoverStale(stableNodeId ? nodeId + ":" : null);
+            List<ParseJob> orphaned = parseJobMapper.selectOrphanedDocs();
+            for (ParseJob o : orphaned) {
+                parseJobMapper.insert(ParseJob.builder()
+                        .knowledgeId(o.getKnowledgeId())
+                        .jobType(ParseJobService.TYPE_DOC)
+                        .blobKey(o.getBlobKey())
+                        .lane(ParseJobService.LANE_BULK)
+                        .build());
+                knowledgeMapper.updateParseJob(o.getKnowledgeId(), "PENDING");
+            }
+            log.info("Parse job recovery finished, owner={}, recoveredRunning={}, requeuedOrphans={}",
+                    owner, recovered, orphaned.size());
+        } catch (Exception e) {
+            log.error("Parse job recovery failed", e);
+        }
+        ready = true;
+    }
+
+    /**
+     * 轮询各通道，按空闲线程数领取任务
+     */
+    public void poll() {
+        if (!enabled || !ready) {
+            return;
+        }
+        for (Lane lane : lanes.values()) {
+            int free = lane.workers - lane.active.get();
+            if (free <= 0) {
+                continue;
+            }
+            try {
+                for (Long id : parseJobMapper.selectClaimable(lane.name, free)) {
+                    if (parseJobMapper.claim(id, owner, leaseSeconds) == 1) {
+                        ParseJob job = parseJobMapper.selectById(id);
+                        lane.active.incrementAndGet();
+                        runningJobIds.add(id);
+                        lane.executor.execute(() -> {
+                            try {
+                                run(job);
+                            } finally {
+                                runningJobIds.remove(id);
+                                lane.active.decrementAndGet();
+                            }
+                        });
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Poll parse jobs failed for lane={}", lane.name, e);
+            }
+        }
+    }
+
+    /**
+     * 长任务续租，间隔为租约时长的 1/3
+     */
+    public void renewLeases() {
+        if (runningJobIds.isEmpty()) {
+            return;
+        }
+        try {
+            parseJobMapper.renewLeases(new ArrayList<>(runningJobIds), owner, leaseSeconds);
+        } catch (Exception e) {
+            log.error("Renew parse job leases failed", e);
+        }
+    }
+
+    private void run(ParseJob job) {
+        Long knowledgeId = job.getKnowledgeId();
+        try {
+            Knowledge k = knowledgeMapper.selectById(knowledgeId);
+            if (k == null) {
+                // 知识已被删除（队列行通常随外键级联删除，这里兜底）
+                parseJobMapper.markDone(job.getId(), owner);
+                return;
+            }
+            if (ParseJobService.TYPE_MANUAL.equals(job.getJobType())) {
+                documentParseService.reindexMarkdown(knowledgeId, k.getContent());
+            } else {
+                documentParseService.parseAndEmbed(knowledgeId, job.getBlobKey());
+            }
+            parseJobMapper.markDone(job.getId(), owner);
+        } catch (Exception e) {
+            String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+            if (error.length() > 1000) {
+                error = error.substring(0, 1000);
+            }
+            int attempts = job.getAttempts() == null ? 1 : job.getAttempts();
+            if (attempts >= maxAttempts) {
+                log.error("Parse job failed permanently, jobId={}, knowledgeId={}, attempts={}",
+                        job.getId(), knowledgeId, attempts, e);
+                parseJobMapper.markFailed(job.getId(), owner, error);
+                updateParseJobState(job, "FAILED");
+            } else {
+                long delay = backoffSeconds(attempts);
+                log.warn("Parse job failed, retry in {}s, jobId={}, knowledgeId={}, attempts={}",
+                        delay, job.getId(), knowledgeId, attempts, e);
+                parseJobMapper.reschedule(job.getId(), owner, delay, error);
+                updateParseJobState(job, "PENDING");
+            }
+        }
+    }
+
+    /**
+     * 指数退避 + 抖动，避免多个失败任务同时重试
+     */
+    private long backoffSeconds(int attempts) {
+        long delay = backoffBaseSeconds << Math.min(attempts - 1, 20);
+        delay = Math.min(delay, backoffMaxSeconds);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * knowledge.parse_job 只记录文档解析的状态，MANUAL 笔记保持为空
+     */
+    private void updateParseJobState(ParseJob job, String state) {
+        if (ParseJobService.TYPE_DOC.equals(job.getJobType())) {
+            knowledgeMapper.updateParseJob(job.getKnowledgeId(), state);
+        }
+    }
+
+    /**
+     * 优先级通道：独立线程池 + 并发计数
+     */
+    private static final class Lane {
+        private final String name;
+        private final int workers;
+        private final AtomicInteger active = new AtomicInteger();
+        private final ThreadPoolExecutor executor;
+
+        private Lane(String name, int workers) {
+            this.name = name;
+            this.workers = workers;
+            AtomicInteger seq = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "parse-" + name.toLowerCase() + "-" + seq.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.knowledgebase.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+/**
+ * 流式文本抽取
+ * Tika 的 SAX 输出直接写入一个定长窗口，窗口写满后在段落/句子边界切出一段交给下游（切分 + 向量化），
+ * 单个任务的文本内存占用由 window-chars 决定，而不是由文档大小决定。
+ * 注意：PDF 等格式的解析器自身仍可能整体加载源文件，这里只限制抽取出的文本。
+ */
+@Component
+@Slf4j
+public class StreamingTextExtractor {
+
+    private final Parser parser = new AutoDetectParser();
+
+    @Value("${knowledge.ingest.window-chars:20000}")
+    private int windowChars;
+
+    /**
+     * 窗口文本的消费者，在解析线程中同步调用；阻塞即对 Tika 形成背压
+     */
+    @FunctionalInterface
+    public interface WindowConsumer {
+        void accept(String text) throws Exception;
+    }
+
+    /**
+     * @param inputStream 文件流，由调用方关闭
+     * @param consumer    每个窗口的文本
+     * @return 抽取出的字符总数
+     */
+    public long extract(InputStream inputStream, WindowConsumer consumer) throws Exception {
+        WindowWriter writer = new WindowWriter(windowChars, consumer);
+        try {
+            parser.parse(inputStream, new BodyContentHandler(writer), new Metadata(), new ParseContext());
+            writer.close();
+        } catch (Exception e) {
+            // 下游失败会被 Tika 包装成 TikaException/SAXException，这里还原为原始异常
+            if (writer.failure != null) {
+                throw writer.failure;
+            }
+            throw e;
+        }
+        return writer.total;
+    }
+
+    /**
+     * 累积字符，超过窗口大小时在窗口后半段内最近的段落/换行/句末处切出一段
+     */
+    static final class WindowWriter extends Writer {
+
+        private final int windowChars;
+        private final WindowConsumer consumer;
+        private final StringBuilder buffer;
+        private Exception failure;
+        private long total;
+
+        WindowWriter(int windowChars, WindowConsumer consumer) {
+            this.windowChars = windowChars;
+            this.consumer = consumer;
+            this.buffer = new StringBuilder(windowChars + 1024);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            buffer.append(cbuf, off, len);
+            total += len;
+            while (buffer.length() >= windowChars) {
+                int cut = boundary();
+                String window = buffer.substring(0, cut);
+                buffer.delete(0, cut);
+                emit(window);
+            }
+        }
+
+        private int boundary() {
+            int from = windowChars / 2;
+            int cut = buffer.lastIndexOf("\n\n", windowChars);
+            if (cut < from) {
+                cut = buffer.lastIndexOf("\n", windowChars);
+            }
+            if (cut < from) {
+                cut = lastSentenceEnd(from);
+            }
+            return cut < from ? windowChars : cut + 1;
+        }
+
+        private int lastSentenceEnd(int from) {
+            for (int i = Math.min(windowChars, buffer.length()) - 1; i >= from; i--) {
+                char c = buffer.charAt(i);
+                if (c == '。' || c == '！' || c == '？' || c == '.' || c == '!' || c == '?') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void emit(String window) throws IOException {
+            if (window.isBlank()) {
+                return;
+            }
+            try {
+                consumer.accept(window);
+            } catch (Exception e) {
+                failure = e;
+                throw new IOException("Window consumer failed", e);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!buffer.isEmpty()) {
+                String rest = buffer.toString();
+                buffer.setLength(0);
+                emit(rest);
+            }
+        }
+    }
+}
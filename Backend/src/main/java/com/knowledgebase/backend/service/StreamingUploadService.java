@@ -0,0 +1,78 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dto.FileUploadResponseDto;
+import com.knowledgebase.backend.utils.BlobKeys;
+import com.knowledgebase.backend.utils.HashingInputStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+
+/**
+ * 流式上传：请求体（application/octet-stream）边读边写入存储，
+ * 不经过 multipart 解析和临时文件，同一次读取完成内容 hash 与大小校验，
+ * 上传完成后按服务端计算的 hash 复用该用户已有的 blob（见 ContentDedupService）
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StreamingUploadService {
+
+    private final FileStorageInterface fileStorageService;
+    private final BlobKeys blobKeys;
+    private final ContentDedupService contentDedupService;
+
+    @Value("${storage.upload.max-bytes:209715200}")
+    private long maxBytes;
+
+    /**
+     * @param in: 请求体
+     * @param contentLength: Content-Length，未知时为 -1（chunked 传输）
+     * @param filename: 原始文件名，用于校验类型和生成 blobKey
+     * @param category: 分类文件夹
+     * @param userId: 用户id
+     * @param expectedHash: 客户端预先计算的内容 SHA-256（可空），仅用于完整性校验，与服务端计算结果不一致时拒绝上传
+     * @return FileUploadResponseDto blobKey、内容 hash 与大小
+     */
+    public FileUploadResponseDto upload(InputStream in, long contentLength, String filename,
+                                        String category, Long userId, String expectedHash) {
+        blobKeys.validateFilename(filename);
+        if (contentLength == 0) {
+            throw new IllegalArgumentException("File is empty");
+        }
+        if (contentLength > maxBytes) {
+            throw new IllegalArgumentException("File exceeds maximum size of " + maxBytes + " bytes");
+        }
+        String folder = (category == null || category.isBlank()) ? "common" : category.trim();
+        String extension = blobKeys.getExtension(filename);
+        String blobKey = blobKeys.buildBlobName(folder, userId, extension);
+        String contentType = blobKeys.resolveContentType(null, extension);
+
+        HashingInputStream hashing = new HashingInputStream(in, maxBytes);
+        FileUploadResponseDto res;
+        try {
+            res = fileStorageService.upload(hashing, contentLength, blobKey, contentType);
+        } catch (RuntimeException e) {
+            // 超限异常可能被存储 SDK 包装，按已读字节数还原为参数错误
+            if (hashing.getCount() > maxBytes) {
+                throw new IllegalArgumentException("File exceeds maximum size of " + maxBytes + " bytes", e);
+            }
+            throw e;
+        }
+        if (contentLength >= 0 && hashing.getCount() != contentLength) {
+            log.warn("Upload size mismatch for {}: declared {}, received {}", blobKey, contentLength, hashing.getCount());
+        }
+        if (expectedHash != null && !expectedHash.isBlank() && !expectedHash.equalsIgnoreCase(hashing.hex())) {
+            log.warn("Upload hash mismatch for {}: declared {}, computed {}", blobKey, expectedHash, hashing.hex());
+            contentDedupService.discard(blobKey);
+            throw new IllegalArgumentException("Content hash mismatch: declared " + expectedHash
+                    + ", computed " + hashing.hex());
+        }
+        res.setContentHash(hashing.hex());
+        res.setSize(hashing.getCount());
+        // 上传完成后才知道 hash：内容已存在时删除本次 blob，返回已有的一份
+        return contentDedupService.register(res, folder, userId);
+    }
+}
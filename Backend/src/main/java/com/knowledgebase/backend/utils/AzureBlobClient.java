@@ -1,47 +1,98 @@
 package com.knowledgebase.backend.utils;
 
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpPipelineNextSyncPolicy;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.netty.NettyAsyncHttpClientBuilder;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import com.azure.core.util.BinaryData;
+import com.azure.core.util.Context;
 import com.azure.storage.blob.BlobClient;
-import com.azure.storage.blob.BlobClientBuilder;
 import com.azure.storage.blob.BlobContainerClient;
-import com.azure.storage.blob.BlobContainerClientBuilder;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
 import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobInputStreamOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import com.azure.storage.blob.specialized.BlobInputStream;
 import com.knowledgebase.backend.dto.FileUploadResponseDto;
 import com.knowledgebase.backend.service.FileDownloadDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Locale;
-import java.util.Set;
-import java.util.UUID;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Azure Blob Storage 客户端封装
  * @description 支持文件上传到 Azure Blob Storage，返回文件 key
- * 支持文件类型："pdf", "doc", "docx", "txt", "png", "jpg", "jpeg"
- * 每个用户的文件分开存储
- * 形如 baseFolder/user-userId/category/timestamp-uuid.extension
+ * 文件类型校验与 blob key 规则见 BlobKeys
+ * 服务客户端、容器客户端和底层 HTTP 连接池只在首次使用时构建一次，之后所有请求复用；
+ * 容器存在性和 blob 属性在进程内缓存，下载只需要一次存储往返
  */
 @Component
 @Slf4j
 public class AzureBlobClient {
 
-    private static final Set<String> ALLOWED_EXTENSIONS = Set.of("pdf", "doc", "docx", "txt", "png", "jpg", "jpeg");
-
     @Value("${azure.blob.connection-string:}")
     private String connectionString;
 
     @Value("${azure.blob.container}")
     private String containerName;
 
-    @Value("${azure.blob.base-folder:knowledge}")
-    private String baseFolder;
+    @Value("${azure.blob.max-connections:64}")
+    private int maxConnections;
+
+    @Value("${azure.blob.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${azure.blob.response-timeout-ms:60000}")
+    private long responseTimeoutMs;
+
+    @Value("${azure.blob.idle-timeout-seconds:60}")
+    private long idleTimeoutSeconds;
+
+    @Value("${azure.blob.properties-cache-size:2000}")
+    private int propertiesCacheSize;
+
+    @Value("${azure.blob.upload-block-size:8388608}")
+    private long uploadBlockSize;
+
+    @Value("${azure.blob.upload-concurrency:4}")
+    private int uploadConcurrency;
+
+    private final MeterRegistry meterRegistry;
+    private final BlobKeys blobKeys;
+
+    private volatile BlobContainerClient containerClient;
+
+    /** blob 名称带时间戳和 uuid，写入后不会被覆盖，属性可以长期缓存 */
+    private LruCache<String, BlobProperties> propertiesCache;
+
+    public AzureBlobClient(MeterRegistry meterRegistry, BlobKeys blobKeys) {
+        this.meterRegistry = meterRegistry;
+        this.blobKeys = blobKeys;
+    }
+
+    @PostConstruct
+    void init() {
+        propertiesCache = new LruCache<>(propertiesCacheSize);
+    }
 
     /**
      * @param file: 上传的文件
@@ -51,24 +102,22 @@ public class AzureBlobClient {
      * @description 上传文件到 Azure Blob Storage，返回文件 key
      */
     public FileUploadResponseDto upload(MultipartFile file, String folder, Long userId) {
-        validateFile(file);
+        blobKeys.validateFile(file);
         String category = (folder == null || folder.isBlank()) ? "common" : folder.trim(); // 默认上传的是文档文件，存common
-        String extension = getExtension(file.getOriginalFilename());    // 取后缀
-        String blobName = buildBlobName(category, userId, extension);   // 构建文件名
-        BlobServiceClient serviceClient = buildServiceClient();
-        BlobContainerClient containerClient = getOrCreateContainer(serviceClient);
-        BlobClient blobClient = new BlobClientBuilder()
-                .endpoint(serviceClient.getAccountUrl())
-                .containerName(containerName)
-                .blobName(blobName)
-                .connectionString(connectionString)
-                .buildClient();
+        String extension = blobKeys.getExtension(file.getOriginalFilename());    // 取后缀
+        String blobName = blobKeys.buildBlobName(category, userId, extension);   // 构建文件名
+        BlobClient blobClient = container().getBlobClient(blobName);
 
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
         try (InputStream inputStream = file.getInputStream()) {
-            blobClient.upload(inputStream, file.getSize(), true);
+            // Content-Type 随上传请求一起提交，不再单独调用 setHttpHeaders
             BlobHttpHeaders headers = new BlobHttpHeaders()
-                    .setContentType(resolveContentType(file.getContentType(), extension));
-            blobClient.setHttpHeaders(headers);
+                    .setContentType(blobKeys.resolveContentType(file.getContentType(), extension));
+            blobClient.uploadWithResponse(new BlobParallelUploadOptions(BinaryData.fromStream(inputStream, file.getSize()))
+                    .setHeaders(headers)
+                    .setParallelTransferOptions(transferOptions()), null, Context.NONE);
+            outcome = "success";
             return FileUploadResponseDto.builder()
                     .blobKey(blobName)
                     .build();
@@ -78,150 +127,252 @@ public class AzureBlobClient {
         } catch (BlobStorageException e) {
             log.error("Azure Blob upload failed: {}", e.getMessage(), e);
             throw new RuntimeException("Upload to Azure Blob failed", e);
+        } finally {
+            sample.stop(meterRegistry.timer("storage.azure.operation", "operation", "upload", "outcome", outcome));
         }
     }
 
+    /**
+     * @param inputStream: 文件内容流，由调用方关闭
+     * @param size: 文件大小，未知传 -1
+     * @param blobName: 由 BlobKeys 生成的 blobName
+     * @param contentType: 文件类型
+     * @return FileUploadResponseDto
+     * @description 流式上传：按块读取请求体并并行上传各块（Put Block），最后一次提交块列表，
+     *              内存占用为 块大小 × 并发数，与文件大小无关
+     */
+    public FileUploadResponseDto upload(InputStream inputStream, long size, String blobName, String contentType) {
+        BlobClient blobClient = container().getBlobClient(blobName);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            BinaryData data = size >= 0 ? BinaryData.fromStream(inputStream, size) : BinaryData.fromStream(inputStream);
+            blobClient.uploadWithResponse(new BlobParallelUploadOptions(data)
+                    .setHeaders(new BlobHttpHeaders().setContentType(contentType))
+                    .setParallelTransferOptions(transferOptions()), null, Context.NONE);
+            outcome = "success";
+            return FileUploadResponseDto.builder()
+                    .blobKey(blobName)
+                    .build();
+        } catch (BlobStorageException e) {
+            log.error("Azure Blob upload failed: {}", e.getMessage(), e);
+            throw new RuntimeException("Upload to Azure Blob failed", e);
+        } finally {
+            sample.stop(meterRegistry.timer("storage.azure.operation", "operation", "upload", "outcome", outcome));
+        }
+    }
+
+    private ParallelTransferOptions transferOptions() {
+        return new ParallelTransferOptions()
+                .setBlockSizeLong(uploadBlockSize)
+                .setMaxSingleUploadSizeLong(uploadBlockSize)
+                .setMaxConcurrency(uploadConcurrency);
+    }
+
     /**
      * @description: 下载文件
+     * 打开流时的首个分段下载同时返回 blob 属性，不再单独请求 exists/getProperties
      * @param blobName: 文件的blobName
      * @return FileDownloadDto 文件下载DTO
      */
     public FileDownloadDto download(String blobName) {
-        BlobServiceClient serviceClient = buildServiceClient();
-        BlobContainerClient containerClient = getOrCreateContainer(serviceClient);
-        BlobClient blobClient = containerClient.getBlobClient(blobName);
-        if (!blobClient.exists()) {
-            throw new IllegalArgumentException("Blob not found: " + blobName);
+        BlobClient blobClient = container().getBlobClient(blobName);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            BlobInputStream inputStream = blobClient.openInputStream();
+            BlobProperties properties = inputStream.getProperties();
+            propertiesCache.put(blobName, properties);
+            outcome = "success";
+            return toDownloadDto(blobName, properties, inputStream);
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404) {
+                outcome = "not_found";
+                throw new IllegalArgumentException("Blob not found: " + blobName);
+            }
+            throw e;
+        } finally {
+            sample.stop(meterRegistry.timer("storage.azure.operation", "operation", "download", "outcome", outcome));
         }
-        String contentType = blobClient.getProperties().getContentType();
-        long length = blobClient.getProperties().getBlobSize();
-        String filename = extractFilename(blobName);
-        return FileDownloadDto.builder()
-                .stream(blobClient.openInputStream())
-                .contentLength(length)
-                .contentType((contentType == null || contentType.isBlank()) ? "application/octet-stream" : contentType)
-                .filename(filename)
-                .build();
     }
 
     /**
-     * @return BlobServiceClient
-     * @description 构建服务客户端
+     * @description: 按字节区间下载文件，只请求需要的区间
+     * @param blobName: 文件的blobName
+     * @param offset: 起始字节
+     * @param count: 读取字节数
+     * @return FileDownloadDto contentLength 为区间长度
      */
-    private BlobServiceClient buildServiceClient() {
-        if (connectionString == null || connectionString.isBlank()) {
-            throw new IllegalStateException("Azure connection string is missing");
+    public FileDownloadDto download(String blobName, long offset, long count) {
+        BlobClient blobClient = container().getBlobClient(blobName);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            BlobInputStream inputStream = blobClient.openInputStream(new BlobInputStreamOptions()
+                    .setRange(new BlobRange(offset, count)));
+            BlobProperties properties = inputStream.getProperties();
+            propertiesCache.put(blobName, properties);
+            outcome = "success";
+            FileDownloadDto dto = toDownloadDto(blobName, properties, inputStream);
+            dto.setContentLength(count);
+            return dto;
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404) {
+                outcome = "not_found";
+                throw new IllegalArgumentException("Blob not found: " + blobName);
+            }
+            throw e;
+        } finally {
+            sample.stop(meterRegistry.timer("storage.azure.operation", "operation", "range", "outcome", outcome));
         }
-        return new BlobServiceClientBuilder()
-                .connectionString(connectionString)
-                .buildClient();
     }
 
     /**
-     * @param serviceClient: BlobServiceClient
-     * @return BlobContainerClient 容器客户端
-     * @description 获取客户端，不存在则创建
+     * @description: 获取文件元信息（不打开流），属性命中缓存时不访问存储
+     * @param blobName: 文件的blobName
+     * @return FileDownloadDto 不含文件流
      */
-    private BlobContainerClient getOrCreateContainer(BlobServiceClient serviceClient) {
-        BlobContainerClient containerClient = new BlobContainerClientBuilder()
-                .connectionString(connectionString)
-                .containerName(containerName)
-                .buildClient();
-        if (!containerClient.exists()) {
-            containerClient.create();
-        }
-        return containerClient;
+    public FileDownloadDto stat(String blobName) {
+        return toDownloadDto(blobName, getProperties(blobName), null);
     }
 
     /**
-     * @param file: 上传的文件
-     * @return void
-     * @description 验证文件合法性
+     * @description: 删除文件（不存在时忽略）
+     * @param blobName: 文件的blobName
      */
-    private void validateFile(MultipartFile file) {
-        if (file == null || file.isEmpty()) {
-            throw new IllegalArgumentException("File is empty");
-        }
-        String extension = getExtension(file.getOriginalFilename());
-        if (!ALLOWED_EXTENSIONS.contains(extension.toLowerCase(Locale.ROOT))) {
-            throw new IllegalArgumentException("Unsupported file type: " + extension);
+    public void delete(String blobName) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            container().getBlobClient(blobName).deleteIfExists();
+            propertiesCache.remove(blobName);
+            outcome = "success";
+        } finally {
+            sample.stop(meterRegistry.timer("storage.azure.operation", "operation", "delete", "outcome", outcome));
         }
     }
 
     /**
-     * @param filename: 文件名
-     * @return String  文件后缀
-     * @description 获取文件后缀
+     * @param blobName: 文件的blobName
+     * @return BlobProperties 属性（大小、类型、ETag 等），优先读缓存
+     * @description 获取 blob 属性
      */
-    private String getExtension(String filename) {
-        if (filename == null || !filename.contains(".")) {
-            throw new IllegalArgumentException("Missing file extension");
+    public BlobProperties getProperties(String blobName) {
+        BlobProperties cached = propertiesCache.get(blobName);
+        if (cached != null) {
+            return cached;
         }
-        String ext = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
-        if (ext.isBlank()) {
-            throw new IllegalArgumentException("Missing file extension");
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            BlobProperties properties = container().getBlobClient(blobName).getProperties();
+            propertiesCache.put(blobName, properties);
+            outcome = "success";
+            return properties;
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404) {
+                outcome = "not_found";
+                throw new IllegalArgumentException("Blob not found: " + blobName);
+            }
+            throw e;
+        } finally {
+            sample.stop(meterRegistry.timer("storage.azure.operation", "operation", "properties", "outcome", outcome));
         }
-        return ext;
+    }
+
+    private FileDownloadDto toDownloadDto(String blobName, BlobProperties properties, InputStream stream) {
+        String contentType = properties.getContentType();
+        return FileDownloadDto.builder()
+                .stream(stream)
+                .contentLength(properties.getBlobSize())
+                .contentType((contentType == null || contentType.isBlank()) ? "application/octet-stream" : contentType)
+                .filename(blobKeys.extractFilename(blobName))
+                .lastModified(properties.getLastModified() == null ? 0 : properties.getLastModified().toInstant().toEpochMilli())
+                .build();
     }
 
     /**
-     * @param category: 文件类型 common、avatar等
-     * @param userId: userId JWT解析得到
-     * @param extension: 后缀名
-     * @return String   构建的唯一文件名 由baseFolder/user-userId/category/timestamp-uuid.extension组成
-     * @description 根据用户ID和文件类型构建唯一文件名
+     * @return BlobContainerClient 容器客户端
+     * @description 首次使用时构建共享的服务/容器客户端，容器不存在则创建，之后直接复用
      */
-    private String buildBlobName(String category, Long userId, String extension) {
-        StringBuilder name = new StringBuilder();
-        if (baseFolder != null && !baseFolder.isBlank()) {
-            name.append(baseFolder.trim()).append("/");
+    private BlobContainerClient container() {
+        BlobContainerClient client = containerClient;
+        if (client != null) {
+            return client;
         }
-        if (userId != null) {
-            name.append("user-").append(userId).append("/");
+        synchronized (this) {
+            if (containerClient == null) {
+                if (connectionString == null || connectionString.isBlank()) {
+                    throw new IllegalStateException("Azure connection string is missing");
+                }
+                BlobServiceClient serviceClient = new BlobServiceClientBuilder()
+                        .connectionString(connectionString)
+                        .httpClient(buildHttpClient())
+                        .addPolicy(new MetricsPolicy(meterRegistry))
+                        .buildClient();
+                BlobContainerClient created = serviceClient.getBlobContainerClient(containerName);
+                created.createIfNotExists();
+                containerClient = created;
+                log.info("Azure Blob client initialized, container={}, maxConnections={}", containerName, maxConnections);
+            }
+            return containerClient;
         }
-        name.append(category).append("/");
-        name.append(System.currentTimeMillis())
-                .append("-")
-                .append(UUID.randomUUID())
-                .append(".")
-                .append(extension);
-        return name.toString();
     }
 
     /**
-     * @param contentType : 文件内容类型
-     * @param extension : 文件后缀
-     * @return String 解析后的内容类型(header中的contentType)
-     * @description: 根据文件扩展名解析内容类型
+     * @return HttpClient 共享的 Netty 连接池
+     * @description 所有 blob 请求复用同一个连接池，避免每次操作重新建连和 TLS 握手
      */
-    private String resolveContentType(String contentType, String extension) {
-        if (contentType != null && !contentType.isBlank()) {
-            return contentType;
-        }
-        return switch (extension.toLowerCase(Locale.ROOT)) {
-            case "pdf" -> "application/pdf";
-            case "doc" -> "application/msword";
-            case "docx" -> "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
-            case "txt" -> "text/plain";
-            case "png" -> "image/png";
-            case "jpg", "jpeg" -> "image/jpeg";
-            default -> "application/octet-stream";
-        };
+    private HttpClient buildHttpClient() {
+        ConnectionProvider provider = ConnectionProvider.builder("azure-blob")
+                .maxConnections(maxConnections)
+                .maxIdleTime(Duration.ofSeconds(idleTimeoutSeconds))
+                .pendingAcquireTimeout(Duration.ofMillis(connectTimeoutMs + responseTimeoutMs))
+                .build();
+        return new NettyAsyncHttpClientBuilder()
+                .connectionProvider(provider)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs))
+                .build();
     }
 
     /**
-     * @param blobName : 文件的blobName
-     * @return String 文件名
-     * @description: 从blobName中提取文件名
+     * 记录每一次实际发出的 HTTP 请求耗时（按方法和状态码），用于观察单次文件操作的存储往返次数
      */
-    private String extractFilename(String blobName) {
-        if (blobName == null || blobName.isBlank()) {
-            return "file";
+    private static final class MetricsPolicy implements HttpPipelinePolicy {
+
+        private final MeterRegistry meterRegistry;
+
+        private MetricsPolicy(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+            long start = System.nanoTime();
+            String method = context.getHttpRequest().getHttpMethod().name();
+            return next.process()
+                    .doOnSuccess(response -> record(method, String.valueOf(response.getStatusCode()), start))
+                    .doOnError(e -> record(method, "IO_ERROR", start));
         }
-        int idx = blobName.lastIndexOf('/');
-        if (idx >= 0 && idx < blobName.length() - 1) {
-            return blobName.substring(idx + 1);
+
+        @Override
+        public HttpResponse processSync(HttpPipelineCallContext context, HttpPipelineNextSyncPolicy next) {
+            long start = System.nanoTime();
+            String method = context.getHttpRequest().getHttpMethod().name();
+            try {
+                HttpResponse response = next.processSync();
+                record(method, String.valueOf(response.getStatusCode()), start);
+                return response;
+            } catch (RuntimeException e) {
+                record(method, "IO_ERROR", start);
+                throw e;
+            }
+        }
+
+        private void record(String method, String status, long start) {
+            meterRegistry.timer("storage.azure.http", "method", method, "status", status)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
-        return blobName;
     }
 }
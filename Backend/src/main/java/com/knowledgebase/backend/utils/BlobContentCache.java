@@ -0,0 +1,394 @@
+package com.knowledgebase.backend.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * 文件内容两级缓存：按 blobKey 缓存远端存储的文件内容
+ * - 堆内层：只放小文件，按总字节数 LRU 淘汰
+ * - 本地磁盘层：按总字节数 LRU 淘汰，重启后扫描目录恢复
+ * blobKey 带时间戳和 uuid，写入后内容不变，缓存不需要失效
+ */
+@Component
+@Slf4j
+public class BlobContentCache {
+
+    private static final String TMP_DIR = ".tmp";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${storage.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.cache.dir:./data/blob-cache}")
+    private String cacheDir;
+
+    @Value("${storage.cache.disk-max-bytes:2147483648}")
+    private long diskMaxBytes;
+
+    @Value("${storage.cache.memory-max-bytes:67108864}")
+    private long memoryMaxBytes;
+
+    @Value("${storage.cache.memory-max-file-bytes:1048576}")
+    private long memoryMaxFileBytes;
+
+    private Path dir;
+    private Path tmpDir;
+
+    /** 磁盘层索引：缓存文件名 -> 大小，按访问顺序排列 */
+    private final LinkedHashMap<String, Long> diskIndex = new LinkedHashMap<>(64, 0.75f, true);
+    private long diskBytes;
+
+    /** 堆内层：缓存文件名 -> 内容，按访问顺序排列 */
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+
+    public BlobContentCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        dir = Path.of(cacheDir).toAbsolutePath().normalize();
+        tmpDir = dir.resolve(TMP_DIR);
+        Files.createDirectories(tmpDir);
+        // 上次进程未完成的临时文件直接丢弃
+        try (Stream<Path> tmpFiles = Files.list(tmpDir)) {
+            for (Path p : tmpFiles.toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+        // 按修改时间从旧到新恢复索引，最旧的最先被淘汰
+        List<Path> files;
+        try (Stream<Path> cached = Files.list(dir)) {
+            files = cached.filter(Files::isRegularFile)
+                    .sorted(Comparator.comparingLong(p -> p.toFile().lastModified()))
+                    .toList();
+        }
+        synchronized (this) {
+            for (Path p : files) {
+                long size = Files.size(p);
+                diskIndex.put(p.getFileName().toString(), size);
+                diskBytes += size;
+            }
+            evictDisk();
+        }
+        meterRegistry.gauge("storage.cache.disk.bytes", this, c -> c.diskBytes);
+        meterRegistry.gauge("storage.cache.memory.bytes", this, c -> c.memoryBytes);
+        log.info("Blob content cache ready, dir={}, files={}, bytes={}", dir, diskIndex.size(), diskBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param blobKey 文件 key
+     * @return 堆内层命中的内容，未命中返回 null
+     */
+    public byte[] getFromMemory(String blobKey) {
+        byte[] bytes;
+        synchronized (this) {
+            bytes = memory.get(fileName(blobKey));
+        }
+        if (bytes != null) {
+            record("memory");
+        }
+        return bytes;
+    }
+
+    /**
+     * @param blobKey 文件 key
+     * @return 磁盘层命中的文件路径，未命中返回 null；小文件会同时提升到堆内层
+     */
+    public Path getFromDisk(String blobKey) {
+        String name = fileName(blobKey);
+        Long size;
+        synchronized (this) {
+            size = diskIndex.get(name);
+        }
+        if (size == null) {
+            record("miss");
+            return null;
+        }
+        Path path = dir.resolve(name);
+        if (size <= memoryMaxFileBytes) {
+            try {
+                putMemory(name, Files.readAllBytes(path));
+            } catch (IOException e) {
+                // 文件已被淘汰，按未命中处理
+                forgetDisk(name);
+                record("miss");
+                return null;
+            }
+        }
+        record("disk");
+        return path;
+    }
+
+    /**
+     * @param blobKey 文件 key
+     * @return 磁盘层中的文件路径，不计入命中统计、不调整淘汰顺序，用于只取元信息
+     */
+    public Path locate(String blobKey) {
+        String name = fileName(blobKey);
+        synchronized (this) {
+            return diskIndex.containsKey(name) ? dir.resolve(name) : null;
+        }
+    }
+
+    /**
+     * @param blobKey 文件 key
+     * @param source  远端文件流
+     * @return 包装后的流：调用方读完整个流并关闭后，内容写入缓存；中途关闭则丢弃
+     */
+    public InputStream tee(String blobKey, InputStream source) {
+        try {
+            Path tmp = tmpDir.resolve(UUID.randomUUID() + ".part");
+            return new TeeInputStream(source, tmp, fileName(blobKey));
+        } catch (IOException e) {
+            log.warn("Blob cache tee unavailable for {}, serving without cache", blobKey, e);
+            return source;
+        }
+    }
+
+    /**
+     * 主动写入缓存（如刚上传的文件），读完 source 后提交
+     */
+    public void put(String blobKey, InputStream source) throws IOException {
+        Path tmp = tmpDir.resolve(UUID.randomUUID() + ".part");
+        try {
+            long size = Files.copy(source, tmp);
+            commit(fileName(blobKey), tmp, size);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 移除缓存内容（如上传失败时已写入的副本）
+     */
+    public void remove(String blobKey) {
+        String name = fileName(blobKey);
+        synchronized (this) {
+            byte[] bytes = memory.remove(name);
+            if (bytes != null) {
+                memoryBytes -= bytes.length;
+            }
+        }
+        forgetDisk(name);
+        try {
+            Files.deleteIfExists(dir.resolve(name));
+        } catch (IOException e) {
+            log.warn("Failed to remove cached blob {}", blobKey, e);
+        }
+    }
+
+    private void commit(String name, Path tmp, long size) throws IOException {
+        if (size > diskMaxBytes) {
+            return;
+        }
+        Path target = dir.resolve(name);
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        synchronized (this) {
+            Long previous = diskIndex.put(name, size);
+            diskBytes += size - (previous == null ? 0 : previous);
+            evictDisk();
+        }
+        if (size <= memoryMaxFileBytes) {
+            putMemory(name, Files.readAllBytes(target));
+        }
+    }
+
+    private synchronized void putMemory(String name, byte[] bytes) {
+        byte[] previous = memory.put(name, bytes);
+        memoryBytes += bytes.length - (previous == null ? 0 : previous.length);
+        Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator();
+        while (memoryBytes > memoryMaxBytes && it.hasNext()) {
+            memoryBytes -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+
+    private synchronized void forgetDisk(String name) {
+        Long size = diskIndex.remove(name);
+        if (size != null) {
+            diskBytes -= size;
+        }
+    }
+
+    /**
+     * 淘汰最久未访问的文件直到总大小不超过上限，调用方持有锁
+     */
+    private void evictDisk() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = diskIndex.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            diskBytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+            it.remove();
+        }
+        for (String name : evicted) {
+            try {
+                // 正在读取该文件的流不受影响，文件在关闭后才真正释放
+                Files.deleteIfExists(dir.resolve(name));
+            } catch (IOException e) {
+                log.warn("Failed to evict cached blob {}", name, e);
+            }
+        }
+    }
+
+    private void record(String tier) {
+        meterRegistry.counter("storage.cache.lookups", "tier", tier).increment();
+    }
+
+    private static String fileName(String blobKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(blobKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 边读边写入临时文件，完整读到 EOF 后关闭时提交到缓存
+     */
+    private final class TeeInputStream extends FilterInputStream {
+
+        private final Path tmp;
+        private final String name;
+        private OutputStream out;
+        private long size;
+        private boolean complete;
+
+        private TeeInputStream(InputStream in, Path tmp, String name) throws IOException {
+            super(in);
+            this.tmp = tmp;
+            this.name = name;
+            this.out = Files.newOutputStream(tmp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                complete = true;
+            } else if (out != null) {
+                try {
+                    out.write(b);
+                    size++;
+                } catch (IOException e) {
+                    abandon(e);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                complete = true;
+            } else if (n > 0 && out != null) {
+                try {
+                    out.write(b, off, n);
+                    size += n;
+                } catch (IOException e) {
+                    abandon(e);
+                }
+            }
+            return n;
+        }
+
+        /**
+         * 跳过的字节同样需要写入缓存，改为读取
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(8192, Math.max(n, 1))];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (r < 0) {
+                    break;
+                }
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                        if (complete) {
+                            commit(name, tmp, size);
+                        }
+                    } catch (IOException e) {
+                        log.warn("Failed to commit cached blob {}", name, e);
+                    } finally {
+                        out = null;
+                        Files.deleteIfExists(tmp);
+                    }
+                }
+            }
+        }
+
+        private void abandon(IOException e) {
+            log.warn("Blob cache write failed for {}, continuing without cache", name, e);
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // 已在放弃缓存，忽略
+            }
+            out = null;
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // 临时文件在下次启动时清理
+            }
+        }
+    }
+}
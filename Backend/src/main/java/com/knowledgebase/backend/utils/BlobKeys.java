@@ -0,0 +1,144 @@
+package com.knowledgebase.backend.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 文件存储的 blob key 规则，Azure 与本地存储共用
+ * 支持文件类型："pdf", "doc", "docx", "txt", "png", "jpg", "jpeg"
+ * 每个用户的文件分开存储
+ * 形如 baseFolder/user-userId/category/timestamp-uuid.extension
+ */
+@Component
+public class BlobKeys {
+
+    private static final Set<String> ALLOWED_EXTENSIONS = Set.of("pdf", "doc", "docx", "txt", "png", "jpg", "jpeg");
+
+    @Value("${azure.blob.base-folder:knowledge}")
+    private String baseFolder;
+
+    /**
+     * @param file: 上传的文件
+     * @return void
+     * @description 验证文件合法性
+     */
+    public void validateFile(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("File is empty");
+        }
+        validateFilename(file.getOriginalFilename());
+    }
+
+    /**
+     * @param filename: 原始文件名
+     * @return void
+     * @description 验证文件类型（流式上传时没有 MultipartFile，只校验文件名）
+     */
+    public void validateFilename(String filename) {
+        String extension = getExtension(filename);
+        if (!ALLOWED_EXTENSIONS.contains(extension.toLowerCase(Locale.ROOT))) {
+            throw new IllegalArgumentException("Unsupported file type: " + extension);
+        }
+    }
+
+    /**
+     * @param filename: 文件名
+     * @return String  文件后缀
+     * @description 获取文件后缀
+     */
+    public String getExtension(String filename) {
+        if (filename == null || !filename.contains(".")) {
+            throw new IllegalArgumentException("Missing file extension");
+        }
+        String ext = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        if (ext.isBlank()) {
+            throw new IllegalArgumentException("Missing file extension");
+        }
+        return ext;
+    }
+
+    /**
+     * @param category: 文件类型 common、avatar等
+     * @param userId: userId JWT解析得到
+     * @param extension: 后缀名
+     * @return String   构建的唯一文件名 由baseFolder/user-userId/category/timestamp-uuid.extension组成
+     * @description 根据用户ID和文件类型构建唯一文件名
+     */
+    public String buildBlobName(String category, Long userId, String extension) {
+        StringBuilder name = new StringBuilder();
+        if (baseFolder != null && !baseFolder.isBlank()) {
+            name.append(baseFolder.trim()).append("/");
+        }
+        if (userId != null) {
+            name.append("user-").append(userId).append("/");
+        }
+        name.append(category).append("/");
+        name.append(System.currentTimeMillis())
+                .append("-")
+                .append(UUID.randomUUID())
+                .append(".")
+                .append(extension);
+        return name.toString();
+    }
+
+    /**
+     * @param contentType : 文件内容类型
+     * @param extension : 文件后缀
+     * @return String 解析后的内容类型(header中的contentType)
+     * @description: 根据文件扩展名解析内容类型
+     */
+    public String resolveContentType(String contentType, String extension) {
+        if (contentType != null && !contentType.isBlank()) {
+            return contentType;
+        }
+        return switch (extension.toLowerCase(Locale.ROOT)) {
+            case "pdf" -> "application/pdf";
+            case "doc" -> "application/msword";
+            case "docx" -> "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+            case "txt" -> "text/plain";
+            case "png" -> "image/png";
+            case "jpg", "jpeg" -> "image/jpeg";
+            default -> "application/octet-stream";
+        };
+    }
+
+    /**
+     * @param blobName : 文件的blobName
+     * @return String 文件名
+     * @description: 从blobName中提取文件名
+     */
+    public String extractFilename(String blobName) {
+        if (blobName == null || blobName.isBlank()) {
+            return "file";
+        }
+        int idx = blobName.lastIndexOf('/');
+        if (idx >= 0 && idx < blobName.length() - 1) {
+            return blobName.substring(idx + 1);
+        }
+        return blobName;
+    }
+
+    /**
+     * @param blobName : 文件的blobName
+     * @return String 强 ETag（带引号）
+     * @description blobKey 写入后内容不变，直接由 key 计算 ETag，校验时无需访问存储
+     */
+    public String etag(String blobName) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(blobName.getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
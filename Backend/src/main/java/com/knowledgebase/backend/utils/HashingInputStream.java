@@ -0,0 +1,100 @@
+package com.knowledgebase.backend.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 边读边计算 SHA-256 和字节数，超过上限时抛出异常
+ * 用于流式上传：一次读取同时完成写入存储、内容 hash 和大小校验
+ */
+public class HashingInputStream extends FilterInputStream {
+
+    private final MessageDigest digest;
+    private final long maxBytes;
+    private long count;
+    private String hex;
+
+    /**
+     * @param in       原始流
+     * @param maxBytes 允许读取的最大字节数，超过时抛出 IllegalArgumentException
+     */
+    public HashingInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            digest.update((byte) b);
+            advance(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            digest.update(b, off, n);
+            advance(n);
+        }
+        return n;
+    }
+
+    /**
+     * 跳过的字节也要参与 hash，改为读取
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(8192, Math.max(n, 1))];
+        long skipped = 0;
+        while (skipped < n) {
+            int r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (r < 0) {
+                break;
+            }
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return 已读取的字节数
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return 已读取内容的 SHA-256（十六进制），应在读到 EOF 后调用
+     */
+    public String hex() {
+        if (hex == null) {
+            hex = HexFormat.of().formatHex(digest.digest());
+        }
+        return hex;
+    }
+
+    private void advance(int n) {
+        count += n;
+        if (count > maxBytes) {
+            throw new IllegalArgumentException("File exceeds maximum size of " + maxBytes + " bytes");
+        }
+    }
+}
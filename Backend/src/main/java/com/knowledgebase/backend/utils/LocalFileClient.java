@@ -0,0 +1,213 @@
+package com.knowledgebase.backend.utils;
+
+import com.knowledgebase.backend.dto.FileUploadResponseDto;
+import com.knowledgebase.backend.service.FileDownloadDto;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * 本地磁盘文件存储客户端
+ * @description 与 AzureBlobClient 使用相同的 blob key 规则，文件存放在 root/blobKey
+ * 上传先写入同一文件系统下的临时文件，再原子重命名到目标位置，读者不会看到写了一半的文件
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LocalFileClient {
+
+    private static final String TMP_DIR = ".tmp";
+
+    private final BlobKeys blobKeys;
+
+    @Value("${storage.local.root:./data/blobs}")
+    private String rootDir;
+
+    private Path root;
+
+    @PostConstruct
+    void init() {
+        root = Path.of(rootDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * @param file: 上传的文件
+     * @param folder: 文件的分类文件夹，如common、avatar等
+     * @param userId: userId 从JWT解析得到
+     * @return FileUploadResponseDto blobKey
+     * @description 上传文件到本地磁盘，返回文件 key
+     */
+    public FileUploadResponseDto upload(MultipartFile file, String folder, Long userId) {
+        blobKeys.validateFile(file);
+        String category = (folder == null || folder.isBlank()) ? "common" : folder.trim();
+        String extension = blobKeys.getExtension(file.getOriginalFilename());
+        String blobName = blobKeys.buildBlobName(category, userId, extension);
+        Path target = resolve(blobName);
+        Path tmp = null;
+        try {
+            Path tmpDir = root.resolve(TMP_DIR);
+            Files.createDirectories(tmpDir);
+            Files.createDirectories(target.getParent());
+            tmp = tmpDir.resolve(UUID.randomUUID() + ".part");
+            // 已落盘的 multipart 文件在同一文件系统时 transferTo 直接重命名，不再复制
+            file.transferTo(tmp);
+            moveAtomically(tmp, target);
+            return FileUploadResponseDto.builder()
+                    .blobKey(blobName)
+                    .build();
+        } catch (IOException e) {
+            log.error("Local file upload failed, blobName={}", blobName, e);
+            throw new RuntimeException("Upload to local storage failed", e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * @param inputStream: 文件内容流，由调用方关闭
+     * @param blobName: 由 BlobKeys 生成的 blobName
+     * @return FileUploadResponseDto
+     * @description 流式上传：请求体直接写入临时文件后原子重命名
+     */
+    public FileUploadResponseDto upload(InputStream inputStream, String blobName) {
+        Path target = resolve(blobName);
+        Path tmp = null;
+        try {
+            Path tmpDir = root.resolve(TMP_DIR);
+            Files.createDirectories(tmpDir);
+            Files.createDirectories(target.getParent());
+            tmp = tmpDir.resolve(UUID.randomUUID() + ".part");
+            Files.copy(inputStream, tmp);
+            moveAtomically(tmp, target);
+            return FileUploadResponseDto.builder()
+                    .blobKey(blobName)
+                    .build();
+        } catch (IOException e) {
+            log.error("Local file upload failed, blobName={}", blobName, e);
+            throw new RuntimeException("Upload to local storage failed", e);
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * @description: 下载文件
+     * @param blobName: 文件的blobName
+     * @return FileDownloadDto 文件下载DTO，localPath 指向磁盘文件，可用于零拷贝发送
+     */
+    public FileDownloadDto download(String blobName) {
+        FileDownloadDto dto = stat(blobName);
+        try {
+            dto.setStream(Files.newInputStream(dto.getLocalPath()));
+            return dto;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open local file: " + blobName, e);
+        }
+    }
+
+    /**
+     * @description: 按字节区间读取文件，直接定位到起始位置
+     * @param blobName: 文件的blobName
+     * @param offset: 起始字节
+     * @param count: 读取字节数
+     * @return FileDownloadDto contentLength 为区间长度
+     */
+    public FileDownloadDto download(String blobName, long offset, long count) {
+        FileDownloadDto dto = stat(blobName);
+        try {
+            FileChannel channel = FileChannel.open(dto.getLocalPath(), StandardOpenOption.READ).position(offset);
+            dto.setStream(BoundedInputStream.builder()
+                    .setInputStream(Channels.newInputStream(channel))
+                    .setMaxCount(count)
+                    .get());
+            dto.setContentLength(count);
+            return dto;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open local file: " + blobName, e);
+        }
+    }
+
+    /**
+     * @description: 获取文件元信息（不打开流）
+     * @param blobName: 文件的blobName
+     * @return FileDownloadDto 不含文件流
+     */
+    public FileDownloadDto stat(String blobName) {
+        Path path = resolve(blobName);
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalArgumentException("Blob not found: " + blobName);
+        }
+        try {
+            return FileDownloadDto.builder()
+                    .contentLength(Files.size(path))
+                    .contentType(blobKeys.resolveContentType(null, blobKeys.getExtension(blobName)))
+                    .filename(blobKeys.extractFilename(blobName))
+                    .localPath(path)
+                    .lastModified(Files.getLastModifiedTime(path).toMillis())
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to stat local file: " + blobName, e);
+        }
+    }
+
+    /**
+     * @description: 删除文件（不存在时忽略）
+     * @param blobName: 文件的blobName
+     */
+    public void delete(String blobName) {
+        try {
+            Files.deleteIfExists(resolve(blobName));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete local file: " + blobName, e);
+        }
+    }
+
+    /**
+     * @param blobName: 文件的blobName
+     * @return Path 文件路径，拒绝越出存储根目录的 key
+     */
+    public Path resolve(String blobName) {
+        if (blobName == null || blobName.isBlank()) {
+            throw new IllegalArgumentException("Blob name is empty");
+        }
+        Path path = root.resolve(blobName).normalize();
+        if (!path.startsWith(root) || path.startsWith(root.resolve(TMP_DIR))) {
+            throw new IllegalArgumentException("Invalid blob name: " + blobName);
+        }
+        return path;
+    }
+
+    private void deleteQuietly(Path tmp) {
+        if (tmp != null) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                log.warn("Failed to delete temp upload file {}", tmp, e);
+            }
+        }
+    }
+
+    private void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.knowledgebase.backend.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 简单的按条目数限制的 LRU 缓存（线程安全）
+ * 基于 accessOrder 的 LinkedHashMap，超出容量时淘汰最久未访问的条目
+ */
+public class LruCache<K, V> {
+
+    private final int maxEntries;
+    private final LinkedHashMap<K, V> map;
+    private long evictions;
+
+    public LruCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    /**
+     * 不存在时用 loader 创建并放入，整个过程持有锁，loader 应当很快完成
+     */
+    public synchronized V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = map.get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            map.put(key, value);
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    public synchronized V remove(K key) {
+        return map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * @return 累计因容量不足被淘汰的条目数
+     */
+    public synchronized long evictions() {
+        return evictions;
+    }
+}
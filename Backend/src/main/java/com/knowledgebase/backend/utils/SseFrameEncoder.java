@@ -0,0 +1,271 @@
+package com.knowledgebase.backend.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * SSE 帧编码器：token 直接编码为 UTF-8 帧字节，JSON 转义和 UTF-8 编码在一次遍历中完成，不产生中间字符串
+ * - 每个流一个实例（非线程安全），待发送缓冲区和输出缓冲区在流的生命周期内复用
+ * - 合并窗口内的 token 先 append 到待发送缓冲区，flushTokens 时编码为一帧；多个帧可以累积后由 take 一次取出
+ * - take 交出的是输出缓冲区的一段（Frames），不复制；写出后缓冲区继续复用，
+ *   尚未写出（如响应初始化前排队的早期发送）时下一帧改用新的缓冲区，不覆盖排队中的内容
+ * - TEXT 格式与 Spring SseEmitter 一致（data: 行，换行拆成多个 data: 行）；EVENTS 格式在 TEXT 基础上为 token 帧加 event:token；
+ *   JSON 格式为 data: {"content":"..."}
+ */
+public final class SseFrameEncoder {
+
+    public enum Format {
+        /** 回答原文作为 data */
+        TEXT,
+        /** 与 TEXT 相同，token 帧带 event:token，与其他命名事件同属一套类型化协议 */
+        EVENTS,
+        /** data: {"content":"..."}，以 data: [DONE] 结束 */
+        JSON
+    }
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EVENT = "event:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TOKEN_EVENT = "event:token\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_PREFIX = "data: {\"content\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_SUFFIX = "\"}\n\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DONE = "data: [DONE]\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Format format;
+    private final StringBuilder pending = new StringBuilder(256);
+    private int pendingTokens;
+    private byte[] out = new byte[1024];
+    private int len;
+
+    /** 最近一次 take 交出、可能尚未写出的帧 */
+    private Frames taken;
+
+    public SseFrameEncoder(Format format) {
+        this.format = format;
+    }
+
+    public Format format() {
+        return format;
+    }
+
+    /**
+     * 追加一个 token 到待发送缓冲区
+     */
+    public void append(CharSequence token) {
+        pending.append(token);
+        pendingTokens++;
+    }
+
+    /**
+     * @return 待发送缓冲区中的 token 数
+     */
+    public int pendingTokens() {
+        return pendingTokens;
+    }
+
+    /**
+     * 把待发送的 token 编码为一帧；末尾落单的高代理项留到下一帧，保证不拆开一个字符
+     */
+    public void flushTokens() {
+        int end = pending.length();
+        if (end > 0 && Character.isHighSurrogate(pending.charAt(end - 1))) {
+            end--;
+        }
+        if (end == 0) {
+            return;
+        }
+        if (format == Format.JSON) {
+            write(JSON_PREFIX);
+            writeJson(pending, end);
+            write(JSON_SUFFIX);
+        } else {
+            if (format == Format.EVENTS) {
+                write(TOKEN_EVENT);
+            }
+            writeData(pending, end);
+            writeByte('\n');
+        }
+        pending.delete(0, end);
+        pendingTokens = 0;
+    }
+
+    /**
+     * 写入一个命名事件帧（不经过合并缓冲，调用前应先 flushTokens 保持顺序）
+     */
+    public void event(String name, String data) {
+        write(EVENT);
+        writeUtf8(name, name.length());
+        writeByte('\n');
+        writeData(data, data.length());
+        writeByte('\n');
+    }
+
+    /**
+     * 写入注释帧（客户端忽略），用于在没有事件时探测连接是否已断开
+     */
+    public void heartbeat() {
+        write(HEARTBEAT);
+    }
+
+    /**
+     * 写入 JSON 格式的结束标记
+     */
+    public void done() {
+        write(DONE);
+    }
+
+    /**
+     * @return 累积的帧，没有内容时返回 null；取出后输出缓冲区清空，帧写出后复用
+     */
+    public Frames take() {
+        if (len == 0) {
+            return null;
+        }
+        taken = new Frames(out, len);
+        len = 0;
+        return taken;
+    }
+
+    /**
+     * data:行，换行符拆成新的 data: 行（与 SseEmitter 相同）
+     */
+    private void writeData(CharSequence s, int end) {
+        write(DATA);
+        // 每个字符最多 3 字节，换行最多 1 + "data:" 共 6 字节
+        ensure(end * 6 + 1);
+        for (int i = 0; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '\n') {
+                out[len++] = '\n';
+                System.arraycopy(DATA, 0, out, len, DATA.length);
+                len += DATA.length;
+            } else {
+                i = utf8(s, i, end, c);
+            }
+        }
+        out[len++] = '\n';
+    }
+
+    private void writeJson(CharSequence s, int end) {
+        ensure(end * 6);
+        for (int i = 0; i < end; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> escape('"');
+                case '\\' -> escape('\\');
+                case '\n' -> escape('n');
+                case '\r' -> escape('r');
+                case '\t' -> escape('t');
+                case '\b' -> escape('b');
+                case '\f' -> escape('f');
+                default -> {
+                    if (c < 0x20) {
+                        out[len++] = '\\';
+                        out[len++] = 'u';
+                        out[len++] = '0';
+                        out[len++] = '0';
+                        out[len++] = HEX[c >> 4];
+                        out[len++] = HEX[c & 0xF];
+                    } else {
+                        i = utf8(s, i, end, c);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeUtf8(CharSequence s, int end) {
+        ensure(end * 3);
+        for (int i = 0; i < end; i++) {
+            i = utf8(s, i, end, s.charAt(i));
+        }
+    }
+
+    /**
+     * 编码一个字符（代理对按一个码点编码），调用方已保证容量
+     *
+     * @return 最后消费的下标
+     */
+    private int utf8(CharSequence s, int i, int end, char c) {
+        if (c < 0x80) {
+            out[len++] = (byte) c;
+        } else if (c < 0x800) {
+            out[len++] = (byte) (0xC0 | (c >> 6));
+            out[len++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(++i));
+            out[len++] = (byte) (0xF0 | (cp >> 18));
+            out[len++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            out[len++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            out[len++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            out[len++] = '?';
+        } else {
+            out[len++] = (byte) (0xE0 | (c >> 12));
+            out[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            out[len++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return i;
+    }
+
+    private void escape(char c) {
+        out[len++] = '\\';
+        out[len++] = (byte) c;
+    }
+
+    private void write(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, out, len, bytes.length);
+        len += bytes.length;
+    }
+
+    private void writeByte(char c) {
+        ensure(1);
+        out[len++] = (byte) c;
+    }
+
+    private void ensure(int extra) {
+        if (taken != null) {
+            if (!taken.written) {
+                out = new byte[out.length];
+            }
+            taken = null;
+        }
+        if (len + extra > out.length) {
+            out = Arrays.copyOf(out, Math.max(out.length * 2, len + extra));
+        }
+    }
+
+    /**
+     * take 取出的帧：输出缓冲区中的一段字节，由 SseFramesHttpMessageConverter 直接写到响应输出流
+     */
+    public static final class Frames {
+        private final byte[] bytes;
+        private final int length;
+        private volatile boolean written;
+
+        private Frames(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        /**
+         * 写出帧字节；写出后编码器可以覆盖这段缓冲区
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, length);
+            written = true;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.knowledgebase.backend.utils;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * 把 SseFrameEncoder.Frames 写到响应输出流（SseStreamWriter 通过 ResponseBodyEmitter 发送）
+ * 直接写出编码器缓冲区中的一段，不像 byte[] 那样每帧先复制出一个数组；只用于写出，不支持读取
+ */
+public class SseFramesHttpMessageConverter extends AbstractHttpMessageConverter<SseFrameEncoder.Frames> {
+
+    public SseFramesHttpMessageConverter() {
+        super(MediaType.TEXT_EVENT_STREAM);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return SseFrameEncoder.Frames.class == clazz;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected SseFrameEncoder.Frames readInternal(Class<? extends SseFrameEncoder.Frames> clazz,
+                                                  HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("SSE frames are write-only", inputMessage);
+    }
+
+    @Override
+    protected Long getContentLength(SseFrameEncoder.Frames frames, MediaType contentType) {
+        return (long) frames.length();
+    }
+
+    @Override
+    protected void writeInternal(SseFrameEncoder.Frames frames, HttpOutputMessage outputMessage) throws IOException {
+        frames.writeTo(outputMessage.getBody());
+    }
+}
@@ -0,0 +1,167 @@
+package com.knowledgebase.backend.utils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 把对话事件流写成 SSE 响应
+ * - 帧由 SseFrameEncoder 直接编码为字节，通过 ResponseBodyEmitter 原样写出（不再经过 SseEmitter 的逐帧字符串拼接）；
+ *   SseFramesHttpMessageConverter 把编码器的输出缓冲区直接写到响应输出流，每帧不复制字节
+ * - 合并窗口：coalesceMs > 0 时按时间窗口（或攒满 coalesceTokens 个 token）把多个 token 合并成一帧，
+ *   一个窗口只做一次写入和 flush；命名事件（如 status）与 token 保持原有顺序
+ * - 写入在独立的写线程上执行，不占用大模型 HTTP 客户端的事件循环线程
+ * - 客户端断开（写失败、容器回调 onError / onTimeout / onCompletion）时取消订阅，取消信号沿事件流传到
+ *   大模型的 HTTP 请求，停止生成；每 heartbeat-ms 写一个注释帧，检索和等待首 token 期间也能及时发现断开
+ */
+@Component
+@Slf4j
+public class SseStreamWriter {
+
+    /**
+     * 默认合并窗口（毫秒），0 表示每个 token 一帧；请求可单独指定
+     */
+    @Value("${chat.stream.sse.coalesce-ms:0}")
+    private int defaultCoalesceMs;
+
+    /**
+     * 一个窗口最多合并的 token 数，攒满立即写出
+     */
+    @Value("${chat.stream.sse.coalesce-tokens:64}")
+    private int defaultCoalesceTokens;
+
+    @Value("${chat.stream.sse.timeout-ms:600000}")
+    private long timeoutMs;
+
+    /**
+     * 心跳间隔（毫秒），0 表示不发送；Servlet 容器只有在写入时才能发现客户端已断开
+     */
+    @Value("${chat.stream.sse.heartbeat-ms:5000}")
+    private long heartbeatMs;
+
+    @Value("${chat.stream.sse.writer-threads:8}")
+    private int writerThreads;
+
+    private Scheduler writerScheduler;
+
+    @PostConstruct
+    void init() {
+        writerScheduler = Schedulers.newBoundedElastic(writerThreads,
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "sse-writer");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        writerScheduler.dispose();
+    }
+
+    /**
+     * @param events         事件流：无名事件为回答 token，命名事件原样写出
+     * @param format         token 帧格式
+     * @param coalesceMs     合并窗口（毫秒），null 使用默认值，0 不合并
+     * @param coalesceTokens 一个窗口最多合并的 token 数，null 使用默认值
+     */
+    public ResponseBodyEmitter write(Flux<ServerSentEvent<String>> events, SseFrameEncoder.Format format,
+                                     Integer coalesceMs, Integer coalesceTokens) {
+        int windowMs = coalesceMs == null ? defaultCoalesceMs : Math.max(0, coalesceMs);
+        int maxTokens = coalesceTokens == null ? defaultCoalesceTokens : Math.max(1, coalesceTokens);
+
+        Emitter emitter = new Emitter(timeoutMs);
+        SseFrameEncoder encoder = new SseFrameEncoder(format);
+
+        Flux<List<ServerSentEvent<String>>> batches = windowMs > 0
+                ? events.bufferTimeout(maxTokens, Duration.ofMillis(windowMs))
+                : events.map(List::of);
+        if (heartbeatMs > 0) {
+            // 空批次表示心跳，与事件在同一个写线程上串行编码；事件流结束时心跳随之停止
+            Flux<List<ServerSentEvent<String>>> heartbeats = Flux.interval(Duration.ofMillis(heartbeatMs))
+                    .map(tick -> List.of());
+            batches = batches.publish(shared -> Flux.merge(shared, heartbeats.takeUntilOther(shared.then())));
+        }
+
+        Disposable subscription = batches
+                .publishOn(writerScheduler)
+                .subscribe(
+                        batch -> send(emitter, encode(encoder, batch)),
+                        error -> {
+                            log.warn("SSE stream failed: {}", error.toString());
+                            emitter.completeWithError(error);
+                        },
+                        () -> {
+                            if (format == SseFrameEncoder.Format.JSON) {
+                                encoder.done();
+                                send(emitter, encoder.take());
+                            }
+                            emitter.complete();
+                        });
+
+        // 客户端断开、超时或写失败时停止上游（正常结束后 dispose 无副作用）
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(error -> subscription.dispose());
+        emitter.onCompletion(subscription::dispose);
+        return emitter;
+    }
+
+    private static SseFrameEncoder.Frames encode(SseFrameEncoder encoder, List<ServerSentEvent<String>> batch) {
+        if (batch.isEmpty()) {
+            encoder.heartbeat();
+        }
+        for (ServerSentEvent<String> event : batch) {
+            String data = event.data() == null ? "" : event.data();
+            if (event.event() == null) {
+                encoder.append(data);
+            } else {
+                encoder.flushTokens();
+                encoder.event(event.event(), data);
+            }
+        }
+        encoder.flushTokens();
+        return encoder.take();
+    }
+
+    private static void send(ResponseBodyEmitter emitter, SseFrameEncoder.Frames frames) {
+        if (frames == null) {
+            return;
+        }
+        try {
+            emitter.send(frames, MediaType.TEXT_EVENT_STREAM);
+        } catch (IOException e) {
+            // 客户端已断开：抛出后订阅被取消，上游随之停止
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 原样写出字节的 SSE 响应
+     */
+    private static final class Emitter extends ResponseBodyEmitter {
+
+        Emitter(long timeout) {
+            super(timeout);
+        }
+
+        @Override
+        protected void extendResponse(ServerHttpResponse outputMessage) {
+            super.extendResponse(outputMessage);
+            outputMessage.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+            outputMessage.getHeaders().setCacheControl("no-cache");
+            // 反向代理（nginx）不要缓冲 SSE
+            outputMessage.getHeaders().set("X-Accel-Buffering", "no");
+        }
+    }
+}
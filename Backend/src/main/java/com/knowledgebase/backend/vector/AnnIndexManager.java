@@ -0,0 +1,236 @@
+package com.knowledgebase.backend.vector;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * 向量表 ANN 索引管理（PgChunkVectorStore 不建 ANN 索引）
+ * - 索引类型与构建参数来自 knowledge.vector.index.*，索引名包含参数，参数变化即视为需要重建
+ * - 启动后在后台线程用 CREATE INDEX CONCURRENTLY 建新索引，建好后 DROP INDEX CONCURRENTLY 旧索引，
+ *   整个过程不阻塞写入，旧索引在新索引可用前继续服务检索
+ * - 多节点同时启动时用 advisory lock 保证只有一个节点在建索引
+ * - 分区表的父表不支持并发建索引，改为逐个分区建，按 space 裁剪后只用到所在分区的索引
+ * - 检索时可按请求设置 hnsw.ef_search / ivfflat.probes（SET LOCAL，只对该次查询所在事务生效）
+ */
+@Component
+@DependsOn("vectorStore")
+@Slf4j
+public class AnnIndexManager {
+
+    /** advisory lock key，任意固定值，只需在本库内唯一 */
+    private static final long LOCK_KEY = 0x6b62_616e_6e00L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${knowledge.vector.table:vector_store}")
+    private String table;
+
+    @Value("${knowledge.vector.index.type:hnsw}")
+    private String type;
+
+    @Value("${knowledge.vector.index.m:16}")
+    private int m;
+
+    @Value("${knowledge.vector.index.ef-construction:64}")
+    private int efConstruction;
+
+    @Value("${knowledge.vector.index.lists:100}")
+    private int lists;
+
+    @Value("${knowledge.vector.index.max-search-effort:1000}")
+    private int maxSearchEffort;
+
+    public AnnIndexManager(@Qualifier("postgresDataSource") DataSource postgresDataSource) {
+        this.jdbcTemplate = new JdbcTemplate(postgresDataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(postgresDataSource));
+    }
+
+    @PostConstruct
+    void init() {
+        type = type.trim().toLowerCase(Locale.ROOT);
+        if (!List.of("hnsw", "ivfflat", "none").contains(type)) {
+            throw new IllegalArgumentException("Unsupported knowledge.vector.index.type: " + type);
+        }
+        Thread reconcile = new Thread(this::reconcile, "ann-index-manager");
+        reconcile.setDaemon(true);
+        reconcile.start();
+    }
+
+    /**
+     * @param searchEffort 检索力度：HNSW 为 ef_search，IVFFlat 为 probes；null 使用数据库默认值
+     * @param search       向量检索（需使用同一个 postgresDataSource）
+     * @return 检索结果
+     * @description 在事务中先 SET LOCAL 再执行检索，参数只对本次查询生效，不影响连接池中的其他查询
+     */
+    public <T> T withSearchEffort(Integer searchEffort, Supplier<T> search) {
+        if (searchEffort == null || "none".equals(type)) {
+            return search.get();
+        }
+        int effort = Math.max(1, Math.min(searchEffort, "ivfflat".equals(type) ? lists : maxSearchEffort));
+        String setting = "hnsw".equals(type) ? "hnsw.ef_search" : "ivfflat.probes";
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("SET LOCAL " + setting + " = " + effort);
+            return search.get();
+        });
+    }
+
+    /**
+     * 按配置建好目标索引并删除其他 ANN 索引；失败只记录日志，已有索引继续可用
+     */
+    void reconcile() {
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                if (!tryLock(connection)) {
+                    log.info("ANN index reconcile skipped, another node holds the lock");
+                    return null;
+                }
+                try {
+                    reconcile(connection);
+                } finally {
+                    unlock(connection);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("ANN index reconcile failed for table {}", table, e);
+        }
+    }
+
+    private void reconcile(Connection connection) throws SQLException {
+        List<String> partitions = partitions(connection);
+        if (partitions.isEmpty()) {
+            reconcile(connection, table);
+        } else {
+            for (String partition : partitions) {
+                reconcile(connection, partition);
+            }
+        }
+    }
+
+    private void reconcile(Connection connection, String relation) throws SQLException {
+        String target = "none".equals(type) ? null : indexName(relation);
+        List<String[]> existing = annIndexes(connection, relation);
+        boolean ready = false;
+        for (String[] index : existing) {
+            if (index[0].equals(target)) {
+                if (Boolean.parseBoolean(index[1])) {
+                    ready = true;
+                } else {
+                    // 上次并发建索引中断留下的无效索引，删除后重建
+                    log.warn("Dropping invalid ANN index {}", target);
+                    execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS " + target);
+                }
+            }
+        }
+        if (target != null && !ready) {
+            long start = System.currentTimeMillis();
+            log.info("Building ANN index {} on {} concurrently", target, relation);
+            execute(connection, "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + target + " ON " + relation
+                    + " USING " + type + " (embedding vector_cosine_ops) WITH (" + buildParameters() + ")");
+            log.info("ANN index {} built in {}ms", target, System.currentTimeMillis() - start);
+        }
+        for (String[] index : existing) {
+            if (!index[0].equals(target)) {
+                log.info("Dropping superseded ANN index {}", index[0]);
+                execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS " + index[0]);
+            }
+        }
+    }
+
+    /**
+     * @return 向量表的分区名，非分区表返回空列表
+     */
+    private List<String> partitions(Connection connection) throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("""
+                SELECT c.relname
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = to_regclass(?)
+                ORDER BY c.relname
+                """)) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    partitions.add(rs.getString(1));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * @return 表上的 HNSW / IVFFlat 索引：{索引名, 是否有效}
+     */
+    private List<String[]> annIndexes(Connection connection, String relation) throws SQLException {
+        List<String[]> indexes = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("""
+                SELECT c.relname, i.indisvalid
+                FROM pg_index i
+                JOIN pg_class c ON c.oid = i.indexrelid
+                JOIN pg_class t ON t.oid = i.indrelid
+                JOIN pg_am a ON a.oid = c.relam
+                WHERE t.relname = ? AND t.relnamespace = current_schema()::regnamespace
+                  AND a.amname IN ('hnsw', 'ivfflat')
+                """)) {
+            ps.setString(1, relation);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    indexes.add(new String[]{rs.getString(1), String.valueOf(rs.getBoolean(2))});
+                }
+            }
+        }
+        return indexes;
+    }
+
+    private String indexName(String relation) {
+        return "hnsw".equals(type)
+                ? relation + "_hnsw_m" + m + "_ef" + efConstruction
+                : relation + "_ivfflat_l" + lists;
+    }
+
+    private String buildParameters() {
+        return "hnsw".equals(type)
+                ? "m = " + m + ", ef_construction = " + efConstruction
+                : "lists = " + lists;
+    }
+
+    private boolean tryLock(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    private void unlock(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+        }
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.knowledgebase.backend.vector;
+
+import com.knowledgebase.backend.utils.LruCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 检索缓存指标
+ * - search.cache.lookups{cache,outcome}：命中 / 未命中次数
+ * - search.cache.evictions{cache}：容量不足淘汰的条目数
+ * - search.cache.load{cache}：未命中时加载（远端 embedding / 向量检索）的耗时
+ * - search.cache.saved{cache}：命中节省的耗时，按未命中时的平均加载耗时估算
+ */
+final class CacheMeters {
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter saved;
+    private final Timer load;
+
+    CacheMeters(MeterRegistry registry, String cache, LruCache<?, ?> lru) {
+        this.hits = registry.counter("search.cache.lookups", "cache", cache, "outcome", "hit");
+        this.misses = registry.counter("search.cache.lookups", "cache", cache, "outcome", "miss");
+        this.load = registry.timer("search.cache.load", "cache", cache);
+        this.saved = Counter.builder("search.cache.saved")
+                .baseUnit("seconds")
+                .tag("cache", cache)
+                .register(registry);
+        FunctionCounter.builder("search.cache.evictions", lru, LruCache::evictions)
+                .tag("cache", cache)
+                .register(registry);
+        Gauge.builder("search.cache.size", lru, LruCache::size)
+                .tag("cache", cache)
+                .register(registry);
+    }
+
+    void hit() {
+        hits.increment();
+        saved.increment(load.mean(TimeUnit.SECONDS));
+    }
+
+    <T> T miss(Supplier<T> loader) {
+        misses.increment();
+        return load.record(loader);
+    }
+}
@@ -0,0 +1,86 @@
+package com.knowledgebase.backend.vector;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 带分片缓存的 EmbeddingModel 装饰器
+ * VectorStore 写入分片时走 call(EmbeddingRequest)，只有缓存未命中的文本才会请求远端模型；
+ * 检索问题走 embed(String)，不进入分片缓存，避免把用户问题写进持久层，只进入内存中的问题缓存。
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingCache cache;
+    private final QueryEmbeddingCache queryCache;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, EmbeddingCache cache, QueryEmbeddingCache queryCache) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.queryCache = queryCache;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        if (!cache.isEnabled()) {
+            return delegate.call(request);
+        }
+        List<String> texts = request.getInstructions();
+        List<String> hashes = texts.stream().map(EmbeddingCache::hash).toList();
+        Map<String, float[]> hits = cache.getAll(new LinkedHashSet<>(hashes));
+
+        // 只对未命中的文本（去重后）调用远端模型
+        Map<String, String> missTexts = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (!hits.containsKey(hashes.get(i))) {
+                missTexts.putIfAbsent(hashes.get(i), texts.get(i));
+            }
+        }
+        if (!missTexts.isEmpty()) {
+            List<String> missHashes = new ArrayList<>(missTexts.keySet());
+            EmbeddingResponse response = delegate.call(
+                    new EmbeddingRequest(new ArrayList<>(missTexts.values()), request.getOptions()));
+            Map<String, float[]> computed = new LinkedHashMap<>();
+            List<Embedding> outputs = response.getResults();
+            for (int i = 0; i < outputs.size(); i++) {
+                computed.put(missHashes.get(i), outputs.get(i).getOutput());
+            }
+            cache.putAll(computed);
+            hits.putAll(computed);
+        }
+        log.debug("Embedding cache: {} texts, {} hits, {} computed",
+                texts.size(), texts.size() - missTexts.size(), missTexts.size());
+
+        List<Embedding> results = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            results.add(new Embedding(hits.get(hashes.get(i)), i));
+        }
+        return new EmbeddingResponse(results);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return queryCache.get(text, delegate::embed);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
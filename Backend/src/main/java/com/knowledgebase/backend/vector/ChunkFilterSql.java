@@ -0,0 +1,120 @@
+package com.knowledgebase.backend.vector;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 把 VectorStore 过滤表达式转换为向量表上的 SQL 条件
+ * spaceId / knowledgeId 映射到带 B-tree 索引的 space_id / knowledge_id 列（分区表按 space_id 裁剪分区），
+ * 其他 key 仍按 metadata 中的文本值比较
+ */
+final class ChunkFilterSql {
+
+    /** metadata key -> 类型化列 */
+    private static final Map<String, String> COLUMNS = Map.of(
+            "spaceId", "space_id",
+            "knowledgeId", "knowledge_id");
+
+    private static final Pattern SAFE_KEY = Pattern.compile("[A-Za-z0-9_]+");
+
+    private ChunkFilterSql() {
+    }
+
+    /**
+     * @param expression 过滤表达式
+     * @return SQL 条件与按占位符顺序排列的参数
+     */
+    static Where of(Filter.Expression expression) {
+        List<Object> args = new ArrayList<>();
+        String sql = render(expression, args);
+        return new Where(sql, args);
+    }
+
+    private static String render(Filter.Operand operand, List<Object> args) {
+        if (operand instanceof Filter.Group group) {
+            return render(group.content(), args);
+        }
+        if (!(operand instanceof Filter.Expression e)) {
+            throw new IllegalArgumentException("Unsupported filter operand: " + operand);
+        }
+        return switch (e.type()) {
+            case AND -> "(" + render(e.left(), args) + " AND " + render(e.right(), args) + ")";
+            case OR -> "(" + render(e.left(), args) + " OR " + render(e.right(), args) + ")";
+            case NOT -> "NOT (" + render(e.left(), args) + ")";
+            case EQ -> compare(e, "=", args);
+            case NE -> compare(e, "<>", args);
+            case GT -> compare(e, ">", args);
+            case GTE -> compare(e, ">=", args);
+            case LT -> compare(e, "<", args);
+            case LTE -> compare(e, "<=", args);
+            case IN -> in(e, "IN", args);
+            case NIN -> in(e, "NOT IN", args);
+        };
+    }
+
+    private static String compare(Filter.Expression e, String op, List<Object> args) {
+        String key = key(e);
+        args.add(bind(key, value(e)));
+        return column(key) + " " + op + " ?";
+    }
+
+    private static String in(Filter.Expression e, String op, List<Object> args) {
+        String key = key(e);
+        Object value = value(e);
+        Collection<?> values = value instanceof Collection<?> c ? c : List.of(value);
+        if (values.isEmpty()) {
+            return "IN".equals(op) ? "FALSE" : "TRUE";
+        }
+        for (Object v : values) {
+            args.add(bind(key, v));
+        }
+        return column(key) + " " + op + " (" + String.join(",", Collections.nCopies(values.size(), "?")) + ")";
+    }
+
+    private static String key(Filter.Expression e) {
+        if (!(e.left() instanceof Filter.Key k)) {
+            throw new IllegalArgumentException("Filter expression must compare a key: " + e);
+        }
+        if (!SAFE_KEY.matcher(k.key()).matches()) {
+            throw new IllegalArgumentException("Unsupported filter key: " + k.key());
+        }
+        return k.key();
+    }
+
+    private static Object value(Filter.Expression e) {
+        if (!(e.right() instanceof Filter.Value v)) {
+            throw new IllegalArgumentException("Filter expression must compare with a value: " + e);
+        }
+        return v.value();
+    }
+
+    private static String column(String key) {
+        String column = COLUMNS.get(key);
+        return column != null ? column : "(metadata::jsonb ->> '" + key + "')";
+    }
+
+    /**
+     * 类型化列按 bigint 绑定，metadata 中的值按文本绑定
+     */
+    private static Object bind(String key, Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Filter value for " + key + " is null");
+        }
+        if (COLUMNS.containsKey(key)) {
+            return value instanceof Number n ? n.longValue() : Long.valueOf(value.toString());
+        }
+        return value.toString();
+    }
+
+    /**
+     * SQL 条件与参数
+     */
+    record Where(String sql, List<Object> args) {
+    }
+}
@@ -0,0 +1,271 @@
+package com.knowledgebase.backend.vector;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 向量表（pgvector）上的分片级操作
+ * 补充 VectorStore 接口缺少的能力：按 knowledgeId 列出分片 id、按 id 或 knowledgeId 批量删除、在同一事务内提交增删
+ * 按知识查找和删除走 knowledge_id 列索引（见 PgChunkVectorStore）
+ * 增删分片后递增所属 space 的索引版本（见 IndexVersions）并同步维护全文索引（见 LexicalIndex）
+ */
+@Component
+@Slf4j
+public class ChunkRepository {
+
+    private static final int BATCH_SIZE = 500;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IndexVersions indexVersions;
+    private final LexicalIndex lexicalIndex;
+
+    /**
+     * 不注册为 Bean，避免影响 MySQL 数据源上的默认事务管理器；
+     * PgChunkVectorStore 使用同一个 postgresDataSource，会自动加入这里开启的事务
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${knowledge.vector.table:vector_store}")
+    private String table;
+
+    public ChunkRepository(@Qualifier("postgresDataSource") DataSource postgresDataSource,
+                           IndexVersions indexVersions, LexicalIndex lexicalIndex) {
+        this.jdbcTemplate = new JdbcTemplate(postgresDataSource);
+        this.indexVersions = indexVersions;
+        this.lexicalIndex = lexicalIndex;
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(postgresDataSource));
+    }
+
+    /**
+     * @param knowledgeId 知识id
+     * @return 该知识当前已入库的分片 id 集合
+     */
+    public Set<String> findChunkIds(Long knowledgeId) {
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id::text FROM " + table + " WHERE knowledge_id = ?", String.class, knowledgeId));
+    }
+
+    /**
+     * @param knowledgeId 知识id
+     * @return 该知识已入库分片的 id 与内容指纹，按分片序号排列
+     */
+    public List<ChunkRef> findChunkRefs(Long knowledgeId) {
+        return jdbcTemplate.query(
+                "SELECT id::text, metadata->>'chunkHash' FROM " + table + " WHERE knowledge_id = ?"
+                        + " ORDER BY (metadata->>'chunkIndex')::int",
+                (rs, i) -> new ChunkRef(rs.getString(1), rs.getString(2)), knowledgeId);
+    }
+
+    /**
+     * 复制分片（内容、向量原样复制），改写 knowledgeId / spaceId，不重新计算 embedding
+     *
+     * @param idMapping 源分片 id -> 新分片 id
+     * @return 写入的行数，新 id 已存在的分片跳过
+     */
+    public int copyChunks(Map<String, String> idMapping, Long knowledgeId, Long spaceId) {
+        List<Map.Entry<String, String>> all = new ArrayList<>(idMapping.entrySet());
+        int copied = 0;
+        for (int i = 0; i < all.size(); i += BATCH_SIZE) {
+            List<Map.Entry<String, String>> batch = all.subList(i, Math.min(i + BATCH_SIZE, all.size()));
+            String values = String.join(",", Collections.nCopies(batch.size(), "(?::uuid, ?::uuid)"));
+            List<Object> args = new ArrayList<>(batch.size() * 2 + 4);
+            args.add(knowledgeId);
+            args.add(spaceId);
+            args.add(spaceId);
+            args.add(knowledgeId);
+            for (Map.Entry<String, String> e : batch) {
+                args.add(e.getKey());
+                args.add(e.getValue());
+            }
+            copied += jdbcTemplate.update("INSERT INTO " + table + " (id, content, metadata, embedding, space_id, knowledge_id)"
+                    + " SELECT m.new_id, v.content,"
+                    + " (v.metadata::jsonb || jsonb_build_object('knowledgeId', ?::bigint, 'spaceId', ?::bigint))::json,"
+                    + " v.embedding, ?::bigint, ?::bigint"
+                    + " FROM " + table + " v JOIN (VALUES " + values + ") AS m(old_id, new_id) ON v.id = m.old_id"
+                    + " ON CONFLICT DO NOTHING", args.toArray());
+        }
+        if (copied > 0) {
+            indexVersions.bump(spaceId);
+            lexicalIndex.copy(idMapping, knowledgeId, spaceId);
+        }
+        return copied;
+    }
+
+    /**
+     * @param ids 分片 id
+     * @return id -> 分片（内容与 metadata，不含向量），不存在的 id 不出现在结果中
+     */
+    public Map<String, Document> findByIds(List<String> ids) {
+        Map<String, Document> found = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+            List<String> batch = ids.subList(i, Math.min(i + BATCH_SIZE, ids.size()));
+            String placeholders = String.join(",", Collections.nCopies(batch.size(), "?::uuid"));
+            jdbcTemplate.query("SELECT id::text, content, metadata::text FROM " + table
+                    + " WHERE id IN (" + placeholders + ")", rs -> {
+                String id = rs.getString(1);
+                found.put(id, Document.builder()
+                        .id(id)
+                        .text(rs.getString(2))
+                        .metadata(parseMetadata(rs.getString(3)))
+                        .build());
+            }, batch.toArray());
+        }
+        return found;
+    }
+
+    /**
+     * @param ids 分片 id
+     * @return 其中仍存在的分片 id
+     */
+    public Set<String> findExistingIds(Collection<String> ids) {
+        List<String> all = new ArrayList<>(ids);
+        Set<String> found = new HashSet<>();
+        for (int i = 0; i < all.size(); i += BATCH_SIZE) {
+            List<String> batch = all.subList(i, Math.min(i + BATCH_SIZE, all.size()));
+            String placeholders = String.join(",", Collections.nCopies(batch.size(), "?::uuid"));
+            found.addAll(jdbcTemplate.queryForList("SELECT id::text FROM " + table
+                    + " WHERE id IN (" + placeholders + ")", String.class, batch.toArray()));
+        }
+        return found;
+    }
+
+    /**
+     * 合并更新分片 metadata（只覆盖给出的键），增量重建时刷新保留分片的序号和来源文件
+     *
+     * @param patches 分片 id -> 需要覆盖的 metadata 键值
+     * @return 更新的行数
+     */
+    public int updateMetadata(Map<String, Map<String, Object>> patches) {
+        if (patches.isEmpty()) {
+            return 0;
+        }
+        List<Map.Entry<String, Map<String, Object>>> all = new ArrayList<>(patches.entrySet());
+        Set<String> spaces = new HashSet<>();
+        int updated = 0;
+        for (int i = 0; i < all.size(); i += BATCH_SIZE) {
+            List<Map.Entry<String, Map<String, Object>>> batch = all.subList(i, Math.min(i + BATCH_SIZE, all.size()));
+            String values = String.join(",", Collections.nCopies(batch.size(), "(?::uuid, ?::jsonb)"));
+            List<Object> args = new ArrayList<>(batch.size() * 2);
+            for (Map.Entry<String, Map<String, Object>> e : batch) {
+                args.add(e.getKey());
+                args.add(toJson(e.getValue()));
+            }
+            List<String> spaceIds = jdbcTemplate.queryForList("UPDATE " + table + " v"
+                    + " SET metadata = (v.metadata::jsonb || m.patch)::json"
+                    + " FROM (VALUES " + values + ") AS m(id, patch) WHERE v.id = m.id"
+                    + " RETURNING v.space_id::text", String.class, args.toArray());
+            updated += spaceIds.size();
+            spaces.addAll(spaceIds);
+        }
+        // 检索结果缓存中带有旧的 metadata
+        bump(spaces);
+        return updated;
+    }
+
+    /**
+     * 按分片 id 批量删除
+     *
+     * @return 删除的行数
+     */
+    public int deleteByIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        List<String> all = new ArrayList<>(ids);
+        Set<String> spaces = new HashSet<>();
+        int deleted = 0;
+        for (int i = 0; i < all.size(); i += BATCH_SIZE) {
+            List<String> batch = all.subList(i, Math.min(i + BATCH_SIZE, all.size()));
+            String placeholders = String.join(",", Collections.nCopies(batch.size(), "?::uuid"));
+            // RETURNING 取回被删分片所属的 space，用于递增索引版本
+            List<String> spaceIds = jdbcTemplate.queryForList("DELETE FROM " + table + " WHERE id IN ("
+                    + placeholders + ") RETURNING space_id::text", String.class, batch.toArray());
+            deleted += spaceIds.size();
+            spaces.addAll(spaceIds);
+        }
+        bump(spaces);
+        lexicalIndex.remove(all);
+        return deleted;
+    }
+
+    /**
+     * 删除某个知识的全部分片，一条语句走 knowledge_id 索引
+     *
+     * @return 删除的行数
+     */
+    public int deleteByKnowledgeId(Long knowledgeId) {
+        List<String> ids = new ArrayList<>();
+        Set<String> spaces = new HashSet<>();
+        jdbcTemplate.query("DELETE FROM " + table + " WHERE knowledge_id = ? RETURNING id::text, space_id::text",
+                rs -> {
+                    ids.add(rs.getString(1));
+                    spaces.add(rs.getString(2));
+                }, knowledgeId);
+        bump(spaces);
+        lexicalIndex.remove(ids);
+        return ids.size();
+    }
+
+    private void bump(Set<String> spaceIds) {
+        for (String spaceId : spaceIds) {
+            if (spaceId == null) {
+                indexVersions.bumpAll();
+            } else {
+                indexVersions.bump(Long.valueOf(spaceId));
+            }
+        }
+    }
+
+    private static String toJson(Map<String, Object> metadata) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(metadata);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize chunk metadata", e);
+        }
+    }
+
+    static Map<String, Object> parseMetadata(String json) {
+        if (json == null || json.isBlank()) {
+            return new HashMap<>();
+        }
+        try {
+            return OBJECT_MAPPER.readValue(json, new TypeReference<Map<String, Object>>() {
+            });
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid chunk metadata: " + json, e);
+        }
+    }
+
+    /**
+     * 在向量库事务中执行，检索要么看到旧分片集合，要么看到新分片集合
+     */
+    public void inTransaction(Runnable action) {
+        transactionTemplate.executeWithoutResult(status -> action.run());
+    }
+
+    /**
+     * 分片 id 与内容指纹
+     */
+    public record ChunkRef(String id, String chunkHash) {
+    }
+}
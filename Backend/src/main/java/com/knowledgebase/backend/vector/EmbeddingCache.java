@@ -0,0 +1,151 @@
+package com.knowledgebase.backend.vector;
+
+import com.knowledgebase.backend.utils.LruCache;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分片级 embedding 缓存
+ * key = sha256(规范化后的分片文本) + 模型名
+ * - 内存 LRU 层：热点分片直接命中
+ * - PostgreSQL 持久层：与向量表同库的 embedding_cache 表（由 postgres_create.sql 创建），重启后依然可复用；
+ *   持久层不可用时只记录告警，退化为仅内存缓存，不影响启动和解析
+ */
+@Component
+@Slf4j
+public class EmbeddingCache {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.ai.zhipuai.embeddings.options.model:embedding-3}")
+    private String model;
+
+    @Value("${knowledge.embedding-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${knowledge.embedding-cache.persistent:true}")
+    private boolean persistent;
+
+    @Value("${knowledge.embedding-cache.max-entries:5000}")
+    private int maxEntries;
+
+    private LruCache<String, float[]> memory;
+
+    public EmbeddingCache(@Qualifier("postgresDataSource") DataSource postgresDataSource) {
+        this.jdbcTemplate = new JdbcTemplate(postgresDataSource);
+    }
+
+    @PostConstruct
+    void init() {
+        memory = new LruCache<>(maxEntries);
+        if (enabled && persistent) {
+            try {
+                jdbcTemplate.queryForList("SELECT 1 FROM embedding_cache LIMIT 1");
+            } catch (Exception e) {
+                // 表缺失或数据库暂不可用：不阻止启动，每次读写失败时退化为仅内存缓存
+                log.warn("Embedding cache table is not available, using memory only until it is reachable "
+                        + "(create it with database/postgres_create.sql): {}", e.getMessage());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算分片文本的缓存 key（不含模型名）
+     */
+    public static String hash(String text) {
+        String normalized = Normalizer.normalize(text == null ? "" : text, Normalizer.Form.NFC)
+                .replaceAll("\\s+", " ")
+                .trim();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(normalized.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 批量查询缓存，先查内存再查持久层，持久层命中会回填内存
+     *
+     * @param hashes 分片文本 hash
+     * @return hash -> embedding，仅包含命中的条目
+     */
+    public Map<String, float[]> getAll(Collection<String> hashes) {
+        Map<String, float[]> found = new HashMap<>();
+        if (!enabled || hashes.isEmpty()) {
+            return found;
+        }
+        List<String> misses = new ArrayList<>();
+        for (String h : hashes) {
+            float[] v = memory.get(key(h));
+            if (v != null) {
+                found.put(h, v);
+            } else {
+                misses.add(h);
+            }
+        }
+        if (persistent && !misses.isEmpty()) {
+            try {
+                String placeholders = String.join(",", Collections.nCopies(misses.size(), "?"));
+                List<Object> args = new ArrayList<>(misses);
+                args.add(model);
+                jdbcTemplate.query("SELECT content_hash, embedding::text FROM embedding_cache WHERE content_hash IN ("
+                        + placeholders + ") AND model = ?", rs -> {
+                    String h = rs.getString(1);
+                    float[] v = VectorCodec.parse(rs.getString(2));
+                    memory.put(key(h), v);
+                    found.put(h, v);
+                }, args.toArray());
+            } catch (Exception e) {
+                // 缓存层故障不影响主流程，退化为直接调用模型
+                log.warn("Embedding cache lookup failed, falling back to model", e);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 批量写入缓存
+     */
+    public void putAll(Map<String, float[]> entries) {
+        if (!enabled || entries.isEmpty()) {
+            return;
+        }
+        entries.forEach((h, v) -> memory.put(key(h), v));
+        if (persistent) {
+            try {
+                List<Object[]> rows = new ArrayList<>(entries.size());
+                entries.forEach((h, v) -> rows.add(new Object[]{h, model, VectorCodec.format(v)}));
+                jdbcTemplate.batchUpdate("INSERT INTO embedding_cache (content_hash, model, embedding) "
+                        + "VALUES (?, ?, ?::vector) ON CONFLICT DO NOTHING", rows);
+            } catch (Exception e) {
+                log.warn("Embedding cache write failed, {} entries kept in memory only", entries.size(), e);
+            }
+        }
+    }
+
+    private String key(String hash) {
+        return model + ":" + hash;
+    }
+}
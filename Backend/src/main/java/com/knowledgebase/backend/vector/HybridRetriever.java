@@ -0,0 +1,149 @@
+package com.knowledgebase.backend.vector;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 混合检索：向量检索与全文检索并行执行，按倒数排名融合（RRF）合并候选
+ * score(d) = Σ 1 / (rrf-k + rank)，只看排名不看两路分数的量纲；
+ * 向量一路仍受相似度阈值约束，全文一路补充错误码、配置项等字面量命中
+ * 融合后的分片 metadata 带 rrfScore，向量命中的分片保留 distance
+ */
+@Component
+@Slf4j
+public class HybridRetriever {
+
+    private final SearchResultCache searchResultCache;
+    private final LexicalIndex lexicalIndex;
+    private final ChunkRepository chunkRepository;
+
+    @Value("${knowledge.hybrid.enabled:true}")
+    private boolean enabled;
+
+    @Value("${knowledge.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${knowledge.hybrid.candidate-factor:2}")
+    private int candidateFactor;
+
+    @Value("${knowledge.hybrid.threads:4}")
+    private int threads;
+
+    private ExecutorService executor;
+
+    public HybridRetriever(SearchResultCache searchResultCache, LexicalIndex lexicalIndex,
+                           ChunkRepository chunkRepository) {
+        this.searchResultCache = searchResultCache;
+        this.lexicalIndex = lexicalIndex;
+        this.chunkRepository = chunkRepository;
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger seq = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "hybrid-vector-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param request      向量检索请求（topK 为最终返回数）
+     * @param spaceId      限定 space，null 不限
+     * @param knowledgeIds 限定知识，空不限
+     * @param searchEffort ANN 检索力度，null 使用默认值
+     * @return 融合排序后的分片，最多 topK 个
+     */
+    public List<Document> search(SearchRequest request, Long spaceId, List<Long> knowledgeIds, Integer searchEffort) {
+        if (!enabled || !lexicalIndex.isReady()) {
+            return searchResultCache.search(request, spaceId, searchEffort);
+        }
+        int candidates = request.getTopK() * Math.max(candidateFactor, 1);
+        SearchRequest vectorRequest = SearchRequest.from(request).topK(candidates).build();
+        // 向量一路在线程池执行，全文一路在当前线程执行，总耗时取两者中较慢的一路
+        CompletableFuture<List<Document>> vectorLeg = CompletableFuture.supplyAsync(
+                () -> searchResultCache.search(vectorRequest, spaceId, searchEffort), executor);
+        List<Document> lexicalDocs;
+        try {
+            lexicalDocs = lexicalLeg(request.getQuery(), spaceId, knowledgeIds, candidates);
+        } catch (RuntimeException e) {
+            log.warn("Lexical search failed, using vector results only", e);
+            lexicalDocs = List.of();
+        }
+        List<Document> vectorDocs;
+        try {
+            vectorDocs = vectorLeg.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+        return fuse(vectorDocs, lexicalDocs, request.getTopK());
+    }
+
+    private List<Document> lexicalLeg(String query, Long spaceId, List<Long> knowledgeIds, int limit) {
+        List<LexicalIndex.Hit> hits = lexicalIndex.search(query, spaceId, knowledgeIds, limit);
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Document> found = chunkRepository.findByIds(hits.stream().map(LexicalIndex.Hit::id).toList());
+        List<Document> docs = new ArrayList<>(hits.size());
+        for (LexicalIndex.Hit hit : hits) {
+            Document d = found.get(hit.id());
+            if (d != null) {
+                docs.add(d);
+            }
+        }
+        return docs;
+    }
+
+    private List<Document> fuse(List<Document> vectorDocs, List<Document> lexicalDocs, int topK) {
+        Map<String, Document> byId = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (int rank = 0; rank < vectorDocs.size(); rank++) {
+            Document d = vectorDocs.get(rank);
+            byId.put(d.getId(), d);
+            scores.merge(d.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+        for (int rank = 0; rank < lexicalDocs.size(); rank++) {
+            Document d = lexicalDocs.get(rank);
+            byId.putIfAbsent(d.getId(), d);
+            scores.merge(d.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+        return byId.values().stream()
+                .sorted(Comparator.comparingDouble((Document d) -> scores.get(d.getId())).reversed())
+                .limit(topK)
+                .map(d -> {
+                    double score = scores.get(d.getId());
+                    return Document.builder()
+                            .id(d.getId())
+                            .text(d.getText())
+                            .metadata(new HashMap<>(d.getMetadata()))
+                            .metadata("rrfScore", score)
+                            .score(score)
+                            .build();
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,51 @@
+package com.knowledgebase.backend.vector;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 向量索引版本号：按 space 记录，某个 space 的分片有增删时递增
+ * 检索结果缓存把版本号放进 key，版本变化后旧条目自然失效（随后被 LRU 淘汰）
+ * - 不知道涉及哪个 space 的写入（如按过滤条件删除）递增全局版本，所有 space 一起失效
+ * - 跨 space 的检索（只按 knowledgeIds 过滤）使用任意写入都会递增的 any 版本
+ * 在事务中写入时推迟到事务结束后递增，避免并发检索把提交前的结果缓存到新版本下
+ */
+@Component
+public class IndexVersions {
+
+    private final Map<Long, AtomicLong> spaces = new ConcurrentHashMap<>();
+    private final AtomicLong global = new AtomicLong();
+    private final AtomicLong any = new AtomicLong();
+
+    /**
+     * @param spaceId 检索范围，null 表示不限 space
+     * @return 当前版本，作为结果缓存 key 的一部分
+     */
+    public String current(Long spaceId) {
+        long scoped = spaceId == null ? any.get() : spaces.computeIfAbsent(spaceId, id -> new AtomicLong()).get();
+        return global.get() + "." + scoped;
+    }
+
+    public void bump(Long spaceId) {
+        TransactionHooks.afterCompletion(() -> {
+            if (spaceId == null) {
+                global.incrementAndGet();
+            } else {
+                spaces.computeIfAbsent(spaceId, id -> new AtomicLong()).incrementAndGet();
+            }
+            any.incrementAndGet();
+        });
+    }
+
+    public void bump(Collection<Long> spaceIds) {
+        spaceIds.forEach(this::bump);
+    }
+
+    public void bumpAll() {
+        bump((Long) null);
+    }
+}
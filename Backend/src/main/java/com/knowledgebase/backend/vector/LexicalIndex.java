@@ -0,0 +1,328 @@
+package com.knowledgebase.backend.vector;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 分片文本的进程内倒排索引（BM25），补充向量检索对错误码、配置项、SKU 等精确字面量的召回
+ * - 与向量表同步维护：写入走 VersionedVectorStore.add，删除和复制走 ChunkRepository，事务提交后才生效
+ * - 启动时后台从向量表全量重建，完成前检索只走向量
+ * - 删除的分片先打墓碑，墓碑数超过存活分片数时整体压缩倒排表
+ * 检索结果只是候选 id，调用方回表取内容，已不存在的分片会被丢弃
+ */
+@Component
+@Slf4j
+public class LexicalIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Value("${knowledge.hybrid.enabled:true}")
+    private boolean enabled;
+
+    @Value("${knowledge.vector.table:vector_store}")
+    private String table;
+
+    @Value("${knowledge.hybrid.lexical-min-match:0.3}")
+    private double minMatch;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Posting> postings = new HashMap<>();
+    private int live;
+    private long totalLength;
+    private volatile boolean ready;
+
+    public LexicalIndex(@Qualifier("postgresDataSource") DataSource postgresDataSource) {
+        this.jdbcTemplate = new JdbcTemplate(postgresDataSource);
+        this.jdbcTemplate.setFetchSize(500);
+        this.readOnlyTransaction = new TransactionTemplate(new DataSourceTransactionManager(postgresDataSource));
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        Thread rebuild = new Thread(this::rebuild, "lexical-index-rebuild");
+        rebuild.setDaemon(true);
+        rebuild.start();
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * 从向量表全量加载；在事务中执行，PostgreSQL 才会按 fetchSize 分批返回而不是一次读入内存
+     */
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            int[] count = new int[1];
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(
+                    "SELECT id::text, content, metadata->>'knowledgeId', metadata->>'spaceId' FROM " + table, rs -> {
+                        put(rs.getString(1), rs.getString(2), parseLong(rs.getString(3)), parseLong(rs.getString(4)),
+                                false);
+                        count[0]++;
+                    }));
+            log.info("Lexical index rebuilt, chunks={}, terms={}, took={}ms",
+                    count[0], postings.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("Lexical index rebuild failed, hybrid search falls back to vector only until restart", e);
+        } finally {
+            ready = true;
+        }
+    }
+
+    /**
+     * 写入分片（已存在的 id 覆盖）
+     */
+    public void add(List<Document> documents) {
+        if (!enabled || documents.isEmpty()) {
+            return;
+        }
+        List<Document> copy = List.copyOf(documents);
+        TransactionHooks.afterCommit(() -> {
+            for (Document d : copy) {
+                put(d.getId(), d.getText(), toLong(d.getMetadata().get("knowledgeId")),
+                        toLong(d.getMetadata().get("spaceId")), true);
+            }
+        });
+    }
+
+    public void remove(Collection<String> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        List<String> copy = List.copyOf(ids);
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                copy.forEach(this::removeLocked);
+                compactIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * 复制分片的索引项到新的 id / knowledgeId / spaceId（见 ChunkRepository.copyChunks）
+     */
+    public void copy(Map<String, String> idMapping, Long knowledgeId, Long spaceId) {
+        if (!enabled || idMapping.isEmpty()) {
+            return;
+        }
+        Map<String, String> copy = new LinkedHashMap<>(idMapping);
+        TransactionHooks.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                copy.forEach((oldId, newId) -> {
+                    Integer ord = ordinals.get(oldId);
+                    if (ord != null && entries.get(ord) != null && !ordinals.containsKey(newId)) {
+                        Entry source = entries.get(ord);
+                        insertLocked(new Entry(newId, knowledgeId, spaceId, source.length, source.terms, source.tfs));
+                    }
+                });
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * @param query        查询文本
+     * @param spaceId      限定 space，null 不限
+     * @param knowledgeIds 限定知识，空不限
+     * @param limit        最多返回的候选数
+     * @return 按 BM25 分数降序的分片 id 与分数；匹配的词 idf 之和不足查询词的 lexical-min-match 时不返回
+     */
+    public List<Hit> search(String query, Long spaceId, Collection<Long> knowledgeIds, int limit) {
+        if (!isReady()) {
+            return List.of();
+        }
+        Set<String> terms = new LinkedHashSet<>(LexicalTokenizer.tokenize(query));
+        Set<Long> allowed = knowledgeIds == null || knowledgeIds.isEmpty() ? null : Set.copyOf(knowledgeIds);
+        lock.readLock().lock();
+        try {
+            if (live == 0 || terms.isEmpty()) {
+                return List.of();
+            }
+            double avgLength = (double) totalLength / live;
+            Map<Integer, double[]> scores = new HashMap<>();
+            double totalIdf = 0;
+            for (String term : terms) {
+                Posting posting = postings.get(term);
+                if (posting == null || posting.df == 0) {
+                    continue;
+                }
+                // 未出现在索引中的词不参与区分，只按出现过的词计算匹配比例
+                double idf = Math.log(1 + (live - posting.df + 0.5) / (posting.df + 0.5));
+                totalIdf += idf;
+                for (int i = 0; i < posting.size; i++) {
+                    Entry e = entries.get(posting.ords[i]);
+                    if (e == null || (spaceId != null && !spaceId.equals(e.spaceId))
+                            || (allowed != null && !allowed.contains(e.knowledgeId))) {
+                        continue;
+                    }
+                    int tf = posting.tfs[i];
+                    double norm = tf + K1 * (1 - B + B * e.length / avgLength);
+                    double[] acc = scores.computeIfAbsent(posting.ords[i], k -> new double[2]);
+                    acc[0] += idf * tf * (K1 + 1) / norm;
+                    acc[1] += idf;
+                }
+            }
+            double required = totalIdf * minMatch;
+            return scores.entrySet().stream()
+                    .filter(s -> s.getValue()[1] >= required)
+                    .sorted(Comparator.comparingDouble((Map.Entry<Integer, double[]> s) -> s.getValue()[0]).reversed())
+                    .limit(limit)
+                    .map(s -> new Hit(entries.get(s.getKey()).id, s.getValue()[0]))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(String id, String text, Long knowledgeId, Long spaceId, boolean replace) {
+        List<String> tokens = LexicalTokenizer.tokenize(text);
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String t : tokens) {
+            counts.merge(t, 1, Integer::sum);
+        }
+        String[] terms = new String[counts.size()];
+        int[] tfs = new int[counts.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> c : counts.entrySet()) {
+            terms[i] = c.getKey();
+            tfs[i++] = c.getValue();
+        }
+        lock.writeLock().lock();
+        try {
+            if (ordinals.containsKey(id)) {
+                if (!replace) {
+                    // 重建期间同一分片已由写入路径加入，以写入路径为准
+                    return;
+                }
+                removeLocked(id);
+            }
+            insertLocked(new Entry(id, knowledgeId, spaceId, tokens.size(), terms, tfs));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insertLocked(Entry entry) {
+        int ord = entries.size();
+        entries.add(entry);
+        ordinals.put(entry.id, ord);
+        for (int i = 0; i < entry.terms.length; i++) {
+            postings.computeIfAbsent(entry.terms[i], t -> new Posting()).add(ord, entry.tfs[i]);
+        }
+        live++;
+        totalLength += entry.length;
+    }
+
+    private void removeLocked(String id) {
+        Integer ord = ordinals.remove(id);
+        if (ord == null) {
+            return;
+        }
+        Entry entry = entries.set(ord, null);
+        for (String term : entry.terms) {
+            Posting posting = postings.get(term);
+            if (posting != null && --posting.df == 0) {
+                postings.remove(term);
+            }
+        }
+        live--;
+        totalLength -= entry.length;
+    }
+
+    /**
+     * 墓碑多于存活分片时按存活分片重新编号并重建倒排表
+     */
+    private void compactIfNeeded() {
+        if (entries.size() - live <= Math.max(live, 1024)) {
+            return;
+        }
+        List<Entry> alive = entries.stream().filter(Objects::nonNull).toList();
+        entries.clear();
+        ordinals.clear();
+        postings.clear();
+        live = 0;
+        totalLength = 0;
+        alive.forEach(this::insertLocked);
+    }
+
+    private static Long toLong(Object value) {
+        if (value instanceof Number n) {
+            return n.longValue();
+        }
+        return value == null ? null : parseLong(value.toString());
+    }
+
+    private static Long parseLong(String value) {
+        try {
+            return value == null ? null : Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 检索候选：分片 id 与 BM25 分数
+     */
+    public record Hit(String id, double score) {
+    }
+
+    private record Entry(String id, Long knowledgeId, Long spaceId, int length, String[] terms, int[] tfs) {
+    }
+
+    /**
+     * 一个词的倒排表：追加写入，删除的分片通过 entries 中的墓碑跳过，df 只计存活分片
+     */
+    private static final class Posting {
+        private int[] ords = new int[4];
+        private int[] tfs = new int[4];
+        private int size;
+        private int df;
+
+        private void add(int ord, int tf) {
+            if (size == ords.length) {
+                ords = Arrays.copyOf(ords, size * 2);
+                tfs = Arrays.copyOf(tfs, size * 2);
+            }
+            ords[size] = ord;
+            tfs[size++] = tf;
+            df++;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.knowledgebase.backend.vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 全文索引分词：
+ * - 中日韩文字按相邻二元组（bigram）切分，不依赖词典，召回稳定
+ * - 字母数字串整体作为一个词，包含 _ - . : / 连接符的标识符（错误码、配置项、SKU）
+ *   同时保留整串和按连接符拆开的各段，精确查询和部分查询都能命中
+ * 索引和查询使用同一套规则
+ */
+public final class LexicalTokenizer {
+
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private LexicalTokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String s = text.toLowerCase(Locale.ROOT);
+        int i = 0;
+        int n = s.length();
+        while (i < n) {
+            int cp = s.codePointAt(i);
+            if (isCjk(cp)) {
+                int start = i;
+                while (i < n && isCjk(s.codePointAt(i))) {
+                    i += Character.charCount(s.codePointAt(i));
+                }
+                cjkBigrams(s.substring(start, i), tokens);
+            } else if (Character.isLetterOrDigit(cp)) {
+                int start = i;
+                while (i < n) {
+                    int c = s.codePointAt(i);
+                    if (isCjk(c) || !(Character.isLetterOrDigit(c) || isConnector(c))) {
+                        break;
+                    }
+                    i += Character.charCount(c);
+                }
+                identifier(s.substring(start, i), tokens);
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+        return tokens;
+    }
+
+    private static void cjkBigrams(String run, List<String> tokens) {
+        int[] cps = run.codePoints().toArray();
+        if (cps.length == 1) {
+            tokens.add(run);
+            return;
+        }
+        for (int j = 0; j + 1 < cps.length; j++) {
+            tokens.add(new String(cps, j, 2));
+        }
+    }
+
+    private static void identifier(String run, List<String> tokens) {
+        // 去掉句末等位置的连接符，如 "world." -> "world"
+        int end = run.length();
+        while (end > 0 && isConnector(run.charAt(end - 1))) {
+            end--;
+        }
+        String word = run.substring(0, end);
+        if (word.isEmpty() || word.length() > MAX_TOKEN_LENGTH) {
+            return;
+        }
+        tokens.add(word);
+        if (word.chars().anyMatch(LexicalTokenizer::isConnector)) {
+            for (String part : word.split("[_\\-.:/]+")) {
+                if (part.length() > 1 || (!part.isEmpty() && Character.isDigit(part.charAt(0)))) {
+                    tokens.add(part);
+                }
+            }
+        }
+    }
+
+    private static boolean isConnector(int c) {
+        return c == '_' || c == '-' || c == '.' || c == ':' || c == '/';
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
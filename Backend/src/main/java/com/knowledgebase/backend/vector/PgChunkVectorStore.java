@@ -0,0 +1,283 @@
+package com.knowledgebase.backend.vector;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.BatchingStrategy;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * pgvector 分片表的 VectorStore 实现（替代 PgVectorStore）
+ * 表结构与 PgVectorStore 兼容（id / content / metadata / embedding），另外把 metadata 中的
+ * spaceId / knowledgeId 写入带 B-tree 索引的 space_id / knowledge_id 列：
+ * - 按 space / 知识过滤的检索和删除走列索引，不再逐行解析 metadata JSON
+ * - partitioning=hash 时新建表按 space_id HASH 分区，按 space 过滤的检索只扫描一个分区及其 ANN 索引；
+ *   已有的非分区表不会自动改造，迁移见 database/postgres_partition_vector_store.sql
+ * 已有表启动时补齐两列并从 metadata 回填
+ */
+@Slf4j
+public class PgChunkVectorStore implements VectorStore {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final BatchingStrategy batchingStrategy = new TokenCountBatchingStrategy();
+    private final String table;
+    private final int dimensions;
+    private final String partitioning;
+    private final int partitions;
+
+    /** 实际表是否为分区表（以数据库中的表为准，不以配置为准） */
+    private boolean partitioned;
+
+    /**
+     * @param partitioning none / hash，只影响新建的表
+     * @param partitions   hash 分区数
+     */
+    public PgChunkVectorStore(JdbcTemplate jdbcTemplate, EmbeddingModel embeddingModel, String table,
+                              int dimensions, String partitioning, int partitions) {
+        if (!"none".equals(partitioning) && !"hash".equals(partitioning)) {
+            throw new IllegalArgumentException("Unsupported knowledge.vector.partitioning: " + partitioning);
+        }
+        if (partitions < 1) {
+            throw new IllegalArgumentException("knowledge.vector.partitions must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingModel = embeddingModel;
+        this.table = table;
+        this.dimensions = dimensions;
+        this.partitioning = partitioning;
+        this.partitions = partitions;
+    }
+
+    /**
+     * 建表或升级已有表：补齐 space_id / knowledge_id 列、回填、建 B-tree 索引
+     */
+    public void initializeSchema() {
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS vector");
+        String relkind = relkind();
+        if (relkind == null) {
+            createTable();
+            relkind = relkind();
+        } else {
+            jdbcTemplate.execute("ALTER TABLE " + table
+                    + " ADD COLUMN IF NOT EXISTS space_id bigint, ADD COLUMN IF NOT EXISTS knowledge_id bigint");
+            int filled = jdbcTemplate.update("UPDATE " + table
+                    + " SET space_id = (metadata->>'spaceId')::bigint, knowledge_id = (metadata->>'knowledgeId')::bigint"
+                    + " WHERE space_id IS NULL AND knowledge_id IS NULL"
+                    + " AND (metadata->>'spaceId' IS NOT NULL OR metadata->>'knowledgeId' IS NOT NULL)");
+            if (filled > 0) {
+                log.info("Backfilled space_id / knowledge_id for {} chunks in {}", filled, table);
+            }
+        }
+        partitioned = "p".equals(relkind);
+        if ("hash".equals(partitioning) && !partitioned) {
+            log.warn("{} is not partitioned, knowledge.vector.partitioning=hash only applies to new tables;"
+                    + " see database/postgres_partition_vector_store.sql to migrate", table);
+        }
+        // 分区表的父表索引会自动建到每个分区上，但不支持 CONCURRENTLY
+        String concurrently = partitioned ? "" : "CONCURRENTLY ";
+        jdbcTemplate.execute("CREATE INDEX " + concurrently + "IF NOT EXISTS " + table + "_space_id_idx ON "
+                + table + " (space_id)");
+        jdbcTemplate.execute("CREATE INDEX " + concurrently + "IF NOT EXISTS " + table + "_knowledge_id_idx ON "
+                + table + " (knowledge_id)");
+    }
+
+    private void createTable() {
+        String columns = "id uuid NOT NULL, content text, metadata json, embedding vector(" + dimensions + "),"
+                + " space_id bigint, knowledge_id bigint";
+        if ("hash".equals(partitioning)) {
+            // 分区表的主键必须包含分区键
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " (" + columns
+                    + ", PRIMARY KEY (id, space_id)) PARTITION BY HASH (space_id)");
+            for (int i = 0; i < partitions; i++) {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + "_p" + i + " PARTITION OF " + table
+                        + " FOR VALUES WITH (MODULUS " + partitions + ", REMAINDER " + i + ")");
+            }
+            log.info("Created vector table {} with {} hash partitions on space_id", table, partitions);
+        } else {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " (" + columns + ", PRIMARY KEY (id))");
+        }
+    }
+
+    /**
+     * @return r 普通表，p 分区表，表不存在返回 null
+     */
+    private String relkind() {
+        List<String> kinds = jdbcTemplate.queryForList(
+                "SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)", String.class, table);
+        return kinds.isEmpty() ? null : kinds.get(0);
+    }
+
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    @Override
+    public String getName() {
+        return "PgChunkVectorStore";
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        add(documents, embeddingModel.embed(documents, EmbeddingOptionsBuilder.builder().build(), batchingStrategy));
+    }
+
+    /**
+     * 写入已算好向量的分片（按 id upsert），不再调用 embedding
+     *
+     * @param embeddings 与 documents 按下标一一对应
+     */
+    public void add(List<Document> documents, List<float[]> embeddings) {
+        if (documents.size() != embeddings.size()) {
+            throw new IllegalArgumentException("Embeddings count " + embeddings.size()
+                    + " does not match documents count " + documents.size());
+        }
+        if (documents.isEmpty()) {
+            return;
+        }
+        String conflict = partitioned ? "(id, space_id)" : "(id)";
+        String sql = "INSERT INTO " + table + " (id, content, metadata, embedding, space_id, knowledge_id)"
+                + " VALUES (?::uuid, ?, ?::json, ?::vector, ?::bigint, ?::bigint)"
+                + " ON CONFLICT " + conflict + " DO UPDATE SET content = EXCLUDED.content,"
+                + " metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding,"
+                + " knowledge_id = EXCLUDED.knowledge_id"
+                + (partitioned ? "" : ", space_id = EXCLUDED.space_id");
+        List<Object[]> rows = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Document d = documents.get(i);
+            Map<String, Object> metadata = d.getMetadata();
+            rows.add(new Object[]{d.getId(), d.getText(), toJson(metadata), VectorCodec.format(embeddings.get(i)),
+                    toLong(metadata.get("spaceId")), toLong(metadata.get("knowledgeId"))});
+        }
+        jdbcTemplate.batchUpdate(sql, rows);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        deleteReturning(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        deleteReturning(filterExpression);
+    }
+
+    /**
+     * 按 id 删除，返回被删分片及其所属 space
+     */
+    public Deleted deleteReturning(List<String> idList) {
+        if (idList.isEmpty()) {
+            return new Deleted(List.of(), Set.of(), false);
+        }
+        String placeholders = String.join(",", Collections.nCopies(idList.size(), "?::uuid"));
+        return deleteReturning("id IN (" + placeholders + ")", idList.toArray());
+    }
+
+    /**
+     * 按过滤条件删除，返回被删分片及其所属 space
+     */
+    public Deleted deleteReturning(Filter.Expression filterExpression) {
+        ChunkFilterSql.Where where = ChunkFilterSql.of(filterExpression);
+        return deleteReturning(where.sql(), where.args().toArray());
+    }
+
+    private Deleted deleteReturning(String where, Object[] args) {
+        List<String> ids = new ArrayList<>();
+        Set<Long> spaceIds = new HashSet<>();
+        boolean[] unscoped = {false};
+        jdbcTemplate.query("DELETE FROM " + table + " WHERE " + where + " RETURNING id::text, space_id", rs -> {
+            ids.add(rs.getString(1));
+            long spaceId = rs.getLong(2);
+            if (rs.wasNull()) {
+                unscoped[0] = true;
+            } else {
+                spaceIds.add(spaceId);
+            }
+        }, args);
+        return new Deleted(ids, spaceIds, unscoped[0]);
+    }
+
+    /**
+     * 余弦距离检索；过滤条件中的 spaceId / knowledgeId 落在列上，可裁剪分区
+     */
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        String vector = VectorCodec.format(embeddingModel.embed(request.getQuery()));
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT id::text, content, metadata::text, embedding <=> ?::vector"
+                + " AS distance FROM " + table + " WHERE embedding <=> ?::vector < ?");
+        args.add(vector);
+        args.add(vector);
+        args.add(1 - request.getSimilarityThreshold());
+        if (request.hasFilterExpression()) {
+            ChunkFilterSql.Where where = ChunkFilterSql.of(request.getFilterExpression());
+            sql.append(" AND ").append(where.sql());
+            args.addAll(where.args());
+        }
+        sql.append(" ORDER BY distance LIMIT ?");
+        args.add(request.getTopK());
+        return jdbcTemplate.query(sql.toString(), (rs, i) -> {
+            float distance = rs.getFloat(4);
+            Map<String, Object> metadata = ChunkRepository.parseMetadata(rs.getString(3));
+            metadata.put("distance", distance);
+            return Document.builder()
+                    .id(rs.getString(1))
+                    .text(rs.getString(2))
+                    .metadata(metadata)
+                    .score(1.0 - distance)
+                    .build();
+        }, args.toArray());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Optional<T> getNativeClient() {
+        return Optional.of((T) jdbcTemplate);
+    }
+
+    private static String toJson(Map<String, Object> metadata) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(metadata == null ? new HashMap<>() : metadata);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Chunk metadata is not serializable", e);
+        }
+    }
+
+    private static Long toLong(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof Number n ? n.longValue() : Long.valueOf(value.toString());
+    }
+
+    /**
+     * 删除结果
+     *
+     * @param ids      被删分片 id
+     * @param spaceIds 被删分片所属的 space
+     * @param unscoped 是否有被删分片没有 space_id（旧数据），此时无法确定涉及的 space
+     */
+    public record Deleted(List<String> ids, Set<Long> spaceIds, boolean unscoped) {
+    }
+}
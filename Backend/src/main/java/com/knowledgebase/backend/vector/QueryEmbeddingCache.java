@@ -0,0 +1,58 @@
+package com.knowledgebase.backend.vector;
+
+import com.knowledgebase.backend.utils.LruCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Function;
+
+/**
+ * 检索问题的 embedding 缓存（只在内存，不写入持久层）
+ * key = sha256(规范化后的问题文本)，前端重试、重复提问时不再请求远端模型
+ */
+@Component
+public class QueryEmbeddingCache {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${knowledge.search-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${knowledge.search-cache.query-embeddings:2000}")
+    private int maxEntries;
+
+    private LruCache<String, float[]> cache;
+    private CacheMeters meters;
+
+    public QueryEmbeddingCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        cache = new LruCache<>(maxEntries);
+        meters = new CacheMeters(meterRegistry, "query_embedding", cache);
+    }
+
+    /**
+     * @param text   问题文本
+     * @param loader 未命中时计算 embedding
+     * @return embedding（调用方不应修改返回的数组）
+     */
+    public float[] get(String text, Function<String, float[]> loader) {
+        if (!enabled) {
+            return loader.apply(text);
+        }
+        String key = EmbeddingCache.hash(text);
+        float[] cached = cache.get(key);
+        if (cached != null) {
+            meters.hit();
+            return cached;
+        }
+        float[] computed = meters.miss(() -> loader.apply(text));
+        cache.put(key, computed);
+        return computed;
+    }
+}
@@ -0,0 +1,127 @@
+package com.knowledgebase.backend.vector;
+
+import com.knowledgebase.backend.utils.LruCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 语义检索结果缓存
+ * key = (索引版本, 过滤范围, topK, 相似度阈值, 检索力度, 问题 embedding)，value = 排好序的分片 id 与距离
+ * 命中时按 id 回表取分片内容，跳过向量检索；space 内有分片增删时版本递增，旧结果不再命中（见 IndexVersions）
+ */
+@Component
+public class SearchResultCache {
+
+    private final MeterRegistry meterRegistry;
+    private final VectorStore vectorStore;
+    private final EmbeddingModel embeddingModel;
+    private final ChunkRepository chunkRepository;
+    private final IndexVersions indexVersions;
+    private final AnnIndexManager annIndexManager;
+
+    @Value("${knowledge.search-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${knowledge.search-cache.results:1000}")
+    private int maxEntries;
+
+    private LruCache<String, List<ScoredChunk>> cache;
+    private CacheMeters meters;
+
+    public SearchResultCache(MeterRegistry meterRegistry, VectorStore vectorStore, EmbeddingModel embeddingModel,
+                             ChunkRepository chunkRepository, IndexVersions indexVersions,
+                             AnnIndexManager annIndexManager) {
+        this.meterRegistry = meterRegistry;
+        this.vectorStore = vectorStore;
+        this.embeddingModel = embeddingModel;
+        this.chunkRepository = chunkRepository;
+        this.indexVersions = indexVersions;
+        this.annIndexManager = annIndexManager;
+    }
+
+    @PostConstruct
+    void init() {
+        cache = new LruCache<>(maxEntries);
+        meters = new CacheMeters(meterRegistry, "search_result", cache);
+    }
+
+    /**
+     * @param request 检索请求（过滤条件需只限定在 spaceId 内，或 spaceId 为 null）
+     * @param spaceId 检索范围所在 space，用于取索引版本；null 表示跨 space
+     * @param searchEffort ANN 检索力度（见 AnnIndexManager），null 使用默认值；不同力度的结果分开缓存
+     * @return 与 vectorStore.similaritySearch 相同的结果（metadata 含 distance）
+     */
+    public List<Document> search(SearchRequest request, Long spaceId, Integer searchEffort) {
+        if (!enabled) {
+            return similaritySearch(request, searchEffort);
+        }
+        // 先取版本再检索：检索期间发生写入时，结果记在旧版本下，不会被后续查询命中
+        String version = indexVersions.current(spaceId);
+        // 问题 embedding 经过 QueryEmbeddingCache，随后 vectorStore 内部再次 embed 时直接命中
+        float[] embedding = embeddingModel.embed(request.getQuery());
+        String key = version
+                + "|" + spaceId
+                + "|" + request.getFilterExpression()
+                + "|" + request.getTopK()
+                + "|" + request.getSimilarityThreshold()
+                + "|" + searchEffort
+                + "|" + EmbeddingCache.hash(VectorCodec.format(embedding));
+
+        List<ScoredChunk> ranked = cache.get(key);
+        if (ranked != null) {
+            List<Document> docs = load(ranked);
+            if (docs != null) {
+                meters.hit();
+                return docs;
+            }
+        }
+        List<Document> docs = meters.miss(() -> similaritySearch(request, searchEffort));
+        List<ScoredChunk> entry = new ArrayList<>(docs.size());
+        for (Document d : docs) {
+            Object distance = d.getMetadata().get("distance");
+            entry.add(new ScoredChunk(d.getId(), distance instanceof Number n ? n.doubleValue() : null));
+        }
+        cache.put(key, List.copyOf(entry));
+        return docs;
+    }
+
+    private List<Document> similaritySearch(SearchRequest request, Integer searchEffort) {
+        return annIndexManager.withSearchEffort(searchEffort, () -> vectorStore.similaritySearch(request));
+    }
+
+    /**
+     * @return 按缓存顺序回表得到的分片；有分片已被删除时返回 null，按未命中处理
+     */
+    private List<Document> load(List<ScoredChunk> ranked) {
+        if (ranked.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Document> found = chunkRepository.findByIds(ranked.stream().map(ScoredChunk::id).toList());
+        List<Document> docs = new ArrayList<>(ranked.size());
+        for (ScoredChunk chunk : ranked) {
+            Document d = found.get(chunk.id());
+            if (d == null) {
+                return null;
+            }
+            Document.Builder builder = Document.builder().id(d.getId()).text(d.getText()).metadata(d.getMetadata());
+            if (chunk.distance() != null) {
+                builder.metadata("distance", chunk.distance()).score(1.0 - chunk.distance());
+            }
+            docs.add(builder.build());
+        }
+        return docs;
+    }
+
+    private record ScoredChunk(String id, Double distance) {
+    }
+}
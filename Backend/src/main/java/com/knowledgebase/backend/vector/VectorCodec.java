@@ -0,0 +1,39 @@
+package com.knowledgebase.backend.vector;
+
+/**
+ * pgvector 文本格式与 float[] 互转：[0.1,0.2,...]
+ * 通过 ?::vector 传参，避免编译期依赖 PostgreSQL 驱动里的 PGobject
+ */
+public final class VectorCodec {
+
+    private VectorCodec() {
+    }
+
+    public static String format(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 12 + 2);
+        sb.append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    public static float[] parse(String text) {
+        String body = text.trim();
+        if (body.startsWith("[")) {
+            body = body.substring(1, body.length() - 1);
+        }
+        if (body.isBlank()) {
+            return new float[0];
+        }
+        String[] parts = body.split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i].trim());
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,87 @@
+package com.knowledgebase.backend.vector;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * VectorStore 装饰器：写入分片后递增所属 space 的索引版本，使检索结果缓存失效，并同步维护全文索引
+ * 删除时由 DELETE ... RETURNING 取回被删分片的 id 和 space，只递增涉及的 space 并从全文索引移除；
+ * 被删分片没有 space_id（旧数据）时才递增全局版本
+ */
+public class VersionedVectorStore implements VectorStore {
+
+    private final PgChunkVectorStore delegate;
+    private final IndexVersions indexVersions;
+    private final LexicalIndex lexicalIndex;
+
+    public VersionedVectorStore(PgChunkVectorStore delegate, IndexVersions indexVersions, LexicalIndex lexicalIndex) {
+        this.delegate = delegate;
+        this.indexVersions = indexVersions;
+        this.lexicalIndex = lexicalIndex;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        added(documents);
+    }
+
+    /**
+     * 写入已算好向量的分片，不再调用 embedding（见 EmbeddingPipeline）
+     *
+     * @param embeddings 与 documents 按下标一一对应
+     */
+    public void add(List<Document> documents, List<float[]> embeddings) {
+        delegate.add(documents, embeddings);
+        added(documents);
+    }
+
+    private void added(List<Document> documents) {
+        lexicalIndex.add(documents);
+        indexVersions.bump(documents.stream()
+                .map(d -> d.getMetadata().get("spaceId"))
+                .filter(Objects::nonNull)
+                .map(id -> id instanceof Number n ? n.longValue() : Long.valueOf(id.toString()))
+                .distinct()
+                .toList());
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        deleted(delegate.deleteReturning(idList));
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        deleted(delegate.deleteReturning(filterExpression));
+    }
+
+    private void deleted(PgChunkVectorStore.Deleted deleted) {
+        lexicalIndex.remove(deleted.ids());
+        if (deleted.unscoped()) {
+            indexVersions.bumpAll();
+        }
+        indexVersions.bump(deleted.spaceIds());
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return delegate.similaritySearch(request);
+    }
+
+    @Override
+    public <T> Optional<T> getNativeClient() {
+        return delegate.getNativeClient();
+    }
+}
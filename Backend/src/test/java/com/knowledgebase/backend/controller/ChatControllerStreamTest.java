@@ -0,0 +1,93 @@
+package com.knowledgebase.backend.controller;
+
+import com.knowledgebase.backend.service.ChatService;
+import com.knowledgebase.backend.utils.SseFramesHttpMessageConverter;
+import com.knowledgebase.backend.utils.SseStreamWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class ChatControllerStreamTest {
+
+    private ChatService chatService;
+    private SseStreamWriter writer;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        chatService = mock(ChatService.class);
+        when(chatService.simpleLlmStream(any())).thenReturn(Flux.just("a\"", "b\n", "你好"));
+
+        writer = new SseStreamWriter();
+        ReflectionTestUtils.setField(writer, "defaultCoalesceMs", 0);
+        ReflectionTestUtils.setField(writer, "defaultCoalesceTokens", 64);
+        ReflectionTestUtils.setField(writer, "timeoutMs", 5000L);
+        ReflectionTestUtils.setField(writer, "writerThreads", 2);
+        ReflectionTestUtils.invokeMethod(writer, "init");
+        mockMvc = MockMvcBuilders.standaloneSetup(new ChatController(chatService, writer))
+                .setMessageConverters(new SseFramesHttpMessageConverter(), new MappingJackson2HttpMessageConverter())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(writer, "shutdown");
+    }
+
+    @Test
+    void testPerTokenFrames() throws Exception {
+        assertEquals("data: {\"content\":\"a\\\"\"}\n\n"
+                + "data: {\"content\":\"b\\n\"}\n\n"
+                + "data: {\"content\":\"你好\"}\n\n"
+                + "data: [DONE]\n\n", stream("{\"question\":\"q\"}"));
+    }
+
+    @Test
+    void testCoalescedFrame() throws Exception {
+        assertEquals("data: {\"content\":\"a\\\"b\\n你好\"}\n\ndata: [DONE]\n\n",
+                stream("{\"question\":\"q\",\"coalesceMs\":200}"));
+    }
+
+    @Test
+    void testHeartbeatWhileWaitingForModel() throws Exception {
+        when(chatService.simpleLlmStream(any())).thenReturn(Flux.just("a").delayElements(Duration.ofMillis(300)));
+        ReflectionTestUtils.setField(writer, "heartbeatMs", 100L);
+        String body = stream("{\"question\":\"q\"}");
+        assertTrue(body.startsWith(":\n\n"));
+        assertTrue(body.endsWith("data: {\"content\":\"a\"}\n\ndata: [DONE]\n\n"));
+    }
+
+    private String stream(String body) throws Exception {
+        MvcResult result = mockMvc.perform(post("/api/knowledge/chat/simple-stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(5000);
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", MediaType.TEXT_EVENT_STREAM_VALUE));
+        return result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,223 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dto.ChatRequestDto;
+import com.knowledgebase.backend.dto.KnowledgeSearchResultDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class ChatServiceStreamTest {
+
+    private KnowledgeService knowledgeService;
+    private ConversationManager conversationManager;
+    private ChatModel chatModel;
+    private ChatService chatService;
+    private SimpleMeterRegistry registry;
+    private final AtomicReference<String> retrievalThread = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        knowledgeService = mock(KnowledgeService.class);
+        when(knowledgeService.searchBySemantics(any(), any(), any(), anyInt(), anyDouble(), any()))
+                .thenAnswer(invocation -> {
+                    retrievalThread.set(Thread.currentThread().getName());
+                    return List.of();
+                });
+        conversationManager = mock(ConversationManager.class);
+        when(conversationManager.createConversation()).thenReturn("c1");
+        when(conversationManager.getContext(eq("c1"), any(), any())).thenReturn(new ConversationContext());
+        when(conversationManager.getHistory("c1")).thenReturn(ConversationHistory.EMPTY);
+        chatModel = mock(ChatModel.class);
+
+        ContextPacker contextPacker = new ContextPacker();
+        ReflectionTestUtils.setField(contextPacker, "maxTokens", 20000);
+        ReflectionTestUtils.setField(contextPacker, "duplicateThreshold", 0.8);
+
+        registry = new SimpleMeterRegistry();
+        chatService = new ChatService(knowledgeService, conversationManager, chatModel,
+                contextPacker, registry);
+        ReflectionTestUtils.setField(chatService, "retrievalThreads", 2);
+        ReflectionTestUtils.setField(chatService, "retrievalQueue", 10);
+        chatService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        chatService.shutdown();
+    }
+
+    @Test
+    void testRetrievalRunsOnBoundedSchedulerAfterStatusEvent() {
+        ChatRequestDto request = new ChatRequestDto();
+        request.setQuestion("q");
+
+        Flux<ServerSentEvent<String>> stream = chatService.chatStream(request);
+        // 返回 Flux 时还没有做任何检索
+        verifyNoInteractions(knowledgeService);
+
+        List<ServerSentEvent<String>> events = stream.collectList().block(Duration.ofSeconds(5));
+        assertEquals(4, events.size());
+        assertEquals("status", events.get(0).event());
+        assertEquals("retrieving", events.get(0).data());
+        // 检索完成即发送来源，带上新建的会话 ID
+        assertEquals("sources", events.get(1).event());
+        assertTrue(events.get(1).data().contains("\"conversationId\":\"c1\""));
+        assertTrue(events.get(1).data().contains("\"sources\":[]"));
+        assertNull(events.get(2).event());
+        assertTrue(events.get(2).data().contains("没有找到"));
+        assertEquals("usage", events.get(3).event());
+        assertTrue(events.get(3).data().contains("\"completionTokens\":0"));
+        assertTrue(events.get(3).data().contains("\"retrieval\":"));
+        assertTrue(retrievalThread.get().startsWith("chat-retrieval"));
+        // 没有相关知识时提问和固定回答也写入历史
+        verify(conversationManager).addUserMessage("c1", "q");
+        verify(conversationManager).addAssistantMessage(eq("c1"), contains("没有找到"));
+
+        assertEquals(1, registry.get("chat.stream.stage").tag("stage", "retrieval").timer().count());
+        // doFinally 在下游收到完成信号之后才在检索线程上执行
+        long deadline = System.currentTimeMillis() + 1000;
+        while (registry.get("chat.stream.active").gauge().value() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(0, registry.get("chat.stream.active").gauge().value());
+    }
+
+    @Test
+    void testCancelDuringGenerationStopsModelAndSavesPartialAnswer() {
+        Document chunk = Document.builder().id("k1-0").text("知识库部署说明")
+                .metadata(Map.of("chunkIndex", 0, "distance", 0.1)).build();
+        when(knowledgeService.searchBySemantics(any(), any(), any(), anyInt(), anyDouble(), any()))
+                .thenReturn(List.of(KnowledgeSearchResultDto.builder()
+                        .knowledgeId(1L).title("部署").chunks(List.of(chunk)).build()));
+        AtomicBoolean modelCancelled = new AtomicBoolean();
+        when(chatModel.stream(any(Prompt.class))).thenReturn(
+                Flux.concat(Flux.just(response("部分回答")), Flux.<ChatResponse>never())
+                        .doOnCancel(() -> modelCancelled.set(true)));
+
+        ChatRequestDto request = new ChatRequestDto();
+        request.setQuestion("怎么部署");
+        // 收到第一个 token 后取消，相当于客户端断开
+        chatService.chatStream(request)
+                .takeUntil(event -> event.event() == null)
+                .blockLast(Duration.ofSeconds(5));
+
+        assertTrue(modelCancelled.get());
+        verify(conversationManager).addUserMessage("c1", "怎么部署");
+        verify(conversationManager).addAssistantMessage("c1", "部分回答");
+        assertEquals(1, registry.get("chat.stream.cancelled")
+                .tag("endpoint", "chat").tag("phase", "generation").counter().count());
+    }
+
+    @Test
+    void testCancelDuringRetrievalDoesNotAppendUserMessage() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Document chunk = Document.builder().id("k1-0").text("知识库部署说明")
+                .metadata(Map.of("chunkIndex", 0, "distance", 0.1)).build();
+        when(knowledgeService.searchBySemantics(any(), any(), any(), anyInt(), anyDouble(), any()))
+                .thenAnswer(invocation -> {
+                    started.countDown();
+                    // 模拟不响应中断的 JDBC 调用：取消后检索仍会执行完
+                    while (true) {
+                        try {
+                            release.await();
+                            break;
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                    return List.of(KnowledgeSearchResultDto.builder()
+                            .knowledgeId(1L).title("部署").chunks(List.of(chunk)).build());
+                });
+
+        ChatRequestDto request = new ChatRequestDto();
+        request.setQuestion("怎么部署");
+        Disposable subscription = chatService.chatStream(request).subscribe();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        subscription.dispose();
+        release.countDown();
+
+        // 不响应中断的检索执行完后，不再更新参考资料、组装消息，也不写入用户消息、不调用大模型
+        verify(conversationManager, after(500).never()).getContext(any(), any(), any());
+        verify(conversationManager, never()).getHistory(any());
+        verify(conversationManager, never()).addUserMessage(any(), any());
+        verifyNoInteractions(chatModel);
+        assertEquals(1, registry.get("chat.stream.cancelled")
+                .tag("endpoint", "chat").tag("phase", "retrieval").counter().count());
+    }
+
+    @Test
+    void testCancelDuringRetrievalInterruptsRetrievalThread() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(knowledgeService.searchBySemantics(any(), any(), any(), anyInt(), anyDouble(), any()))
+                .thenAnswer(invocation -> {
+                    started.countDown();
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        throw e;
+                    }
+                    return List.of();
+                });
+
+        ChatRequestDto request = new ChatRequestDto();
+        request.setQuestion("怎么部署");
+        Disposable subscription = chatService.chatStream(request).subscribe();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        subscription.dispose();
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        verify(conversationManager, after(200).never()).getContext(any(), any(), any());
+    }
+
+    @Test
+    void testSimpleStreamCancelStopsModel() {
+        AtomicBoolean modelCancelled = new AtomicBoolean();
+        when(chatModel.stream(any(Prompt.class))).thenReturn(
+                Flux.concat(Flux.just(response("a")), Flux.<ChatResponse>never())
+                        .doOnCancel(() -> modelCancelled.set(true)));
+
+        assertEquals("a", chatService.simpleLlmStream("p").take(1).blockLast(Duration.ofSeconds(5)));
+        assertTrue(modelCancelled.get());
+        assertEquals(1, registry.get("chat.stream.cancelled").tag("endpoint", "simple").counter().count());
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
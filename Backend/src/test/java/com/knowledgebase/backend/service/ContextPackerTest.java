@@ -0,0 +1,104 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dto.KnowledgeSearchResultDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContextPackerTest {
+
+    private ContextPacker packer;
+
+    @BeforeEach
+    void setUp() {
+        packer = new ContextPacker();
+        ReflectionTestUtils.setField(packer, "maxTokens", 20000);
+        ReflectionTestUtils.setField(packer, "duplicateThreshold", 0.8);
+    }
+
+    @Test
+    void testRanksChunksAcrossKnowledges() {
+        KnowledgeSearchResultDto a = result(1L, "A",
+                chunk("alpha low relevance paragraph about deployment", 0, 0.9),
+                chunk("alpha second paragraph about configuration files", 1, 0.8));
+        KnowledgeSearchResultDto b = result(2L, "B",
+                chunk("beta best matching paragraph about database indexes", 0, 0.1));
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(a, b), 1, null);
+
+        assertEquals(2, packed.chunks());
+        assertEquals(List.of(b, a), packed.knowledges());
+        assertTrue(packed.text().indexOf("【资料1：B】") < packed.text().indexOf("【资料2：A】"));
+        assertTrue(packed.text().contains("configuration files"));
+        assertFalse(packed.text().contains("deployment"));
+        assertEquals(packer.countTokens(packed.text()), packed.tokens());
+    }
+
+    @Test
+    void testDropsNearDuplicateChunks() {
+        String text = "The ingestion pipeline hashes every uploaded file and reuses vectors when the same content"
+                + " has already been embedded by another knowledge entry in the workspace.";
+        KnowledgeSearchResultDto a = result(1L, "A", chunk(text, 0, 0.1));
+        KnowledgeSearchResultDto b = result(2L, "B", chunk(text + " See also the storage section.", 3, 0.2));
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(a, b), null, null);
+
+        assertEquals(1, packed.chunks());
+        assertEquals(1, packed.duplicates());
+        assertEquals(List.of(a), packed.knowledges());
+    }
+
+    @Test
+    void testRespectsTokenBudget() {
+        KnowledgeSearchResultDto a = result(1L, "A",
+                chunk("first chunk ".repeat(30), 0, 0.1),
+                chunk("second chunk ".repeat(30), 1, 0.2));
+
+        ContextPacker.PackedContext packed = packer.pack(List.of(a), null, 100);
+
+        assertEquals(1, packed.chunks());
+        assertTrue(packed.tokens() <= 100);
+    }
+
+    @Test
+    void testFollowUpTurnAppendsNewChunksAndEvictsStaleOnes() {
+        ConversationContext window = new ConversationContext();
+        Document deploy = chunk("deploy ".repeat(30), 0, 0.1);
+        Document config = chunk("config ".repeat(30), 1, 0.2);
+        packer.pack(window, List.of(result(1L, "A", deploy, config)), null, 50);
+        assertEquals(1, window.size());
+
+        // 第二轮命中已在上下文中的分片：不重复装入
+        ContextPacker.PackedContext second = packer.pack(window, List.of(result(1L, "A", deploy)), null, 50);
+        assertEquals(0, second.added());
+        assertEquals(1, second.chunks());
+
+        // 第三轮换了话题：新分片放不下时淘汰上一轮之后未再命中的分片
+        Document backup = chunk("backup ".repeat(30), 0, 0.1);
+        ContextPacker.PackedContext third = packer.pack(window, List.of(result(2L, "B", backup)), null, 50);
+        assertEquals(1, third.added());
+        assertEquals(1, third.chunks());
+        assertTrue(third.text().contains("backup"));
+        assertFalse(third.text().contains("deploy"));
+    }
+
+    private static KnowledgeSearchResultDto result(Long id, String title, Document... chunks) {
+        return KnowledgeSearchResultDto.builder().knowledgeId(id).title(title).chunks(List.of(chunks)).build();
+    }
+
+    private static Document chunk(String text, int index, double distance) {
+        return Document.builder()
+                .id(text.trim().split(" ")[0] + index)
+                .text(text)
+                .metadata(Map.of("chunkIndex", index, "distance", distance))
+                .build();
+    }
+}
@@ -0,0 +1,53 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.vector.ChunkRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConversationManagerTest {
+
+    private ChunkRepository chunkRepository;
+    private ConversationManager manager;
+
+    @BeforeEach
+    void setUp() {
+        chunkRepository = mock(ChunkRepository.class);
+        manager = new ConversationManager(mock(ConversationStore.class), mock(ConversationSummarizer.class),
+                chunkRepository, 100);
+    }
+
+    @Test
+    void testResetsWindowWhenScopeChanges() {
+        ConversationContext first = manager.getContext("c1", 1L, List.of(3L, 2L));
+        // knowledgeIds 顺序不同、有重复：同一范围
+        assertSame(first, manager.getContext("c1", 1L, List.of(2L, 3L, 2L)));
+        assertNotSame(first, manager.getContext("c1", 1L, List.of(2L)));
+        assertNotSame(first, manager.getContext("c1", 2L, List.of(2L, 3L)));
+    }
+
+    @Test
+    void testRemovesDeletedChunks() {
+        ConversationContext context = manager.getContext("c1", 1L, null);
+        context.append(entry("a", 10L, 5));
+        context.append(entry("b", 11L, 7));
+        when(chunkRepository.findExistingIds(anyCollection())).thenReturn(Set.of("a"));
+
+        assertSame(context, manager.getContext("c1", 1L, null));
+        assertEquals(List.of("a"), context.chunkIds());
+        assertEquals(5, context.tokens());
+    }
+
+    private static ConversationContext.Entry entry(String chunkId, Long knowledgeId, int cost) {
+        return new ConversationContext.Entry(chunkId, knowledgeId, "t", "text", null, Set.of(), cost, 1);
+    }
+}
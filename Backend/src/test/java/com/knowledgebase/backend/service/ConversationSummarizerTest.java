@@ -0,0 +1,106 @@
+package com.knowledgebase.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConversationSummarizerTest {
+
+    private InMemoryConversationStore store;
+    private ConversationSummarizer summarizer;
+    private final List<String> prompts = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        store = new InMemoryConversationStore(registry);
+        ReflectionTestUtils.setField(store, "timeoutMinutes", 30L);
+        ReflectionTestUtils.setField(store, "maxMessages", 10);
+        ReflectionTestUtils.setField(store, "maxConversations", 100);
+        store.init();
+
+        ChatModel chatModel = prompt -> {
+            prompts.add(prompt.getContents());
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("summary" + prompts.size()))));
+        };
+        summarizer = new ConversationSummarizer(store, chatModel, new ContextPacker(), registry);
+        ReflectionTestUtils.setField(summarizer, "enabled", true);
+        ReflectionTestUtils.setField(summarizer, "triggerTokens", 50);
+        ReflectionTestUtils.setField(summarizer, "keepMessages", 2);
+        ReflectionTestUtils.setField(summarizer, "maxTokens", 100);
+        ReflectionTestUtils.setField(summarizer, "maxMessages", 10);
+        ReflectionTestUtils.setField(summarizer, "threads", 1);
+        ReflectionTestUtils.setField(summarizer, "queueCapacity", 10);
+        summarizer.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        summarizer.shutdown();
+    }
+
+    @Test
+    void testShortHistoryIsNotSummarized() {
+        turn("q1", "a1");
+        assertFalse(summarizer.summarizeIfNeeded("c1"));
+        assertNull(store.history("c1").summary());
+        assertTrue(prompts.isEmpty());
+    }
+
+    @Test
+    void testFoldsOlderTurnsAndKeepsLatestTurn() {
+        turn("q1", "long answer ".repeat(30));
+        turn("q2", "a2");
+        assertTrue(summarizer.summarizeIfNeeded("c1"));
+
+        ConversationHistory history = store.history("c1");
+        assertEquals(new ConversationSummary("summary1", 2), history.summary());
+        assertEquals(List.of("q2", "a2"), texts(history.messages()));
+        assertTrue(prompts.get(0).contains("用户：q1"));
+
+        // 再次折叠时把已有摘要带入，只折叠摘要之后的消息
+        turn("q3", "another long answer ".repeat(30));
+        assertTrue(summarizer.summarizeIfNeeded("c1"));
+        history = store.history("c1");
+        assertEquals(new ConversationSummary("summary2", 4), history.summary());
+        assertEquals(List.of("q3", "another long answer ".repeat(30)), texts(history.messages()));
+        assertTrue(prompts.get(1).contains("summary1"));
+        assertTrue(prompts.get(1).contains("用户：q2"));
+        assertFalse(prompts.get(1).contains("用户：q1"));
+    }
+
+    @Test
+    void testSummarizesBeforeRingOverflows() {
+        for (int i = 1; i <= 4; i++) {
+            turn("q" + i, "a" + i);
+        }
+        assertTrue(summarizer.summarizeIfNeeded("c1"));
+        assertEquals(6, store.history("c1").summary().through());
+        assertEquals(List.of("q4", "a4"), texts(store.history("c1").messages()));
+    }
+
+    private void turn(String question, String answer) {
+        store.append("c1", new UserMessage(question));
+        store.append("c1", new AssistantMessage(answer));
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+}
@@ -0,0 +1,140 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dao.KnowledgeMapper;
+import com.knowledgebase.backend.entity.Knowledge;
+import com.knowledgebase.backend.vector.ChunkRepository;
+import com.knowledgebase.backend.vector.VersionedVectorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DocumentParseServiceTest {
+
+    private static final int WINDOW_CHARS = 2000;
+    private static final int BATCH_SIZE = 4;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    /** 每次写入向量表时：批次大小、当时已读取的源文件字节数 */
+    private final List<long[]> writes = new CopyOnWriteArrayList<>();
+    private final Set<String> writtenIds = new HashSet<>();
+
+    private FileStorageInterface storage;
+    private KnowledgeMapper knowledgeMapper;
+    private VersionedVectorStore vectorStore;
+    private EmbeddingPipeline pipeline;
+    private DocumentParseService service;
+
+    @BeforeEach
+    void setUp() {
+        storage = mock(FileStorageInterface.class);
+        knowledgeMapper = mock(KnowledgeMapper.class);
+        when(knowledgeMapper.selectById(1L)).thenReturn(Knowledge.builder().id(1L).spaceId(7L).build());
+
+        ChunkRepository chunkRepository = mock(ChunkRepository.class);
+        when(chunkRepository.findChunkIds(1L)).thenReturn(Set.of());
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(chunkRepository).inTransaction(any());
+
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyList(), any(), any())).thenAnswer(invocation ->
+                invocation.<List<Document>>getArgument(0).stream().map(d -> new float[]{1f}).toList());
+        vectorStore = mock(VersionedVectorStore.class);
+        doAnswer(invocation -> {
+            List<Document> batch = invocation.getArgument(0);
+            writes.add(new long[]{batch.size(), bytesRead.get()});
+            synchronized (writtenIds) {
+                batch.forEach(d -> writtenIds.add(d.getId()));
+            }
+            return null;
+        }).when(vectorStore).add(anyList(), anyList());
+
+        pipeline = new EmbeddingPipeline(embeddingModel, vectorStore);
+        ReflectionTestUtils.setField(pipeline, "batchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(pipeline, "concurrency", 2);
+        ReflectionTestUtils.setField(pipeline, "batchRetries", 0);
+        pipeline.init();
+
+        StreamingTextExtractor extractor = new StreamingTextExtractor();
+        ReflectionTestUtils.setField(extractor, "windowChars", WINDOW_CHARS);
+
+        service = new DocumentParseService(storage, knowledgeMapper, vectorStore, pipeline, chunkRepository,
+                embeddingModel, extractor);
+        ReflectionTestUtils.setField(service, "minVectorLength", 100);
+        ReflectionTestUtils.setField(service, "incrementalReindex", true);
+        ReflectionTestUtils.setField(service, "dedupEnabled", false);
+        ReflectionTestUtils.setField(service, "streamingExtraction", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void testLargeDocumentIsWrittenBatchByBatch() throws IOException {
+        // 约 400 个窗口大小的纯文本（Tika 自身会预读约 100KB）
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < WINDOW_CHARS * 400; i++) {
+            text.append("Paragraph ").append(i).append(" describes deployment step ").append(i)
+                    .append(" in detail. It has several sentences about configuration.\n\n");
+        }
+        byte[] content = text.toString().getBytes(StandardCharsets.UTF_8);
+        InputStream counting = new FilterInputStream(new ByteArrayInputStream(content)) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesRead.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) {
+                    bytesRead.addAndGet(n);
+                }
+                return n;
+            }
+        };
+        when(storage.download("doc.txt")).thenReturn(FileDownloadDto.builder().stream(counting).build());
+
+        service.parseAndEmbed(1L, "doc.txt");
+
+        verify(knowledgeMapper).updateParseJob(1L, "DONE");
+        int chunks = writtenIds.size();
+        assertTrue(chunks > 50 * BATCH_SIZE, "expected a document many batches long, got " + chunks);
+        // 每个批次单独写入一次，没有一次写入整篇文档的分片
+        assertEquals((chunks + BATCH_SIZE - 1) / BATCH_SIZE, writes.size());
+        writes.forEach(w -> assertTrue(w[0] <= BATCH_SIZE));
+        // 第一批写入时源文件还远没有读完：分片边抽取边写入，而不是整篇解析完再写
+        assertTrue(writes.get(0)[1] < content.length / 4,
+                "first batch written after reading " + writes.get(0)[1] + " of " + content.length + " bytes");
+    }
+}
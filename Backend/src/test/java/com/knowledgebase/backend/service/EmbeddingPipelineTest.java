@@ -0,0 +1,73 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.vector.VersionedVectorStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EmbeddingPipelineTest {
+
+    private EmbeddingPipeline pipeline;
+    private VersionedVectorStore vectorStore;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyList(), any(), any())).thenAnswer(invocation -> {
+            Thread.sleep(20);
+            List<Document> batch = invocation.getArgument(0);
+            return batch.stream().map(d -> new float[]{1f}).toList();
+        });
+        vectorStore = mock(VersionedVectorStore.class);
+        pipeline = new EmbeddingPipeline(embeddingModel, vectorStore);
+        ReflectionTestUtils.setField(pipeline, "batchSize", 2);
+        ReflectionTestUtils.setField(pipeline, "concurrency", 3);
+        ReflectionTestUtils.setField(pipeline, "batchRetries", 0);
+        pipeline.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void testProgressIsReportedOnProducerThreadOnlyWhenChanged() throws InterruptedException {
+        Thread producer = Thread.currentThread();
+        List<Integer> embedded = new ArrayList<>();
+        List<Integer> batches = new ArrayList<>();
+        EmbeddingPipeline.Batcher batcher = pipeline.open("test", (done, submitted, chunks) -> {
+            assertEquals(producer, Thread.currentThread());
+            batches.add(done);
+            embedded.add(chunks);
+        });
+        for (int i = 0; i < 9; i++) {
+            batcher.add(new Document("chunk " + i));
+        }
+        assertEquals(9, batcher.finish());
+
+        // 每次回调的进度都比上一次大，最后一次为全部分片
+        for (int i = 1; i < batches.size(); i++) {
+            assertTrue(batches.get(i) > batches.get(i - 1));
+        }
+        assertEquals(5, batches.get(batches.size() - 1));
+        assertEquals(9, embedded.get(embedded.size() - 1));
+        // 每个批次带着算好的向量写入一次
+        verify(vectorStore, times(5)).add(anyList(), anyList());
+    }
+}
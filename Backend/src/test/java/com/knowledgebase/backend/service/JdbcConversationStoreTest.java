@@ -0,0 +1,308 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dao.ChatMessageMapper;
+import com.knowledgebase.backend.dao.ChatSummaryMapper;
+import com.knowledgebase.backend.entity.ChatMessage;
+import com.knowledgebase.backend.entity.ChatSummary;
+import com.knowledgebase.backend.entity.ConversationCount;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JdbcConversationStoreTest {
+
+    private FakeMapper mapper;
+    private FakeSummaryMapper summaryMapper;
+    private JdbcConversationStore nodeA;
+    private JdbcConversationStore nodeB;
+
+    @BeforeEach
+    void setUp() {
+        mapper = new FakeMapper();
+        summaryMapper = new FakeSummaryMapper();
+        nodeA = store(mapper, summaryMapper);
+        nodeB = store(mapper, summaryMapper);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        nodeA.shutdown();
+        nodeB.shutdown();
+    }
+
+    @Test
+    void testAppendIsWrittenBehindInBatches() {
+        nodeA.append("c1", new UserMessage("q1"));
+        nodeA.append("c1", new AssistantMessage("a1"));
+        assertEquals(0, mapper.batches);
+
+        // 未落库的消息本节点可见
+        assertEquals(List.of("q1", "a1"), texts(nodeA.history("c1")));
+
+        nodeA.flush();
+        assertEquals(1, mapper.batches);
+        assertEquals(2, mapper.rows.size());
+    }
+
+    @Test
+    void testOtherNodeSeesFlushedHistory() {
+        nodeA.append("c1", new UserMessage("q1"));
+        nodeA.append("c1", new AssistantMessage("a1"));
+        nodeA.flush();
+
+        List<Message> history = nodeB.history("c1").messages();
+        assertEquals(List.of("q1", "a1"), texts(history));
+        assertTrue(history.get(1) instanceof AssistantMessage);
+
+        // 命中热缓存的读取不访问数据库
+        int counts = mapper.counts;
+        assertEquals(List.of("q1", "a1"), texts(nodeA.history("c1")));
+        assertEquals(counts, mapper.counts);
+
+        // 节点 B 写入后，节点 A 的定期校验按计数发现落后，移出热缓存后重新加载
+        nodeB.append("c1", new UserMessage("q2"));
+        nodeB.flush();
+        nodeA.validate();
+        assertEquals(List.of("q1", "a1", "q2"), texts(nodeA.history("c1")));
+    }
+
+    @Test
+    void testValidateKeepsEntriesWithUnflushedMessages() {
+        nodeA.append("c1", new UserMessage("q1"));
+        nodeA.flush();
+        nodeA.append("c1", new UserMessage("q2"));
+        ConversationCache cache = (ConversationCache) ReflectionTestUtils.getField(nodeA, "cache");
+        ConversationCache.Entry entry = cache.get("c1");
+
+        // 数据库 1 条 + 本节点未落库 1 条，与缓存一致，保留
+        nodeA.validate();
+        assertSame(entry, cache.get("c1"));
+        assertEquals(List.of("q1", "q2"), texts(nodeA.history("c1")));
+    }
+
+    @Test
+    void testClearRemovesPendingAndPersistedMessages() {
+        nodeA.append("c1", new UserMessage("q1"));
+        nodeA.flush();
+        nodeA.append("c1", new UserMessage("q2"));
+        nodeA.clear("c1");
+        nodeA.flush();
+        assertTrue(nodeA.history("c1").messages().isEmpty());
+        assertTrue(mapper.rows.isEmpty());
+    }
+
+    @Test
+    void testClearDropsFailedBatchAwaitingRetry() {
+        nodeA.append("c1", new UserMessage("q1"));
+        mapper.failNext = true;
+        assertThrows(IllegalStateException.class, nodeA::flush);
+
+        nodeA.clear("c1");
+        nodeA.flush();
+        assertTrue(mapper.rows.isEmpty());
+        assertTrue(nodeA.history("c1").messages().isEmpty());
+    }
+
+    @Test
+    void testInFlightBatchStaysVisibleAndIsCleared() throws Exception {
+        nodeA.append("c1", new UserMessage("q1"));
+        mapper.blockInsert = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> flush = executor.submit(() -> nodeA.flush());
+            assertTrue(mapper.insertStarted.await(5, TimeUnit.SECONDS));
+
+            // 批次已取出但未提交：重新加载要等提交完成，消息只出现一次
+            ((ConversationCache) ReflectionTestUtils.getField(nodeA, "cache")).remove("c1");
+            Future<List<String>> history = executor.submit(() -> texts(nodeA.history("c1")));
+            assertThrows(TimeoutException.class, () -> history.get(200, TimeUnit.MILLISECONDS));
+            mapper.blockInsert.countDown();
+            assertEquals(List.of("q1"), history.get(5, TimeUnit.SECONDS));
+            flush.get(5, TimeUnit.SECONDS);
+
+            // 清除与正在写入的批次互斥：批次提交后再删除，不会在清除后重新出现
+            nodeA.append("c1", new UserMessage("q2"));
+            mapper.blockInsert = new CountDownLatch(1);
+            mapper.insertStarted = new CountDownLatch(1);
+            flush = executor.submit(() -> nodeA.flush());
+            assertTrue(mapper.insertStarted.await(5, TimeUnit.SECONDS));
+            Future<?> clear = executor.submit(() -> nodeA.clear("c1"));
+            mapper.blockInsert.countDown();
+            flush.get(5, TimeUnit.SECONDS);
+            clear.get(5, TimeUnit.SECONDS);
+            assertTrue(mapper.rows.isEmpty());
+        } finally {
+            mapper.blockInsert.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testSummaryIsSharedAndAlignedWithSequence() {
+        for (int i = 1; i <= 4; i++) {
+            nodeA.append("c1", new UserMessage("q" + i));
+        }
+        nodeA.summarize("c1", new ConversationSummary("s", 3));
+        nodeA.flush();
+        assertEquals(List.of("q4"), texts(nodeA.history("c1")));
+
+        // 节点 B 从数据库加载：序号由累计消息数倒推，摘要之前的消息不再返回
+        ConversationHistory history = nodeB.history("c1");
+        assertEquals("s", history.summary().text());
+        assertEquals(List.of("q4"), texts(history));
+        assertEquals(4, history.end());
+
+        // 较旧的摘要不会覆盖较新的
+        nodeB.summarize("c1", new ConversationSummary("old", 2));
+        assertEquals("s", summaryMapper.rows.get("c1").getContent());
+        assertEquals("s", nodeB.history("c1").summary().text());
+    }
+
+    private static JdbcConversationStore store(ChatMessageMapper mapper, ChatSummaryMapper summaryMapper) {
+        JdbcConversationStore store = new JdbcConversationStore(mapper, summaryMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "timeoutMinutes", 30L);
+        ReflectionTestUtils.setField(store, "maxMessages", 10);
+        ReflectionTestUtils.setField(store, "maxConversations", 100);
+        ReflectionTestUtils.setField(store, "flushIntervalMs", 3_600_000L);
+        ReflectionTestUtils.setField(store, "batchSize", 100);
+        ReflectionTestUtils.setField(store, "queueCapacity", 100);
+        ReflectionTestUtils.setField(store, "validateReads", true);
+        ReflectionTestUtils.setField(store, "validateIntervalMs", 3_600_000L);
+        store.init();
+        return store;
+    }
+
+    private static List<String> texts(ConversationHistory history) {
+        return texts(history.messages());
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        return messages.stream().map(Message::getText).toList();
+    }
+
+    private static final class FakeMapper implements ChatMessageMapper {
+
+        private final List<ChatMessage> rows = new ArrayList<>();
+        private final AtomicLong ids = new AtomicLong();
+        private int batches;
+        private int counts;
+        private volatile boolean failNext;
+        /** 不为空时写入先等待放行，模拟正在提交的批次 */
+        private volatile CountDownLatch blockInsert;
+        private volatile CountDownLatch insertStarted = new CountDownLatch(1);
+
+        @Override
+        public int insertBatch(List<ChatMessage> messages) {
+            if (failNext) {
+                failNext = false;
+                throw new IllegalStateException("database unavailable");
+            }
+            CountDownLatch block = blockInsert;
+            if (block != null) {
+                insertStarted.countDown();
+                try {
+                    block.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this) {
+                batches++;
+                for (ChatMessage m : messages) {
+                    rows.add(ChatMessage.builder().id(ids.incrementAndGet()).conversationId(m.getConversationId())
+                            .role(m.getRole()).content(m.getContent()).createdAt(m.getCreatedAt()).build());
+                }
+                return messages.size();
+            }
+        }
+
+        @Override
+        public synchronized List<ChatMessage> selectRecent(String conversationId, int limit) {
+            return rows.stream()
+                    .filter(m -> m.getConversationId().equals(conversationId))
+                    .sorted(Comparator.comparingLong(ChatMessage::getId).reversed())
+                    .limit(limit)
+                    .toList();
+        }
+
+        @Override
+        public synchronized long countByConversationId(String conversationId) {
+            counts++;
+            return rows.stream().filter(m -> m.getConversationId().equals(conversationId)).count();
+        }
+
+        @Override
+        public synchronized List<ConversationCount> countByConversationIds(Collection<String> conversationIds) {
+            counts++;
+            return conversationIds.stream()
+                    .map(id -> new ConversationCount(id,
+                            rows.stream().filter(m -> m.getConversationId().equals(id)).count()))
+                    .filter(c -> c.getMessageCount() > 0)
+                    .toList();
+        }
+
+        @Override
+        public synchronized int deleteByConversationId(String conversationId) {
+            int before = rows.size();
+            rows.removeIf(m -> m.getConversationId().equals(conversationId));
+            return before - rows.size();
+        }
+
+        @Override
+        public synchronized int deleteCreatedBefore(LocalDateTime before, int limit) {
+            return 0;
+        }
+    }
+
+    private static final class FakeSummaryMapper implements ChatSummaryMapper {
+
+        private final Map<String, ChatSummary> rows = new ConcurrentHashMap<>();
+
+        @Override
+        public ChatSummary selectByConversationId(String conversationId) {
+            return rows.get(conversationId);
+        }
+
+        @Override
+        public int upsert(ChatSummary summary) {
+            rows.merge(summary.getConversationId(), summary,
+                    (current, s) -> s.getThroughSeq() > current.getThroughSeq() ? s : current);
+            return 1;
+        }
+
+        @Override
+        public int deleteByConversationId(String conversationId) {
+            return rows.remove(conversationId) == null ? 0 : 1;
+        }
+
+        @Override
+        public int deleteUpdatedBefore(LocalDateTime before) {
+            return 0;
+        }
+    }
+}
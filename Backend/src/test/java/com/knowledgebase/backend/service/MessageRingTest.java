@@ -0,0 +1,46 @@
+package com.knowledgebase.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageRingTest {
+
+    @Test
+    void testKeepsMostRecentMessagesInOrder() {
+        MessageRing ring = new MessageRing(3);
+        for (int i = 1; i <= 5; i++) {
+            ring.append(new UserMessage("m" + i));
+        }
+        assertEquals(List.of("m3", "m4", "m5"), ring.snapshot().stream().map(Message::getText).toList());
+    }
+
+    @Test
+    void testConcurrentAppendsFillRing() throws InterruptedException {
+        MessageRing ring = new MessageRing(64);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 1000; i++) {
+                    ring.append(new UserMessage("x"));
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(64, ring.snapshot().size());
+    }
+}
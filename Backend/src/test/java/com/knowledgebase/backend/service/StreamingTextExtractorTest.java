@@ -0,0 +1,64 @@
+package com.knowledgebase.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StreamingTextExtractorTest {
+
+    /** 窗口 20 字符，只在后半段（下标 10 起）找切点 */
+    private static final int WINDOW = 20;
+
+    @Test
+    void testPrefersParagraphBreak() throws IOException {
+        // 段落 12，换行 16，句末 19，都在后半段：取段落
+        String text = "aaaaaaaaaaaa\n\nbb\ncc.dddddddddd";
+        assertEquals(List.of(text.substring(0, 13), text.substring(13)), split(text));
+    }
+
+    @Test
+    void testFallsBackToLineBreak() throws IOException {
+        // 段落 3 在前半段被忽略，换行 14 优先于句末 17
+        String text = "aaa\n\nbbbbbbbbb\ncc.dddddddddd";
+        assertEquals(List.of(text.substring(0, 15), text.substring(15)), split(text));
+    }
+
+    @Test
+    void testFallsBackToSentenceEnd() throws IOException {
+        // 换行 3 在前半段被忽略，取后半段最后一个句末 16
+        String text = "aaa\nbbbbbbbbbbbb。cccccccccccc";
+        assertEquals(List.of(text.substring(0, 17), text.substring(17)), split(text));
+    }
+
+    @Test
+    void testForcedCutWithoutBoundary() throws IOException {
+        // 边界都在前半段：按窗口大小硬切
+        String text = "a.\n" + "x".repeat(37);
+        assertEquals(List.of(text.substring(0, 20), text.substring(20)), split(text));
+    }
+
+    @Test
+    void testCharByCharWritesMatchBulkWrite() throws IOException {
+        String text = "第一段内容。\n\n第二段比较长，没有换行也没有句号" + "x".repeat(50) + "\n结尾。";
+        List<String> windows = new ArrayList<>();
+        StreamingTextExtractor.WindowWriter writer = new StreamingTextExtractor.WindowWriter(WINDOW, windows::add);
+        for (char c : text.toCharArray()) {
+            writer.write(c);
+        }
+        writer.close();
+        assertEquals(split(text), windows);
+        assertEquals(text, String.join("", windows));
+    }
+
+    private static List<String> split(String text) throws IOException {
+        List<String> windows = new ArrayList<>();
+        StreamingTextExtractor.WindowWriter writer = new StreamingTextExtractor.WindowWriter(WINDOW, windows::add);
+        writer.write(text);
+        writer.close();
+        return windows;
+    }
+}
@@ -0,0 +1,102 @@
+package com.knowledgebase.backend.service;
+
+import com.knowledgebase.backend.dao.BlobContentMapper;
+import com.knowledgebase.backend.dto.FileUploadResponseDto;
+import com.knowledgebase.backend.entity.BlobContent;
+import com.knowledgebase.backend.utils.BlobKeys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StreamingUploadServiceTest {
+
+    private static final byte[] CONTENT = "quarterly report".getBytes(StandardCharsets.UTF_8);
+
+    private final List<String> deleted = new ArrayList<>();
+    private FakeBlobContentMapper mapper;
+    private StreamingUploadService service;
+
+    @BeforeEach
+    void setUp() {
+        FileStorageInterface storage = mock(FileStorageInterface.class);
+        when(storage.upload(any(InputStream.class), anyLong(), anyString(), anyString())).thenAnswer(invocation -> {
+            InputStream in = invocation.getArgument(0);
+            in.transferTo(OutputStream.nullOutputStream());
+            return FileUploadResponseDto.builder().blobKey(invocation.getArgument(2)).build();
+        });
+        doAnswer(invocation -> deleted.add(invocation.getArgument(0))).when(storage).delete(anyString());
+
+        BlobKeys blobKeys = new BlobKeys();
+        ReflectionTestUtils.setField(blobKeys, "baseFolder", "knowledge");
+        mapper = new FakeBlobContentMapper();
+        ContentDedupService dedup = new ContentDedupService(mapper, storage, blobKeys);
+        ReflectionTestUtils.setField(dedup, "enabled", true);
+        service = new StreamingUploadService(storage, blobKeys, dedup);
+        ReflectionTestUtils.setField(service, "maxBytes", 1024L);
+    }
+
+    @Test
+    void testDeclaredHashDoesNotShortcutToAnotherUsersBlob() {
+        FileUploadResponseDto first = upload(1L, null);
+        // 另一个用户声明相同 hash：仍需上传内容，得到自己的 blob
+        FileUploadResponseDto other = upload(2L, first.getContentHash());
+        assertNotEquals(first.getBlobKey(), other.getBlobKey());
+        assertTrue(other.getBlobKey().contains("user-2/"));
+        assertTrue(deleted.isEmpty());
+
+        // 同一用户再次上传相同内容：复用已有 blob，删除本次多余的一份
+        FileUploadResponseDto again = upload(1L, null);
+        assertEquals(first.getBlobKey(), again.getBlobKey());
+        assertEquals(1, deleted.size());
+    }
+
+    @Test
+    void testRejectsHashMismatch() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> upload(1L, "0".repeat(64)));
+        assertTrue(e.getMessage().contains("hash mismatch"));
+        assertEquals(1, deleted.size());
+        assertTrue(mapper.rows.isEmpty());
+    }
+
+    private FileUploadResponseDto upload(Long userId, String declaredHash) {
+        return service.upload(new ByteArrayInputStream(CONTENT), CONTENT.length, "report.txt", "knowledge",
+                userId, declaredHash);
+    }
+
+    private static class FakeBlobContentMapper implements BlobContentMapper {
+
+        final Map<String, BlobContent> rows = new ConcurrentHashMap<>();
+
+        @Override
+        public BlobContent selectByHash(String contentHash, String category, Long userId) {
+            return rows.get(contentHash + "|" + userId + "|" + category);
+        }
+
+        @Override
+        public int insertIgnore(BlobContent blobContent) {
+            String key = blobContent.getContentHash() + "|" + blobContent.getUserId() + "|" + blobContent.getCategory();
+            return rows.putIfAbsent(key, blobContent) == null ? 1 : 0;
+        }
+    }
+}
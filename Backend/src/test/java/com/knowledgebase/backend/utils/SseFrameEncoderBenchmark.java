@@ -0,0 +1,122 @@
+package com.knowledgebase.backend.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SSE 帧编码基准：旧实现（每个 token 五次 String.replace + String.format）与 SseFrameEncoder（逐 token / 合并）对比
+ * 默认不运行：mvn test -Dtest=SseFrameEncoderBenchmark -Dbenchmark=true
+ * 输出每个 token 的耗时、分配字节数和写出的帧数（帧数即 write + flush 次数）
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class SseFrameEncoderBenchmark {
+
+    private static final int TOKENS = 200_000;
+    private static final int ROUNDS = 5;
+
+    /** 累加输出字节数，防止编码结果被 JIT 消除 */
+    private long sink;
+
+    @Test
+    void benchmark() {
+        List<String> tokens = tokens();
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round == ROUNDS - 1;
+            run("legacy replace+format", tokens, report, this::legacy);
+            run("encoder per-token", tokens, report, t -> encoder(t, 1));
+            run("encoder coalesce=16", tokens, report, t -> encoder(t, 16));
+            run("encoder coalesce=64", tokens, report, t -> encoder(t, 64));
+        }
+    }
+
+    private long legacy(List<String> tokens) {
+        long frames = 0;
+        long bytes = 0;
+        for (String content : tokens) {
+            String escaped = content
+                    .replace("\\", "\\\\")
+                    .replace("\"", "\\\"")
+                    .replace("\n", "\\n")
+                    .replace("\r", "\\r")
+                    .replace("\t", "\\t");
+            bytes += String.format("data: {\"content\": \"%s\"}\n\n", escaped).getBytes(StandardCharsets.UTF_8).length;
+            frames++;
+        }
+        sink += bytes;
+        return frames;
+    }
+
+    private long encoder(List<String> tokens, int window) {
+        SseFrameEncoder encoder = new SseFrameEncoder(SseFrameEncoder.Format.JSON);
+        long frames = 0;
+        long bytes = 0;
+        for (String token : tokens) {
+            encoder.append(token);
+            if (encoder.pendingTokens() >= window) {
+                encoder.flushTokens();
+                bytes += write(encoder.take());
+                frames++;
+            }
+        }
+        encoder.flushTokens();
+        SseFrameEncoder.Frames rest = encoder.take();
+        if (rest != null) {
+            bytes += write(rest);
+            frames++;
+        }
+        sink += bytes;
+        return frames;
+    }
+
+    /** 与 SseFramesHttpMessageConverter 一样从编码器缓冲区直接写出，写出后缓冲区复用 */
+    private static int write(SseFrameEncoder.Frames frames) {
+        try {
+            frames.writeTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return frames.length();
+    }
+
+    private static void run(String name, List<String> tokens, boolean report, Encoding encoding) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long frames = encoding.encode(tokens);
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (report) {
+            System.out.printf("%-24s %8.1f ns/token %8.1f B/token %8d frames%n",
+                    name, (double) nanos / tokens.size(), (double) allocated / tokens.size(), frames);
+        }
+    }
+
+    /**
+     * 模拟 LLM 输出：中英文混合的短 token，夹带换行和引号
+     */
+    private static List<String> tokens() {
+        String[] pool = {"知识", "库", "的", " answer", " is", "\n", "\"", "检索", "增强", "生成", "，", "。",
+                " token", "## ", "- ", "`code`", "\t", "模型"};
+        Random random = new Random(42);
+        List<String> tokens = new ArrayList<>(TOKENS);
+        for (int i = 0; i < TOKENS; i++) {
+            tokens.add(pool[random.nextInt(pool.length)]);
+        }
+        return tokens;
+    }
+
+    @FunctionalInterface
+    private interface Encoding {
+        long encode(List<String> tokens);
+    }
+}
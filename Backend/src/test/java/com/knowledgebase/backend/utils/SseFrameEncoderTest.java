@@ -0,0 +1,86 @@
+package com.knowledgebase.backend.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SseFrameEncoderTest {
+
+    @Test
+    void testJsonFrameEscapesAndEncodesUtf8() {
+        SseFrameEncoder encoder = new SseFrameEncoder(SseFrameEncoder.Format.JSON);
+        encoder.append("say \"hi\"\\");
+        encoder.append("\n\t\u0001你好😀");
+        encoder.flushTokens();
+        assertEquals("data: {\"content\":\"say \\\"hi\\\"\\\\\\n\\t\\u0001你好😀\"}\n\n", take(encoder));
+        assertNull(encoder.take());
+    }
+
+    @Test
+    void testTextFrameSplitsLinesLikeSseEmitter() {
+        SseFrameEncoder encoder = new SseFrameEncoder(SseFrameEncoder.Format.TEXT);
+        encoder.event("status", "retrieving");
+        encoder.append("第一行\n");
+        encoder.append("second");
+        encoder.flushTokens();
+        assertEquals("event:status\ndata:retrieving\n\ndata:第一行\ndata:second\n\n", take(encoder));
+    }
+
+    @Test
+    void testEventsFormatTypesTokenFrames() {
+        SseFrameEncoder encoder = new SseFrameEncoder(SseFrameEncoder.Format.EVENTS);
+        encoder.event("sources", "{\"sources\":[]}");
+        encoder.append("答");
+        encoder.append("案");
+        encoder.flushTokens();
+        assertEquals("event:sources\ndata:{\"sources\":[]}\n\nevent:token\ndata:答案\n\n", take(encoder));
+    }
+
+    @Test
+    void testHighSurrogateIsHeldForNextFrame() {
+        String emoji = "😀";
+        SseFrameEncoder encoder = new SseFrameEncoder(SseFrameEncoder.Format.JSON);
+        encoder.append("a" + emoji.charAt(0));
+        encoder.flushTokens();
+        assertEquals("data: {\"content\":\"a\"}\n\n", take(encoder));
+        encoder.append(String.valueOf(emoji.charAt(1)));
+        encoder.flushTokens();
+        encoder.done();
+        assertEquals("data: {\"content\":\"" + emoji + "\"}\n\ndata: [DONE]\n\n", take(encoder));
+    }
+
+    @Test
+    void testUnwrittenFrameIsNotOverwrittenByNextFrame() throws IOException {
+        SseFrameEncoder encoder = new SseFrameEncoder(SseFrameEncoder.Format.JSON);
+        encoder.append("a");
+        encoder.flushTokens();
+        // 响应初始化前的早期发送：帧排队，尚未写出
+        SseFrameEncoder.Frames queued = encoder.take();
+        encoder.append("b");
+        encoder.flushTokens();
+        SseFrameEncoder.Frames next = encoder.take();
+
+        assertEquals("data: {\"content\":\"a\"}\n\n", written(queued));
+        assertEquals("data: {\"content\":\"b\"}\n\n", written(next));
+        // 写出后缓冲区复用
+        encoder.append("c");
+        encoder.flushTokens();
+        assertEquals("data: {\"content\":\"c\"}\n\n", take(encoder));
+        assertEquals("data: {\"content\":\"c\"}\n\n", new String(next.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static String written(SseFrameEncoder.Frames frames) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        frames.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String take(SseFrameEncoder encoder) {
+        return new String(encoder.take().toByteArray(), StandardCharsets.UTF_8);
+    }
+}
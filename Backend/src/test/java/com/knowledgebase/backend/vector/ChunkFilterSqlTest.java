@@ -0,0 +1,40 @@
+package com.knowledgebase.backend.vector;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ChunkFilterSqlTest {
+
+    private final FilterExpressionBuilder b = new FilterExpressionBuilder();
+
+    @Test
+    void testScopeKeysUseTypedColumns() {
+        ChunkFilterSql.Where where = ChunkFilterSql.of(
+                b.and(b.eq("spaceId", 3), b.in("knowledgeId", List.of(7, "8"))).build());
+        assertEquals("(space_id = ? AND knowledge_id IN (?,?))", where.sql());
+        assertEquals(List.of(3L, 7L, 8L), where.args());
+    }
+
+    @Test
+    void testOtherKeysCompareMetadataText() {
+        ChunkFilterSql.Where where = ChunkFilterSql.of(b.or(b.ne("source", "a.pdf"), b.eq("chunkIndex", 0)).build());
+        assertEquals("((metadata::jsonb ->> 'source') <> ? OR (metadata::jsonb ->> 'chunkIndex') = ?)", where.sql());
+        assertEquals(List.of("a.pdf", "0"), where.args());
+    }
+
+    @Test
+    void testEmptyInMatchesNothing() {
+        assertEquals("FALSE", ChunkFilterSql.of(b.in("knowledgeId", List.of()).build()).sql());
+    }
+
+    @Test
+    void testUnsafeKeyRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ChunkFilterSql.of(b.eq("x') OR 1=1 --", 1).build()));
+    }
+}
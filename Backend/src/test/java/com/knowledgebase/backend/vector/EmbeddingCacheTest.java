@@ -0,0 +1,41 @@
+package com.knowledgebase.backend.vector;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EmbeddingCacheTest {
+
+    @Test
+    void testUnavailableDatabaseDegradesToMemoryOnly() throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenThrow(new SQLException("Connection refused"));
+        EmbeddingCache cache = new EmbeddingCache(dataSource);
+        ReflectionTestUtils.setField(cache, "model", "embedding-3");
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "persistent", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", 10);
+
+        // 启动时持久层不可用不抛异常
+        cache.init();
+
+        String a = EmbeddingCache.hash("a");
+        String b = EmbeddingCache.hash("b");
+        assertTrue(cache.getAll(List.of(a)).isEmpty());
+        cache.putAll(Map.of(a, new float[]{1f, 2f}));
+
+        Map<String, float[]> found = cache.getAll(List.of(a, b));
+        assertEquals(1, found.size());
+        assertArrayEquals(new float[]{1f, 2f}, found.get(a));
+    }
+}
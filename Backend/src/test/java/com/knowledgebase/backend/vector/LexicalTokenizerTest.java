@@ -0,0 +1,33 @@
+package com.knowledgebase.backend.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LexicalTokenizerTest {
+
+    @Test
+    void testChineseBigrams() {
+        assertEquals(List.of("知识", "识库"), LexicalTokenizer.tokenize("知识库"));
+        assertEquals(List.of("库"), LexicalTokenizer.tokenize("库"));
+    }
+
+    @Test
+    void testIdentifierKeepsWholeTokenAndParts() {
+        List<String> tokens = LexicalTokenizer.tokenize("报错 ERR_CONN_REFUSED，检查 spring.ai.zhipuai.api-key。");
+        assertTrue(tokens.contains("err_conn_refused"));
+        assertTrue(tokens.contains("refused"));
+        assertTrue(tokens.contains("spring.ai.zhipuai.api-key"));
+        assertTrue(tokens.contains("zhipuai"));
+        assertTrue(tokens.contains("报错"));
+        assertTrue(tokens.contains("检查"));
+    }
+
+    @Test
+    void testTrailingConnectorIsDropped() {
+        assertEquals(List.of("sku", "ab-1234", "ab", "1234"), LexicalTokenizer.tokenize("SKU AB-1234."));
+    }
+}
@@ -0,0 +1,69 @@
+package com.knowledgebase.backend.vector;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VersionedVectorStoreTest {
+
+    private PgChunkVectorStore delegate;
+    private LexicalIndex lexicalIndex;
+    private IndexVersions indexVersions;
+    private VersionedVectorStore store;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(PgChunkVectorStore.class);
+        lexicalIndex = mock(LexicalIndex.class);
+        indexVersions = new IndexVersions();
+        store = new VersionedVectorStore(delegate, indexVersions, lexicalIndex);
+    }
+
+    @Test
+    void testDeleteByIdsBumpsOnlyAffectedSpaces() {
+        when(delegate.deleteReturning(List.of("a", "b")))
+                .thenReturn(new PgChunkVectorStore.Deleted(List.of("a", "b"), Set.of(1L), false));
+        String space1 = indexVersions.current(1L);
+        String space2 = indexVersions.current(2L);
+
+        store.delete(List.of("a", "b"));
+
+        assertNotEquals(space1, indexVersions.current(1L));
+        assertEquals(space2, indexVersions.current(2L));
+        verify(lexicalIndex).remove(List.of("a", "b"));
+    }
+
+    @Test
+    void testDeleteByFilterRemovesDeletedChunksFromLexicalIndex() {
+        Filter.Expression filter = new FilterExpressionBuilder().eq("knowledgeId", 5L).build();
+        when(delegate.deleteReturning(filter))
+                .thenReturn(new PgChunkVectorStore.Deleted(List.of("c"), Set.of(2L), false));
+        String space1 = indexVersions.current(1L);
+
+        store.delete(filter);
+
+        assertEquals(space1, indexVersions.current(1L));
+        verify(lexicalIndex).remove(List.of("c"));
+    }
+
+    @Test
+    void testChunkWithoutSpaceBumpsAllSpaces() {
+        when(delegate.deleteReturning(List.of("d")))
+                .thenReturn(new PgChunkVectorStore.Deleted(List.of("d"), Set.of(), true));
+        String space1 = indexVersions.current(1L);
+
+        store.delete(List.of("d"));
+
+        assertNotEquals(space1, indexVersions.current(1L));
+    }
+}
@@ -8,7 +8,9 @@ export function chat(data) {
     })
 }
 
-export async function chatStream(data, onMessage, onError, onComplete) {
+// event: token (or unnamed) carries answer text; other named events (status, sources, usage) go to onEvent
+// Aborting signal closes the connection, which stops generation on the server
+export async function chatStream(data, onMessage, onError, onComplete, onEvent, signal) {
     const token = localStorage.getItem('token')
     try {
         const response = await fetch('/api/knowledge/chat/stream', {
@@ -17,7 +19,8 @@ export async function chatStream(data, onMessage, onError, onComplete) {
                 'Content-Type': 'application/json',
                 'Authorization': token ? `Bearer ${token}` : ''
             },
-            body: JSON.stringify(data)
+            body: JSON.stringify(data),
+            signal
         })
 
         if (!response.ok) {
@@ -42,13 +45,18 @@ export async function chatStream(data, onMessage, onError, onComplete) {
                 const rawEvent = buffer.slice(0, eventEnd)
                 buffer = buffer.slice(eventEnd + 2)
 
+                let eventName = ''
                 const dataLines = []
                 for (const line of rawEvent.split('\n')) {
-                    if (line.startsWith('data:')) {
+                    if (line.startsWith('event:')) {
+                        eventName = line.slice(6).trim()
+                    } else if (line.startsWith('data:')) {
                         dataLines.push(line.slice(5).trimStart())
                     }
                 }
-                if (dataLines.length > 0) {
+                if (eventName && eventName !== 'message' && eventName !== 'token') {
+                    if (onEvent) onEvent(eventName, dataLines.join('\n'))
+                } else if (dataLines.length > 0) {
                     if (onMessage) onMessage(dataLines.join('\n'))
                 }
 
@@ -56,6 +64,7 @@ export async function chatStream(data, onMessage, onError, onComplete) {
             }
         }
     } catch (error) {
+        if (error.name === 'AbortError') return
         if (onError) onError(error)
     }
 }
@@ -37,29 +37,27 @@ export function getKnowledgeTree(spaceId) {
     })
 }
 
+// 流式上传：文件作为请求体直接发送，后端边读边写入存储并计算内容 hash，不经过 multipart 临时文件
 export function uploadKnowledgeFile(id, file) {
-    const formData = new FormData()
-    formData.append('file', file)
     return request({
-        url: `/knowledge/${id}/upload`,
+        url: `/knowledge/${id}/upload/stream`,
         method: 'post',
-        data: formData,
+        params: { filename: file.name },
+        data: file,
         headers: {
-            'Content-Type': 'multipart/form-data'
+            'Content-Type': 'application/octet-stream'
         }
     })
 }
 
 export function uploadFile(file) {
-    const formData = new FormData()
-    formData.append('file', file)
-    formData.append('category', 'knowledge')
     return request({
-        url: '/files/upload',
+        url: '/files/upload/stream',
         method: 'post',
-        data: formData,
+        params: { filename: file.name, category: 'knowledge' },
+        data: file,
         headers: {
-            'Content-Type': 'multipart/form-data'
+            'Content-Type': 'application/octet-stream'
         }
     })
 }